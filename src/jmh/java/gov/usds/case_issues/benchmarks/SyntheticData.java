@@ -0,0 +1,169 @@
+package gov.usds.case_issues.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.springframework.test.util.ReflectionTestUtils;
+
+import gov.usds.case_issues.db.model.AttachmentType;
+import gov.usds.case_issues.db.model.projections.CaseAttachmentRow;
+import gov.usds.case_issues.db.model.reporting.FilterableCase;
+import gov.usds.case_issues.model.CaseRequest;
+
+/**
+ * Generators for benchmark input that looks like the sample data in <code>sample_data/cases.csv</code>.
+ * Everything is generated from a fixed seed, so each run of a benchmark sees the same data.
+ */
+@SuppressWarnings("checkstyle:MagicNumber")
+public final class SyntheticData {
+
+	public static final String CSV_HEADER = "receiptNumber,creationDate,caseAge,channelType,caseState,i90SP,"
+		+ "caseStatus,applicationReason,caseId,caseSubstatus";
+
+	private static final long SEED = 8675309L;
+	private static final ZonedDateTime EPOCH = ZonedDateTime.of(2014, 1, 1, 0, 0, 0, 0, ZoneOffset.ofHours(-4));
+	private static final String[] CHANNELS = {"Pigeon", "Semaphore", "Carrier", "Telegraph"};
+	private static final String[] STATES = {"Happy", "Sad", "Confused"};
+	private static final String[] STATUSES = {"Eschewing Obfuscation", "Obfuscating", "Pending"};
+	private static final String[] REASONS = {"Boredom", "Curiosity", "Spite"};
+	private static final String[] SUBSTATUSES = {"Scrutinizing", "Printing", "Filing", "Pondering"};
+
+	private SyntheticData() {
+		// static methods only
+	}
+
+	public static String receiptNumber(int index) {
+		return String.format("FKE%07d", index);
+	}
+
+	public static ZonedDateTime caseCreation(int index) {
+		return EPOCH.plusHours(index % 50000);
+	}
+
+	/** A CSV upload of the given number of cases, with the same columns as the sample data. */
+	public static byte[] casesCsv(int rows) {
+		Random random = new Random(SEED);
+		StringBuilder csv = new StringBuilder(rows * 120).append(CSV_HEADER).append('\n');
+		for (int i = 0; i < rows; i++) {
+			ZonedDateTime created = caseCreation(i);
+			csv.append(receiptNumber(i)).append(',')
+				.append(created.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME)).append(',')
+				.append(random.nextInt(2000)).append(',')
+				.append(pick(random, CHANNELS)).append(',')
+				.append(pick(random, STATES)).append(',')
+				.append(random.nextBoolean()).append(',')
+				.append(pick(random, STATUSES)).append(',')
+				.append(pick(random, REASONS)).append(',')
+				.append(random.nextInt(100000)).append(',')
+				.append(pick(random, SUBSTATUSES)).append('\n');
+		}
+		return csv.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/** The same cases as {@link #casesCsv}, as if they had already been parsed. */
+	public static List<CaseRequest> caseRequests(int rows) {
+		Random random = new Random(SEED);
+		List<CaseRequest> requests = new ArrayList<>(rows);
+		for (int i = 0; i < rows; i++) {
+			requests.add(new SyntheticCaseRequest(receiptNumber(i), caseCreation(i), extraData(random)));
+		}
+		return requests;
+	}
+
+	/** Hitlist rows as they would come back from the filterable_case table, about a third of them snoozed. */
+	public static List<FilterableCase> filterableCases(int rows) {
+		Random random = new Random(SEED);
+		Date loaded = Date.from(EPOCH.toInstant());
+		List<FilterableCase> cases = new ArrayList<>(rows);
+		for (int i = 0; i < rows; i++) {
+			FilterableCase c = new FilterableCase();
+			ReflectionTestUtils.setField(c, "internalId", Long.valueOf(i));
+			ReflectionTestUtils.setField(c, "receiptNumber", receiptNumber(i));
+			ReflectionTestUtils.setField(c, "caseCreation", caseCreation(i));
+			ReflectionTestUtils.setField(c, "createdAt", loaded);
+			ReflectionTestUtils.setField(c, "updatedAt", loaded);
+			ReflectionTestUtils.setField(c, "extraData", extraData(random));
+			ReflectionTestUtils.setField(c, "hasOpenIssue", true);
+			if (i % 3 == 0) {
+				ReflectionTestUtils.setField(c, "snoozeReason", "assigned_case");
+				ReflectionTestUtils.setField(c, "snoozeStart", caseCreation(i).plusDays(1));
+				ReflectionTestUtils.setField(c, "snoozeEnd", caseCreation(i).plusDays(4));
+			}
+			cases.add(c);
+		}
+		return cases;
+	}
+
+	/** Attachment rows for the given number of cases, in case order, with a mix of comments and links. */
+	public static List<CaseAttachmentRow> attachmentRows(int caseCount, int perCase) {
+		Date created = Date.from(EPOCH.toInstant());
+		List<CaseAttachmentRow> rows = new ArrayList<>(caseCount * perCase);
+		long attachmentId = 0;
+		for (int i = 0; i < caseCount; i++) {
+			for (int j = 0; j < perCase; j++) {
+				attachmentId++;
+				if (j % 2 == 0) {
+					rows.add(new CaseAttachmentRow(Long.valueOf(i), attachmentId, AttachmentType.COMMENT, null, null,
+						"Called the applicant about case " + receiptNumber(i), created, "user" + (i % 10), "A. User"));
+				} else {
+					rows.add(new CaseAttachmentRow(Long.valueOf(i), attachmentId, AttachmentType.LINK, "ticket",
+						"https://tickets.example.com/%s", "T-" + attachmentId, created, "user" + (i % 10), null));
+				}
+			}
+		}
+		return rows;
+	}
+
+	private static Map<String, Object> extraData(Random random) {
+		Map<String, Object> extra = new HashMap<>();
+		extra.put("caseAge", String.valueOf(random.nextInt(2000)));
+		extra.put("channelType", pick(random, CHANNELS));
+		extra.put("caseState", pick(random, STATES));
+		extra.put("i90SP", String.valueOf(random.nextBoolean()));
+		extra.put("caseStatus", pick(random, STATUSES));
+		extra.put("applicationReason", pick(random, REASONS));
+		extra.put("caseId", String.valueOf(random.nextInt(100000)));
+		extra.put("caseSubstatus", pick(random, SUBSTATUSES));
+		return extra;
+	}
+
+	private static String pick(Random random, String[] choices) {
+		return choices[random.nextInt(choices.length)];
+	}
+
+	private static class SyntheticCaseRequest implements CaseRequest {
+
+		private final String _receipt;
+		private final ZonedDateTime _caseCreation;
+		private final Map<String, Object> _extraData;
+
+		SyntheticCaseRequest(String receipt, ZonedDateTime caseCreation, Map<String, Object> extraData) {
+			_receipt = receipt;
+			_caseCreation = caseCreation;
+			_extraData = extraData;
+		}
+
+		@Override
+		public String getReceiptNumber() {
+			return _receipt;
+		}
+
+		@Override
+		public ZonedDateTime getCaseCreation() {
+			return _caseCreation;
+		}
+
+		@Override
+		public Map<String, Object> getExtraData() {
+			return _extraData;
+		}
+	}
+}
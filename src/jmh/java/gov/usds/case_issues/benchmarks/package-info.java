@@ -0,0 +1,8 @@
+/**
+ * Shared input generators for the JMH benchmarks (run with <code>./gradlew jmh</code>).
+ * The benchmarks themselves live in the packages of the code they measure, so that they can call the helpers that
+ * the application keeps package-private for that purpose: <code>HitlistApiController.readCsv</code> and
+ * <code>processCaseUploads</code>, <code>CaseListService.toStagedCases</code> and
+ * <code>CaseFilteringService.groupAttachments</code>.
+ */
+package gov.usds.case_issues.benchmarks;
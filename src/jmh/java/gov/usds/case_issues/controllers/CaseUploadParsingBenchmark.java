@@ -0,0 +1,51 @@
+package gov.usds.case_issues.controllers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.usds.case_issues.benchmarks.SyntheticData;
+import gov.usds.case_issues.config.DataFormatSpec;
+import gov.usds.case_issues.model.CaseRequest;
+
+/**
+ * Parsing a CSV issue upload into case requests, as {@link HitlistApiController} does for a synchronous upload.
+ */
+@State(Scope.Benchmark)
+@SuppressWarnings("checkstyle:MagicNumber")
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value=1, jvmArgsAppend="-Xmx4g")
+@Warmup(iterations=2)
+@Measurement(iterations=5)
+public class CaseUploadParsingBenchmark {
+
+	@Param({"10000", "100000", "1000000"})
+	public int rows;
+
+	private byte[] csv;
+
+	@Setup
+	public void generateUpload() {
+		csv = SyntheticData.casesCsv(rows);
+	}
+
+	@Benchmark
+	public List<CaseRequest> processCaseUploads() throws IOException {
+		return HitlistApiController.processCaseUploads(
+			HitlistApiController.readCsv(new ByteArrayInputStream(csv)), new DataFormatSpec());
+	}
+}
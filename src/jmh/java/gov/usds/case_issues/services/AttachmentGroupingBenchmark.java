@@ -0,0 +1,52 @@
+package gov.usds.case_issues.services;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.usds.case_issues.benchmarks.SyntheticData;
+import gov.usds.case_issues.db.model.projections.CaseAttachmentRow;
+import gov.usds.case_issues.model.AttachmentSummary;
+
+/**
+ * Grouping attachment rows by case and summarizing them, as {@link CaseFilteringService} does for each
+ * page of the hitlist.
+ */
+@State(Scope.Benchmark)
+@SuppressWarnings("checkstyle:MagicNumber")
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value=1, jvmArgsAppend="-Xmx4g")
+@Warmup(iterations=2)
+@Measurement(iterations=5)
+public class AttachmentGroupingBenchmark {
+
+	private static final int ATTACHMENTS_PER_CASE = 2;
+
+	@Param({"10000", "100000", "1000000"})
+	public int rows;
+
+	private List<CaseAttachmentRow> attachmentRows;
+
+	@Setup
+	public void generateRows() {
+		attachmentRows = SyntheticData.attachmentRows(rows / ATTACHMENTS_PER_CASE, ATTACHMENTS_PER_CASE);
+	}
+
+	@Benchmark
+	public Map<Long, List<AttachmentSummary>> groupAttachments() {
+		return CaseFilteringService.groupAttachments(attachmentRows);
+	}
+}
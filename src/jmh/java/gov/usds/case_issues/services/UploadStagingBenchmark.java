@@ -0,0 +1,61 @@
+package gov.usds.case_issues.services;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import gov.usds.case_issues.benchmarks.SyntheticData;
+import gov.usds.case_issues.model.CaseRequest;
+
+/**
+ * The in-memory part of {@link CaseListService#putIssueStream}: turning each chunk of uploaded cases into the
+ * JSON document that is sent to the staging table. (The reconciliation itself happens in the database.)
+ */
+@State(Scope.Benchmark)
+@SuppressWarnings("checkstyle:MagicNumber")
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value=1, jvmArgsAppend="-Xmx4g")
+@Warmup(iterations=2)
+@Measurement(iterations=5)
+public class UploadStagingBenchmark {
+
+	@Param({"10000", "100000", "1000000"})
+	public int rows;
+
+	private List<CaseRequest> requests;
+	private ObjectMapper mapper;
+
+	@Setup
+	public void generateRequests() {
+		requests = SyntheticData.caseRequests(rows);
+		mapper = new ObjectMapper();
+	}
+
+	@Benchmark
+	public void stageChunks(Blackhole sink) throws JsonProcessingException {
+		for (int start = 0; start < requests.size(); start += CaseListService.UPLOAD_CHUNK_SIZE) {
+			List<CaseRequest> chunk = requests.subList(start,
+				Math.min(start + CaseListService.UPLOAD_CHUNK_SIZE, requests.size()));
+			List<Map<String, Object>> staged = CaseListService.toStagedCases(chunk, new HashSet<>());
+			sink.consume(mapper.writeValueAsString(staged));
+		}
+	}
+}
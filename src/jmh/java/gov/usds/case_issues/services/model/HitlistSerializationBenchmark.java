@@ -0,0 +1,77 @@
+package gov.usds.case_issues.services.model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import gov.usds.case_issues.benchmarks.SyntheticData;
+import gov.usds.case_issues.db.model.reporting.FilterableCase;
+
+/**
+ * Serializing a list of hitlist entries to JSON, with an object mapper configured the way Spring Boot
+ * configures the one used for API responses.
+ */
+@State(Scope.Benchmark)
+@SuppressWarnings("checkstyle:MagicNumber")
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value=1, jvmArgsAppend="-Xmx4g")
+@Warmup(iterations=2)
+@Measurement(iterations=5)
+public class HitlistSerializationBenchmark {
+
+	@Param({"10000", "100000", "1000000"})
+	public int rows;
+
+	private List<DelegatingFilterableCaseSummary> summaries;
+	private ObjectMapper mapper;
+
+	@Setup
+	public void generateSummaries() {
+		List<FilterableCase> cases = SyntheticData.filterableCases(rows);
+		summaries = new ArrayList<>(cases.size());
+		for (FilterableCase c : cases) {
+			summaries.add(new DelegatingFilterableCaseSummary(c, null, "pc-" + c.getReceiptNumber()));
+		}
+		mapper = Jackson2ObjectMapperBuilder.json().build();
+	}
+
+	@Benchmark
+	public long serializeSummaries() throws IOException {
+		CountingOutputStream out = new CountingOutputStream();
+		mapper.writeValue(out, summaries);
+		return out.count;
+	}
+
+	/** Throws the output away (rather than buffering up to a gigabyte of JSON), but keeps it from being optimized out. */
+	private static class CountingOutputStream extends OutputStream {
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
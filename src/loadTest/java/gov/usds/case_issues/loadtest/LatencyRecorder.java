@@ -0,0 +1,103 @@
+package gov.usds.case_issues.loadtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects response times and status codes for each kind of request made during a load test,
+ * and summarizes them as throughput and latency percentiles.
+ */
+public class LatencyRecorder {
+
+	private static final int CLIENT_ERROR = 400;
+	private static final int SERVER_ERROR = 500;
+	private static final double P50 = 0.50;
+	private static final double P95 = 0.95;
+	private static final double P99 = 0.99;
+
+	private final Map<String, Endpoint> _endpoints = new TreeMap<>();
+
+	public void record(String endpoint, long elapsedNanos, int status) {
+		Endpoint found;
+		synchronized (_endpoints) {
+			found = _endpoints.computeIfAbsent(endpoint, e -> new Endpoint());
+		}
+		synchronized (found) {
+			found.latencies.add(elapsedNanos);
+			if (status >= SERVER_ERROR) {
+				found.serverErrors++;
+			} else if (status >= CLIENT_ERROR) {
+				found.clientErrors++;
+			}
+		}
+	}
+
+	public long getRequestCount(String endpoint) {
+		Endpoint found;
+		synchronized (_endpoints) {
+			found = _endpoints.get(endpoint);
+		}
+		if (found == null) {
+			return 0;
+		}
+		synchronized (found) {
+			return found.latencies.size();
+		}
+	}
+
+	public long getServerErrorCount() {
+		long errors = 0;
+		synchronized (_endpoints) {
+			for (Endpoint e : _endpoints.values()) {
+				synchronized (e) {
+					errors += e.serverErrors;
+				}
+			}
+		}
+		return errors;
+	}
+
+	/** A plain-text table of request counts, throughput, error counts and latency percentiles per endpoint. */
+	public String report(long elapsedNanos) {
+		double elapsedSeconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+		StringBuilder report = new StringBuilder(String.format("%-24s %9s %9s %7s %7s %9s %9s %9s%n",
+			"endpoint", "requests", "req/s", "4xx", "5xx", "p50 ms", "p95 ms", "p99 ms"));
+		synchronized (_endpoints) {
+			for (Map.Entry<String, Endpoint> entry : _endpoints.entrySet()) {
+				Endpoint e = entry.getValue();
+				List<Long> sorted;
+				synchronized (e) {
+					sorted = new ArrayList<>(e.latencies);
+				}
+				Collections.sort(sorted);
+				report.append(String.format("%-24s %9d %9.1f %7d %7d %9.1f %9.1f %9.1f%n",
+					entry.getKey(), sorted.size(), sorted.size() / elapsedSeconds, e.clientErrors, e.serverErrors,
+					millis(percentile(sorted, P50)), millis(percentile(sorted, P95)), millis(percentile(sorted, P99))));
+			}
+		}
+		return report.toString();
+	}
+
+	/** Nearest-rank percentile of an already-sorted list. */
+	static long percentile(List<Long> sorted, double fraction) {
+		if (sorted.isEmpty()) {
+			return 0;
+		}
+		int rank = (int) Math.ceil(fraction * sorted.size());
+		return sorted.get(Math.max(rank, 1) - 1);
+	}
+
+	private static double millis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	private static class Endpoint {
+		private final List<Long> latencies = new ArrayList<>();
+		private long clientErrors;
+		private long serverErrors;
+	}
+}
@@ -0,0 +1,101 @@
+package gov.usds.case_issues.loadtest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A single simulated user, logged in through the demo HTTP basic login, that holds on to its session cookie
+ * and CSRF token the way a browser would. Error responses are returned rather than thrown, so that they can
+ * be counted. Not thread-safe: each worker thread gets its own clients.
+ */
+public class LoadTestClient {
+
+	private static final ObjectMapper JSON = new ObjectMapper();
+
+	private final RestTemplate _rest;
+	private final String _baseUrl;
+	private final String _authorization;
+	private String _cookies;
+	private String _csrfHeaderName;
+	private String _csrfToken;
+
+	/** Log in as one of the configured demo users (whose password is the same as their name). */
+	public LoadTestClient(String baseUrl, String userName) {
+		_baseUrl = baseUrl;
+		_authorization = "Basic " + Base64.getEncoder().encodeToString(
+			(userName + ":" + userName).getBytes(StandardCharsets.UTF_8));
+		_rest = new RestTemplate();
+		_rest.setErrorHandler(new ResponseErrorHandler() {
+			@Override
+			public boolean hasError(ClientHttpResponse response) {
+				return false;
+			}
+
+			@Override
+			public void handleError(ClientHttpResponse response) {
+				// never called, since nothing is an error
+			}
+		});
+	}
+
+	public ResponseEntity<String> get(String path, Object... uriVariables) {
+		return exchange(HttpMethod.GET, path, null, null, uriVariables);
+	}
+
+	public ResponseEntity<String> put(String path, MediaType contentType, String body, Object... uriVariables) {
+		return exchange(HttpMethod.PUT, path, contentType, body, uriVariables);
+	}
+
+	private ResponseEntity<String> exchange(HttpMethod method, String path, MediaType contentType, String body,
+			Object... uriVariables) {
+		if (_cookies == null) {
+			startSession();
+		}
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(HttpHeaders.AUTHORIZATION, _authorization);
+		headers.set(HttpHeaders.COOKIE, _cookies);
+		headers.set(_csrfHeaderName, _csrfToken);
+		if (contentType != null) {
+			headers.setContentType(contentType);
+		}
+		return _rest.exchange(_baseUrl + path, method, new HttpEntity<>(body, headers), String.class, uriVariables);
+	}
+
+	private void startSession() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(HttpHeaders.AUTHORIZATION, _authorization);
+		ResponseEntity<String> response = _rest.exchange(_baseUrl + "/csrf", HttpMethod.GET,
+			new HttpEntity<>(headers), String.class);
+		if (!response.getStatusCode().is2xxSuccessful()) {
+			throw new IllegalStateException("Login failed with status " + response.getStatusCodeValue());
+		}
+		List<String> cookies = new ArrayList<>();
+		for (String setCookie : response.getHeaders().getOrEmpty(HttpHeaders.SET_COOKIE)) {
+			cookies.add(setCookie.split(";", 2)[0]);
+		}
+		_cookies = String.join("; ", cookies);
+		try {
+			Map<String, String> token = JSON.readValue(response.getBody(), new TypeReference<Map<String, String>>() {});
+			_csrfHeaderName = token.get("headerName");
+			_csrfToken = token.get("token");
+		} catch (IOException e) {
+			throw new IllegalStateException("Unreadable CSRF token response", e);
+		}
+	}
+}
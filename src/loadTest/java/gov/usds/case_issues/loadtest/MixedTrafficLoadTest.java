@@ -0,0 +1,229 @@
+package gov.usds.case_issues.loadtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import gov.usds.case_issues.db.model.CaseManagementSystem;
+import gov.usds.case_issues.db.model.CaseType;
+import gov.usds.case_issues.test_util.CaseIssueApiTestBase;
+
+/**
+ * Seeds a case group at something like production scale and then drives a mix of hitlist, case detail,
+ * snooze and upload requests at a running server from several threads, logging throughput and latency
+ * percentiles for each kind of request. This needs the test database (see the testDbStart task), and is run
+ * with the loadTest task rather than with the regular tests; the size of the run is set with loadtest.*
+ * properties (e.g. <code>./gradlew loadTest -Ploadtest.cases=1000000 -Ploadtest.threads=16</code>).
+ */
+@SpringBootTest(webEnvironment=WebEnvironment.RANDOM_PORT)
+@ActiveProfiles({"dev", "loadtest"})
+public class MixedTrafficLoadTest extends CaseIssueApiTestBase {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MixedTrafficLoadTest.class);
+
+	private static final String SYSTEM_TAG = "LOADSYS";
+	private static final String TYPE_TAG = "LOADTYPE";
+	private static final String ISSUE_TYPE = "LOADED";
+	private static final String UPLOAD_ISSUE_TYPE = "LOAD_UPLOADED";
+	private static final String RECEIPT_PREFIX = "LT";
+	/* every fourth case has only a closed issue, so it is left out of the hitlist and of snooze updates */
+	private static final int CLOSED_EVERY = 4;
+	private static final int SNOOZED_EVERY = 3;
+	private static final int MAX_SNOOZE_DAYS = 30;
+	private static final String READER = "admin";
+	private static final String UPLOADER = "service";
+
+	private static final String HITLIST = "/api/cases/{sys}/{type}?mainFilter={filter}&size=20";
+	private static final String CASE_DETAILS = "/api/caseDetails/{sys}/{receipt}";
+	private static final String SNOOZE = CASE_DETAILS + "/activeSnooze";
+	private static final String UPLOAD = "/api/cases/{sys}/{type}/{issueType}";
+
+	/** Relative frequency of each operation: hitlist pages, case details, snooze changes and uploads. */
+	private static final int[] WEIGHTS = {50, 30, 18, 2};
+
+	@LocalServerPort
+	private int _port;
+	@Autowired
+	private JdbcTemplate _jdbc;
+	@Value("${spring.jpa.properties.hibernate.default_schema:public}")
+	private String _schema;
+	@Value("${loadtest.cases:100000}")
+	private int _caseCount;
+	@Value("${loadtest.threads:8}")
+	private int _threadCount;
+	@Value("${loadtest.duration:PT1M}")
+	private Duration _duration;
+	@Value("${loadtest.upload-size:1000}")
+	private int _uploadSize;
+
+	private final ObjectMapper _json = new ObjectMapper();
+	private final LatencyRecorder _recorder = new LatencyRecorder();
+	private ZonedDateTime _seedTime;
+
+	@Before
+	public void seed() {
+		truncateDb();
+		CaseManagementSystem system = _dataService.ensureCaseManagementSystemInitialized(SYSTEM_TAG, "Load Test System", null);
+		CaseType type = _dataService.ensureCaseTypeInitialized(TYPE_TAG, "Load Test Type", null);
+		_seedTime = ZonedDateTime.now();
+		long started = System.nanoTime();
+		String sequence = "nextval('" + _schema + ".case_issue_entity_id_sequence')";
+		_jdbc.update("INSERT INTO " + _schema + ".trouble_case (internal_id, created_at, updated_at, "
+				+ "case_management_system_internal_id, case_type_internal_id, receipt_number, case_creation, extra_data) "
+			+ "SELECT " + sequence + ", now(), now(), ?, ?, CONCAT(?, n), CAST(? AS timestamptz) - n * interval '1 hour', "
+				+ "jsonb_build_object('channelType', (ARRAY['Pigeon', 'Semaphore', 'Carrier'])[n % 3 + 1], 'caseAge', n) "
+			+ "FROM generate_series(1, ?) n",
+			system.getInternalId(), type.getInternalId(), RECEIPT_PREFIX, _seedTime.toOffsetDateTime(), _caseCount);
+		_jdbc.update("INSERT INTO " + _schema + ".case_issue (internal_id, created_at, updated_at, "
+				+ "issue_case_internal_id, issue_type, issue_created, issue_closed) "
+			+ "SELECT " + sequence + ", now(), now(), internal_id, ?, case_creation, "
+				+ "CASE WHEN CAST(SUBSTRING(receipt_number FROM 3) AS integer) % ? = 0 THEN now() END "
+			+ "FROM " + _schema + ".trouble_case",
+			ISSUE_TYPE, CLOSED_EVERY);
+		_jdbc.update("INSERT INTO " + _schema + ".case_snooze (internal_id, created_at, updated_at, "
+				+ "snooze_case_internal_id, snooze_reason, snooze_start, snooze_end) "
+			+ "SELECT " + sequence + ", now(), now(), internal_id, 'assigned_case', now(), "
+				+ "now() + (internal_id % ?) * interval '1 day' "
+			+ "FROM " + _schema + ".trouble_case WHERE internal_id % ? = 0",
+			MAX_SNOOZE_DAYS, SNOOZED_EVERY);
+		_jdbc.execute("ANALYZE");
+		LOG.info("Seeded {} cases in {} ms", _caseCount, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+	}
+
+	@Test
+	public void mixedTraffic_seededCaseGroup_noServerErrors() throws InterruptedException, ExecutionException {
+		ExecutorService workers = Executors.newFixedThreadPool(_threadCount);
+		long started = System.nanoTime();
+		long deadline = started + _duration.toNanos();
+		List<Future<?>> running = new ArrayList<>();
+		for (int i = 0; i < _threadCount; i++) {
+			long seed = i;
+			running.add(workers.submit(() -> drive(new Random(seed), deadline)));
+		}
+		for (Future<?> worker : running) {
+			worker.get();
+		}
+		workers.shutdown();
+		long elapsed = System.nanoTime() - started;
+		LOG.info("Load test results ({} cases, {} threads, {}):\n{}",
+			_caseCount, _threadCount, _duration, _recorder.report(elapsed));
+
+		assertTrue("some hitlist pages were fetched", _recorder.getRequestCount("hitlist ACTIVE") > 0);
+		assertTrue("some case details were fetched", _recorder.getRequestCount("case details") > 0);
+		assertEquals("server errors", 0, _recorder.getServerErrorCount());
+	}
+
+	private void drive(Random random, long deadline) {
+		String baseUrl = "http://localhost:" + _port;
+		LoadTestClient reader = new LoadTestClient(baseUrl, READER);
+		LoadTestClient uploader = new LoadTestClient(baseUrl, UPLOADER);
+		int totalWeight = 0;
+		for (int w : WEIGHTS) {
+			totalWeight += w;
+		}
+		while (System.nanoTime() < deadline) {
+			int roll = random.nextInt(totalWeight);
+			if (roll < WEIGHTS[0]) {
+				fetchHitlist(reader, random);
+			} else if (roll < WEIGHTS[0] + WEIGHTS[1]) {
+				timed("case details", () -> reader.get(CASE_DETAILS, SYSTEM_TAG, openReceipt(random)));
+			} else if (roll < WEIGHTS[0] + WEIGHTS[1] + WEIGHTS[2]) {
+				String body = "{\"reason\": \"assigned_case\", \"duration\": " + (1 + random.nextInt(MAX_SNOOZE_DAYS)) + "}";
+				timed("snooze update", () -> reader.put(SNOOZE, MediaType.APPLICATION_JSON, body,
+					SYSTEM_TAG, openReceipt(random)));
+			} else {
+				String csv = uploadCsv(random);
+				timed("csv upload", () -> uploader.put(UPLOAD, MediaType.valueOf("text/csv"), csv,
+					SYSTEM_TAG, TYPE_TAG, UPLOAD_ISSUE_TYPE));
+			}
+		}
+	}
+
+	/** A first page of active or snoozed cases, sometimes filtered, sometimes followed by the page after it. */
+	private void fetchHitlist(LoadTestClient reader, Random random) {
+		String filter = random.nextBoolean() ? "ACTIVE" : "SNOOZED";
+		String url = HITLIST;
+		String name = "hitlist " + filter;
+		if (random.nextInt(SNOOZED_EVERY) == 0) {
+			url += "&filter_dataField[channelType]=Pigeon";
+			name += " filtered";
+		}
+		String firstPage = url;
+		ResponseEntity<String> page = timed(name, () -> reader.get(firstPage, SYSTEM_TAG, TYPE_TAG, filter));
+		String nextReference = lastPageReference(page);
+		if (nextReference != null && random.nextBoolean()) {
+			String nextPage = url + "&pageReference={ref}";
+			timed("hitlist next page", () -> reader.get(nextPage, SYSTEM_TAG, TYPE_TAG, filter, nextReference));
+		}
+	}
+
+	private String lastPageReference(ResponseEntity<String> page) {
+		if (!page.getStatusCode().is2xxSuccessful()) {
+			return null;
+		}
+		try {
+			JsonNode cases = _json.readTree(page.getBody());
+			return cases.size() == 0 ? null : cases.get(cases.size() - 1).path("pageReference").asText(null);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unreadable hitlist page", e);
+		}
+	}
+
+	private String openReceipt(Random random) {
+		int n;
+		do {
+			n = 1 + random.nextInt(_caseCount);
+		} while (n % CLOSED_EVERY == 0);
+		return RECEIPT_PREFIX + n;
+	}
+
+	/** A CSV upload of randomly chosen existing cases, for an issue type of its own so the hitlist is not disturbed. */
+	private String uploadCsv(Random random) {
+		StringBuilder csv = new StringBuilder("receiptNumber,creationDate,channelType\n");
+		random.ints(1, _caseCount + 1).distinct().limit(Math.min(_uploadSize, _caseCount)).forEach(n -> csv
+			.append(RECEIPT_PREFIX).append(n).append(',')
+			.append(_seedTime.minusHours(n).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME)).append(",Pigeon\n"));
+		return csv.toString();
+	}
+
+	private ResponseEntity<String> timed(String endpoint, Request request) {
+		long start = System.nanoTime();
+		ResponseEntity<String> response = request.send();
+		_recorder.record(endpoint, System.nanoTime() - start, response.getStatusCodeValue());
+		return response;
+	}
+
+	@FunctionalInterface
+	private interface Request {
+		ResponseEntity<String> send();
+	}
+}
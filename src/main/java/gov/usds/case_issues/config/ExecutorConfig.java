@@ -0,0 +1,70 @@
+package gov.usds.case_issues.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.task.TaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * The thread pools for work that is handed off from request threads. Each kind of work gets its own bounded pool,
+ * so that a burst of it is turned away instead of queueing up indefinitely or starving everything else.
+ */
+@Configuration
+public class ExecutorConfig {
+
+	/** Processes background issue uploads. */
+	public static final String UPLOAD_EXECUTOR = "uploadExecutor";
+	/** Recomputes weekly KPI totals; its size also caps the database connections those refreshes can hold. */
+	public static final String KPI_EXECUTOR = "kpiExecutor";
+	/** Sends case group change notifications to listening clients, one task per client with anything to send. */
+	public static final String CASE_EVENT_EXECUTOR = "caseEventExecutor";
+
+	/**
+	 * Declaring any executor turns off the one Spring Boot would otherwise provide for async requests, so
+	 * declare that one too, configured as usual from the spring.task.execution properties.
+	 */
+	@Lazy
+	@Primary
+	@Bean(name={TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+		AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME})
+	public ThreadPoolTaskExecutor applicationTaskExecutor(TaskExecutorBuilder builder) {
+		return builder.build();
+	}
+
+	@Bean(UPLOAD_EXECUTOR)
+	public ThreadPoolTaskExecutor uploadExecutor(TaskExecutorBuilder builder,
+			@Value("${upload-processing.threads:2}") int threads,
+			@Value("${upload-processing.queue-capacity:10}") int queueCapacity) {
+		return bounded(builder, "issue-upload-", threads, queueCapacity)
+			.awaitTermination(true)
+			.build();
+	}
+
+	@Bean(KPI_EXECUTOR)
+	public ThreadPoolTaskExecutor kpiExecutor(TaskExecutorBuilder builder,
+			@Value("${kpi.executor.threads:3}") int threads,
+			@Value("${kpi.executor.queue-capacity:20}") int queueCapacity) {
+		return bounded(builder, "kpi-refresh-", threads, queueCapacity).build();
+	}
+
+	@Bean(CASE_EVENT_EXECUTOR)
+	public ThreadPoolTaskExecutor caseEventExecutor(TaskExecutorBuilder builder,
+			@Value("${case-events.threads:4}") int threads,
+			@Value("${case-events.queue-capacity:200}") int queueCapacity) {
+		return bounded(builder, "case-events-", threads, queueCapacity).build();
+	}
+
+	private static TaskExecutorBuilder bounded(TaskExecutorBuilder builder, String threadNamePrefix, int threads,
+			int queueCapacity) {
+		return builder
+			.corePoolSize(threads)
+			.maxPoolSize(threads)
+			.queueCapacity(queueCapacity)
+			.threadNamePrefix(threadNamePrefix);
+	}
+}
@@ -0,0 +1,59 @@
+package gov.usds.case_issues.config;
+
+import java.time.Duration;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import gov.usds.case_issues.db.metrics.HibernateLoadListener;
+import gov.usds.case_issues.db.metrics.MeteredDataSourcePostProcessor;
+import gov.usds.case_issues.db.metrics.QueryMetrics;
+import gov.usds.case_issues.db.metrics.QueryMetricsInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Opt-in instrumentation of database access, for tracking down slow or chatty endpoints: turned on by
+ * the "query-metrics" profile, and reported through the actuator metrics endpoint.
+ */
+@Configuration
+@Profile("query-metrics")
+public class QueryMetricsConfig implements WebMvcConfigurer {
+
+	private final QueryMetrics _metrics;
+
+	public QueryMetricsConfig(MeterRegistry registry,
+			@Value("${query-metrics.slow-statement-threshold:PT0.5S}") Duration slowStatementThreshold,
+			EntityManagerFactory entityManagerFactory) {
+		_metrics = new QueryMetrics(registry, slowStatementThreshold);
+		HibernateLoadListener listener = new HibernateLoadListener(_metrics);
+		EventListenerRegistry listeners = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+			.getServiceRegistry().getService(EventListenerRegistry.class);
+		listeners.appendListeners(EventType.POST_LOAD, listener);
+		listeners.appendListeners(EventType.INIT_COLLECTION, listener);
+	}
+
+	@Bean
+	public QueryMetrics queryMetrics() {
+		return _metrics;
+	}
+
+	@Bean
+	public static MeteredDataSourcePostProcessor meteredDataSourcePostProcessor(ObjectProvider<QueryMetrics> metrics) {
+		return new MeteredDataSourcePostProcessor(metrics);
+	}
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(new QueryMetricsInterceptor(_metrics));
+	}
+}
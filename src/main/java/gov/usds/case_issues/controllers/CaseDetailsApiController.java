@@ -17,6 +17,7 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import gov.usds.case_issues.authorization.RequireReadCasePermission;
 import gov.usds.case_issues.authorization.RequireUpdateCasePermission;
@@ -30,6 +31,9 @@ import gov.usds.case_issues.model.CaseSnoozeSummaryFacade;
 import gov.usds.case_issues.model.SnoozeRequest;
 import gov.usds.case_issues.services.CaseAttachmentService;
 import gov.usds.case_issues.services.CaseDetailsService;
+import gov.usds.case_issues.services.ResourceVersionService;
+import gov.usds.case_issues.services.model.ResourceVersion;
+import springfox.documentation.annotations.ApiIgnore;
 
 @RestController
 @RequestMapping(CaseDetailsApiController.URL_TEMPLATE)
@@ -42,10 +46,19 @@ public class CaseDetailsApiController {
 	private CaseDetailsService _caseDetailsService;
 	@Autowired
 	private CaseAttachmentService _attachmentService;
+	@Autowired
+	private ResourceVersionService _versionService;
 
 	@GetMapping
-	public CaseDetails getCaseDetails(@PathVariable String caseManagementSystemTag, @PathVariable String receiptNumber) {
-		return _caseDetailsService.findCaseDetails(caseManagementSystemTag, receiptNumber);
+	public ResponseEntity<CaseDetails> getCaseDetails(@PathVariable String caseManagementSystemTag, @PathVariable String receiptNumber,
+			@ApiIgnore WebRequest request) {
+		Optional<ResourceVersion> version = _versionService.getCaseDetailsVersion(caseManagementSystemTag, receiptNumber);
+		if (version.isPresent() && request.checkNotModified(version.get().getETag(), version.get().getLastModified())) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(ResourceVersion.REVALIDATE).build();
+		}
+		return ResponseEntity.ok()
+			.cacheControl(ResourceVersion.REVALIDATE)
+			.body(_caseDetailsService.findCaseDetails(caseManagementSystemTag, receiptNumber));
 	}
 
 	@GetMapping("activeSnooze")
@@ -61,7 +74,6 @@ public class CaseDetailsApiController {
 	@DeleteMapping("activeSnooze")
 	@RequireUpdateCasePermission
 	public ResponseEntity<Void> endActiveSnooze(@PathVariable String caseManagementSystemTag, @PathVariable String receiptNumber) {
-		// e-tag could be added here with the end-time of the snooze
 		if (_caseDetailsService.endActiveSnooze(caseManagementSystemTag, receiptNumber)) {
 			return new ResponseEntity<>(HttpStatus.OK);
 		} else {
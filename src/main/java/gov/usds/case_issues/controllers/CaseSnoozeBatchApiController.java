@@ -0,0 +1,53 @@
+package gov.usds.case_issues.controllers;
+
+import java.util.List;
+
+import javax.validation.Valid;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import gov.usds.case_issues.authorization.RequireReadCasePermission;
+import gov.usds.case_issues.authorization.RequireUpdateCasePermission;
+import gov.usds.case_issues.model.BatchSnoozeRequest;
+import gov.usds.case_issues.model.BatchSnoozeResult;
+import gov.usds.case_issues.services.CaseDetailsService;
+
+/**
+ * Snooze (or end the snoozes on) many cases in one request, for triage work that applies the same reason
+ * and notes to a long list of cases. Cases that cannot be found do not fail the request: the result for
+ * each receipt number says what happened to it.
+ */
+@RestController
+@RequestMapping(CaseSnoozeBatchApiController.URL_TEMPLATE)
+@RequireReadCasePermission
+public class CaseSnoozeBatchApiController {
+
+	public static final String URL_TEMPLATE = "/api/caseSnoozes/{caseManagementSystemTag}";
+
+	@Autowired
+	private CaseDetailsService _caseDetailsService;
+
+	@PutMapping
+	@RequireUpdateCasePermission
+	public List<BatchSnoozeResult> changeActiveSnoozes(@PathVariable String caseManagementSystemTag,
+			@RequestBody @Valid BatchSnoozeRequest requestedSnooze) {
+		return _caseDetailsService.updateSnoozes(caseManagementSystemTag, requestedSnooze);
+	}
+
+	/**
+	 * End the active snoozes on a list of cases. This is a POST to a sub-resource rather than a DELETE, since
+	 * a request body on a DELETE is dropped by some clients and proxies.
+	 */
+	@PostMapping("ended")
+	@RequireUpdateCasePermission
+	public List<BatchSnoozeResult> endActiveSnoozes(@PathVariable String caseManagementSystemTag,
+			@RequestBody List<String> receiptNumbers) {
+		return _caseDetailsService.endActiveSnoozes(caseManagementSystemTag, receiptNumbers);
+	}
+}
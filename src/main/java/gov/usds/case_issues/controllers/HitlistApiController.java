@@ -2,6 +2,10 @@ package gov.usds.case_issues.controllers;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
@@ -13,6 +17,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.UnaryOperator;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -22,6 +27,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -35,6 +41,10 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.dataformat.csv.CsvMapper;
@@ -49,16 +59,24 @@ import gov.usds.case_issues.db.model.CaseIssueUpload;
 import gov.usds.case_issues.db.model.TroubleCase;
 import gov.usds.case_issues.db.model.UploadStatus;
 import gov.usds.case_issues.model.AttachmentRequest;
+import gov.usds.case_issues.model.CaseExportFormat;
 import gov.usds.case_issues.model.CaseRequest;
 import gov.usds.case_issues.model.CaseSnoozeFilter;
 import gov.usds.case_issues.model.CaseSummary;
 import gov.usds.case_issues.model.DateRange;
+import gov.usds.case_issues.model.UploadProgress;
+import gov.usds.case_issues.services.CaseExportService;
 import gov.usds.case_issues.services.CaseFilteringService;
+import gov.usds.case_issues.services.CaseGroupEventService;
 import gov.usds.case_issues.services.CaseListService;
 import gov.usds.case_issues.services.FilterFactory;
 import gov.usds.case_issues.services.IssueUploadService;
+import gov.usds.case_issues.services.ResourceVersionService;
+import gov.usds.case_issues.services.UploadMetricsService;
+import gov.usds.case_issues.services.UploadStatusService;
 import gov.usds.case_issues.services.model.CaseFilter;
 import gov.usds.case_issues.services.model.CaseGroupInfo;
+import gov.usds.case_issues.services.model.ResourceVersion;
 import gov.usds.case_issues.validators.FilterParameter;
 import gov.usds.case_issues.validators.TagFragment;
 import io.swagger.annotations.ApiImplicitParam;
@@ -80,6 +98,16 @@ public class HitlistApiController {
 	private CaseFilteringService _filteringService;
 	@Autowired
 	private IssueUploadService _uploadService;
+	@Autowired
+	private UploadStatusService _uploadStatusService;
+	@Autowired
+	private ResourceVersionService _versionService;
+	@Autowired
+	private CaseGroupEventService _eventService;
+	@Autowired
+	private CaseExportService _exportService;
+	@Autowired
+	private UploadMetricsService _uploadMetrics;
 
 	protected static final class FilterParams {
 		protected static final String STEM = "filter_";
@@ -91,6 +119,10 @@ public class HitlistApiController {
 		protected static final String COMMENT_CONTENT = "hasComment";
 		protected static final String DATA_FIELD = "dataField";
 	}
+	private static final String STREAMING_DESCRIPTION =
+		"Apply the upload in chunks as it is read, rather than reading the entire request first";
+	private static final String ASYNC_DESCRIPTION =
+		"Return as soon as the upload is accepted, and process it in the background";
 	private static final Pattern FILTER_PATTERN = Pattern.compile(FilterParams.STEM + "(\\w+)(?:\\[(\\w+)\\])?");
 
 	@GetMapping("search")
@@ -133,7 +165,7 @@ public class HitlistApiController {
 			paramType="query"),
 	})
 	@GetMapping
-	public List<? extends CaseSummary> getCases(
+	public ResponseEntity<List<? extends CaseSummary>> getCases(
 			@PathVariable @ApiParam(value="The case management system to search in", required=true) String caseManagementSystemTag,
 			@PathVariable @ApiParam(value="The type of case to select", required=true) String caseTypeTag,
 			@RequestParam(required=true) @ApiParam(value="Which group of cases to select", required=true) Set<CaseSnoozeFilter> mainFilter,
@@ -142,8 +174,52 @@ public class HitlistApiController {
 			@RequestParam @ApiParam("An opaque parameter that specifies the page to fetch") Optional<String> pageReference,
 			@RequestParam Optional<String> snoozeReason,
 			@RequestParam(defaultValue = "20") @Range(max=CaseFilteringService.MAX_PAGE_SIZE) @ApiParam("The maximum records to return") int size,
+			@ApiIgnore @RequestParam MultiValueMap<@FilterParameter String, String> allParams,
+			@ApiIgnore WebRequest request
+			) {
+		List<CaseFilter> filters = buildFilters(mainFilter, caseCreationRangeBegin, caseCreationRangeEnd, snoozeReason, allParams);
+		ResourceVersion version = _versionService.getHitlistVersion(caseManagementSystemTag, caseTypeTag);
+		if (request.checkNotModified(version.getETag())) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(ResourceVersion.REVALIDATE).build();
+		}
+		return ResponseEntity.ok()
+			.cacheControl(ResourceVersion.REVALIDATE)
+			.body(_filteringService.getCases(caseManagementSystemTag, caseTypeTag, mainFilter, size, Optional.empty(), pageReference, filters));
+	}
+
+	/**
+	 * Stream every case that matches the filters (which are the same ones that {@link #getCases} takes), rather than
+	 * one page at a time, for exporting the list to a spreadsheet or another tool.
+	 */
+	@GetMapping("export")
+	public ResponseEntity<StreamingResponseBody> exportCases(
+			@PathVariable @ApiParam(value="The case management system to search in", required=true) String caseManagementSystemTag,
+			@PathVariable @ApiParam(value="The type of case to select", required=true) String caseTypeTag,
+			@RequestParam(required=true) @ApiParam(value="Which group of cases to select", required=true) Set<CaseSnoozeFilter> mainFilter,
+			@RequestParam(required=false) @DateTimeFormat(iso=ISO.DATE_TIME) ZonedDateTime caseCreationRangeBegin,
+			@RequestParam(required=false) @DateTimeFormat(iso=ISO.DATE_TIME) ZonedDateTime caseCreationRangeEnd,
+			@RequestParam Optional<String> snoozeReason,
+			@RequestParam(defaultValue = "CSV") @ApiParam("The format to export the cases in") CaseExportFormat format,
 			@ApiIgnore @RequestParam MultiValueMap<@FilterParameter String, String> allParams
 			) {
+		if (mainFilter.size() != 1) {
+			throw new IllegalArgumentException("Exactly one main filter must be specified");
+		}
+		CaseSnoozeFilter queryFilter = mainFilter.iterator().next();
+		List<CaseFilter> filters = buildFilters(mainFilter, caseCreationRangeBegin, caseCreationRangeEnd, snoozeReason, allParams);
+		// look the group up now, so that a bad path is a 404 rather than an empty export
+		CaseGroupInfo group = _listService.translatePath(caseManagementSystemTag, caseTypeTag);
+		String fileName = String.format("%s-%s-%s.%s", caseManagementSystemTag, caseTypeTag, queryFilter,
+			format.getFileExtension()).toLowerCase();
+		StreamingResponseBody body = out -> _exportService.export(group, queryFilter, filters, format, out);
+		return ResponseEntity.ok()
+			.contentType(MediaType.parseMediaType(format.getMediaType()))
+			.header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+			.body(body);
+	}
+
+	private static List<CaseFilter> buildFilters(Set<CaseSnoozeFilter> mainFilter, ZonedDateTime caseCreationRangeBegin,
+			ZonedDateTime caseCreationRangeEnd, Optional<String> snoozeReason, MultiValueMap<String, String> allParams) {
 		if (snoozeReason.isPresent() && !mainFilter.contains(CaseSnoozeFilter.SNOOZED)) {
 			throw new IllegalArgumentException("Snooze reason cannot be specified for cases that are not snoozed");
 		}
@@ -203,7 +279,7 @@ public class HitlistApiController {
 			}
 		}
 		LOG.debug("Derived filter list: {}", filters);
-		return _filteringService.getCases(caseManagementSystemTag, caseTypeTag, mainFilter, size, Optional.empty(), pageReference, filters);
+		return filters;
 	}
 
 	private static void assertSubparameter(String parameter, String subParameter) {
@@ -212,17 +288,35 @@ public class HitlistApiController {
 		}
 	}
 
+	/**
+	 * A Server-Sent Events feed of changes to this case group (uploads completed, cases snoozed, snoozes ended),
+	 * so that clients can re-fetch the hitlist when something has happened rather than polling for it.
+	 */
+	@GetMapping(value="events", produces=MediaType.TEXT_EVENT_STREAM_VALUE)
+	public SseEmitter getEvents(@PathVariable String caseManagementSystemTag, @PathVariable String caseTypeTag) {
+		return _eventService.subscribe(_listService.translatePath(caseManagementSystemTag, caseTypeTag));
+	}
+
 	@RequestMapping(value="summary", method=RequestMethod.GET)
 	public Map<String, Object> getSummary(@PathVariable String caseManagementSystemTag, @PathVariable String caseTypeTag) {
 		return _listService.getSummaryInfo(caseManagementSystemTag, caseTypeTag);
 	}
 
+	@GetMapping("uploads/{uploadId}")
+	public UploadProgress getUploadProgress(@PathVariable String caseManagementSystemTag, @PathVariable String caseTypeTag,
+			@PathVariable Long uploadId) {
+		CaseGroupInfo translated = _listService.translatePath(caseManagementSystemTag, caseTypeTag);
+		return new UploadProgress(_uploadStatusService.getUpload(translated, uploadId));
+	}
+
 	@PutMapping(value="/{issueTag}",consumes= {"text/csv"})
 	@RequireUploadPermission
 	public ResponseEntity<?> updateIssueListCsv(@PathVariable String caseManagementSystemTag, @PathVariable String caseTypeTag, @PathVariable String issueTag,
-			@RequestBody InputStream csvStream, @RequestParam(required=false) String uploadSchema) throws IOException {
+			@RequestBody InputStream csvStream, @RequestParam(required=false) String uploadSchema,
+			@RequestParam(defaultValue="false") @ApiParam(STREAMING_DESCRIPTION) boolean streaming,
+			@RequestParam(defaultValue="false") @ApiParam(ASYNC_DESCRIPTION) boolean async) throws IOException {
 		CaseGroupInfo translated = _listService.translatePath(caseManagementSystemTag, caseTypeTag);
-		return processCsvUpload(translated, issueTag, csvStream, ZonedDateTime.now(), uploadSchema);
+		return processCsvUpload(translated, issueTag, csvStream, ZonedDateTime.now(), uploadSchema, streaming, async);
 	}
 
 	@RequireUploadAndStructurePermission
@@ -230,28 +324,57 @@ public class HitlistApiController {
 	public ResponseEntity<?> updateIssueListCsvWithBackdate(@PathVariable String caseManagementSystemTag, @PathVariable String caseTypeTag, @PathVariable String issueTag,
 			@RequestBody InputStream csvStream,
 			@RequestParam(required=true) @DateTimeFormat(iso=ISO.DATE_TIME) ZonedDateTime effectiveDate,
-			@RequestParam(required=false) String uploadSchema) throws IOException {
+			@RequestParam(required=false) String uploadSchema,
+			@RequestParam(defaultValue="false") @ApiParam(STREAMING_DESCRIPTION) boolean streaming,
+			@RequestParam(defaultValue="false") @ApiParam(ASYNC_DESCRIPTION) boolean async) throws IOException {
 		CaseGroupInfo translated = _listService.translatePath(caseManagementSystemTag, caseTypeTag);
-		return processCsvUpload(translated, issueTag, csvStream, effectiveDate, uploadSchema);
+		return processCsvUpload(translated, issueTag, csvStream, effectiveDate, uploadSchema, streaming, async);
 	}
 
 	private ResponseEntity<?> processCsvUpload(CaseGroupInfo translated, String issueTag, InputStream csvStream,
-			ZonedDateTime effectiveDate, String uploadSchema) throws IOException {
+			ZonedDateTime effectiveDate, String uploadSchema, boolean streaming, boolean async) throws IOException {
+		DataFormatSpec spec = _listService.getUploadFormat(uploadSchema);
+		if (async) {
+			// the request body is gone once we return, so save it somewhere the background upload can read it
+			Path spooled = Files.createTempFile("issue-upload-", ".csv");
+			try {
+				Files.copy(csvStream, spooled, StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException e) {
+				Files.deleteIfExists(spooled);
+				throw e;
+			}
+			CaseIssueUpload started = _uploadService.submitIssueStream(translated, issueTag,
+				new SpooledCsvUpload(spooled, spec, parsed -> _uploadMetrics.timeParsing(translated, issueTag, parsed)),
+				effectiveDate);
+			return createAsyncUploadResponse(translated, started);
+		}
+		MappingIterator<Map<String, Object>> valueIterator = readCsv(csvStream);
+		if (streaming) {
+			Iterator<CaseRequest> requests = _uploadMetrics.timeParsing(translated, issueTag,
+				streamCaseUploads(valueIterator, spec));
+			return createUploadResponse(_uploadService.putIssueStream(translated, issueTag, requests, effectiveDate));
+		}
+		long parseStart = System.nanoTime();
+		List<CaseRequest> newIssueCases = processCaseUploads(valueIterator, spec);
+		_uploadMetrics.recordParse(translated, issueTag, System.nanoTime() - parseStart);
+		return createUploadResponse(_uploadService.putIssueList(translated, issueTag, newIssueCases, effectiveDate));
+	}
+
+	static MappingIterator<Map<String, Object>> readCsv(InputStream csvStream) throws IOException {
 		CsvSchema schema = CsvSchema.emptySchema().withHeader();
-		MappingIterator<Map<String, Object>> valueIterator = new CsvMapper()
+		return new CsvMapper()
 			.readerFor(Map.class)
 			.with(schema)
 			.readValues(csvStream);
-		List<CaseRequest> newIssueCases = processCaseUploads(valueIterator, uploadSchema);
-		return createUploadResponse(_uploadService.putIssueList(translated, issueTag, newIssueCases, effectiveDate));
 	}
 
 	@RequireUploadPermission
 	@PutMapping(value="/{issueTag}",consumes= {MediaType.APPLICATION_JSON_VALUE})
 	public ResponseEntity<?> updateIssueListJson(@PathVariable String caseManagementSystemTag, @PathVariable String caseTypeTag, @PathVariable String issueTag,
-			@RequestBody List<Map<String,Object>> jsonData, @RequestParam(required=false) String uploadSchema) throws IOException {
+			@RequestBody List<Map<String,Object>> jsonData, @RequestParam(required=false) String uploadSchema,
+			@RequestParam(defaultValue="false") @ApiParam(ASYNC_DESCRIPTION) boolean async) throws IOException {
 		CaseGroupInfo translated = _listService.translatePath(caseManagementSystemTag, caseTypeTag);
-		return processJsonUpload(translated, issueTag, jsonData, ZonedDateTime.now(), uploadSchema);
+		return processJsonUpload(translated, issueTag, jsonData, ZonedDateTime.now(), uploadSchema, async);
 	}
 
 	@RequireUploadAndStructurePermission
@@ -259,15 +382,25 @@ public class HitlistApiController {
 	public ResponseEntity<?> updateIssueListJsonWithBackdate(@PathVariable String caseManagementSystemTag, @PathVariable String caseTypeTag, @PathVariable String issueTag,
 			@RequestBody List<Map<String,Object>> jsonData,
 			@RequestParam(required=true) @DateTimeFormat(iso=ISO.DATE_TIME) ZonedDateTime effectiveDate,
-			@RequestParam(required=false) String uploadSchema) throws IOException {
+			@RequestParam(required=false) String uploadSchema,
+			@RequestParam(defaultValue="false") @ApiParam(ASYNC_DESCRIPTION) boolean async) throws IOException {
 		CaseGroupInfo translated = _listService.translatePath(caseManagementSystemTag, caseTypeTag);
-		return processJsonUpload(translated, issueTag, jsonData, effectiveDate, uploadSchema);
+		return processJsonUpload(translated, issueTag, jsonData, effectiveDate, uploadSchema, async);
 	}
 
 	private ResponseEntity<?> processJsonUpload(CaseGroupInfo translated, String issueTag,
-			List<Map<String, Object>> jsonData, ZonedDateTime effectiveDate, String uploadSchema) {
+			List<Map<String, Object>> jsonData, ZonedDateTime effectiveDate, String uploadSchema, boolean async) {
 		Iterator<Map<String,Object>> valueIterator = jsonData.listIterator();
-		List<CaseRequest> newIssueCases = processCaseUploads(valueIterator, uploadSchema);
+		DataFormatSpec spec = _listService.getUploadFormat(uploadSchema);
+		// the JSON itself has already been read by the time we get here: this is the conversion to case requests
+		long parseStart = System.nanoTime();
+		List<CaseRequest> newIssueCases = processCaseUploads(valueIterator, spec);
+		_uploadMetrics.recordParse(translated, issueTag, System.nanoTime() - parseStart);
+		if (async) {
+			CaseIssueUpload started = _uploadService.submitIssueStream(translated, issueTag,
+				newIssueCases::iterator, effectiveDate);
+			return createAsyncUploadResponse(translated, started);
+		}
 		return createUploadResponse(_uploadService.putIssueList(translated, issueTag, newIssueCases, effectiveDate));
 	}
 
@@ -277,26 +410,85 @@ public class HitlistApiController {
 				ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
 	}
 
-	private List<CaseRequest> processCaseUploads(Iterator<Map<String, Object>> valueIterator, String schemaName) {
+	/** Accepted, with a pointer to where the progress of the upload can be checked. */
+	private static ResponseEntity<?> createAsyncUploadResponse(CaseGroupInfo translated, CaseIssueUpload started) {
+		URI statusLocation = ServletUriComponentsBuilder.fromCurrentContextPath()
+			.path("/api/cases/{caseManagementSystemTag}/{caseTypeTag}/uploads/{uploadId}")
+			.buildAndExpand(
+				translated.getCaseManagementSystemTag(),
+				translated.getCaseTypeTag(),
+				started.getInternalId())
+			.toUri();
+		return ResponseEntity.accepted().location(statusLocation).body(new UploadProgress(started));
+	}
+
+	static List<CaseRequest> processCaseUploads(Iterator<Map<String, Object>> valueIterator, DataFormatSpec spec) {
 		List<CaseRequest> newIssueCases = new ArrayList<>();
-		DataFormatSpec spec = _listService.getUploadFormat(schemaName);
-		try {
-			Set<String> seenReceipts = new HashSet<>();
-			while (valueIterator.hasNext()) {
-				MapBasedCaseRequest req = new MapBasedCaseRequest(spec, valueIterator.next());
-				if (!seenReceipts.add(req.getReceiptNumber())) {
-					throw new IllegalArgumentException(
-						String.format("Multiple records in input with same receipt number (%s)",
-								req.getReceiptNumber()));
-				}
-				newIssueCases.add(req);
+		Iterator<CaseRequest> requests = streamCaseUploads(valueIterator, spec);
+		Set<String> seenReceipts = new HashSet<>();
+		while (requests.hasNext()) {
+			CaseRequest req = requests.next();
+			if (!seenReceipts.add(req.getReceiptNumber())) {
+				throw new IllegalArgumentException(
+					String.format("Multiple records in input with same receipt number (%s)",
+							req.getReceiptNumber()));
 			}
-		} catch (DateTimeParseException badDate) {
-			throw new IllegalArgumentException("Incorrectly formatted case creation date in input"); // ... somewhere
+			newIssueCases.add(req);
 		}
 		return newIssueCases;
 	}
 
+	/** Lazily convert the raw input records to {@link CaseRequest}s, one at a time as they are requested. */
+	private static Iterator<CaseRequest> streamCaseUploads(Iterator<Map<String, Object>> valueIterator, DataFormatSpec spec) {
+		return new Iterator<CaseRequest>() {
+			@Override
+			public boolean hasNext() {
+				return valueIterator.hasNext();
+			}
+
+			@Override
+			public CaseRequest next() {
+				try {
+					return new MapBasedCaseRequest(spec, valueIterator.next());
+				} catch (DateTimeParseException badDate) {
+					throw new IllegalArgumentException("Incorrectly formatted case creation date in input"); // ... somewhere
+				}
+			}
+		};
+	}
+
+	/** A CSV upload that has been saved to a temporary file, to be parsed once it is picked up for processing. */
+	private static class SpooledCsvUpload implements IssueUploadService.DeferredUpload {
+
+		private final Path _file;
+		private final DataFormatSpec _spec;
+		private final UnaryOperator<Iterator<CaseRequest>> _parseTimer;
+		private InputStream _stream;
+
+		public SpooledCsvUpload(Path file, DataFormatSpec spec, UnaryOperator<Iterator<CaseRequest>> parseTimer) {
+			_file = file;
+			_spec = spec;
+			_parseTimer = parseTimer;
+		}
+
+		@Override
+		public Iterator<? extends CaseRequest> open() throws IOException {
+			_stream = Files.newInputStream(_file);
+			return _parseTimer.apply(streamCaseUploads(readCsv(_stream), _spec));
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				if (_stream != null) {
+					_stream.close();
+				}
+			} finally {
+				Files.deleteIfExists(_file);
+			}
+		}
+	}
+
 	private static class MapBasedCaseRequest implements CaseRequest {
 
 		private String _receipt;
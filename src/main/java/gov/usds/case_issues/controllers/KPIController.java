@@ -13,10 +13,12 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import gov.usds.case_issues.services.KPIService;
-
+import io.swagger.annotations.ApiOperation;
 
 /**
- * Controller to see information about the current user.
+ * Controller for the weekly resolution KPIs of a case group. Each KPI is a list with one value per week, most recent
+ * first; a value is null if its week could not be computed in time, and clients should show it as unavailable rather
+ * than as zero.
  */
 @RestController
 @RequestMapping("/api/reporting/{caseManagementSystemTag}/{caseTypeTag}")
@@ -26,14 +28,19 @@ public class KPIController {
 	KPIService _KPIService;
 
 	@GetMapping
+	@ApiOperation(value="Fetch the weekly resolution KPIs for a case group",
+		notes="Returns ResolvedTickets, DaysToResolution and DaysWorked, each a list with one value per week (most recent"
+			+ " first). Weeks that could not be computed in time are null, not zero. If the server is too busy to compute"
+			+ " them at all, or is configured not to return partial results, the response is 503 Service Unavailable.")
 	public Map<String, Object> getAppPerformanceMetrics(
 		@PathVariable String caseManagementSystemTag,
 		@PathVariable String caseTypeTag,
-		@RequestParam(required=false) @DateTimeFormat(iso=ISO.DATE_TIME) ZonedDateTime start
+		@RequestParam(required=false) @DateTimeFormat(iso=ISO.DATE_TIME) ZonedDateTime start,
+		@RequestParam(defaultValue="" + KPIService.DEFAULT_WEEKS) int weeks
 	) {
 		if (start == null) {
-			return _KPIService.getKPIData(caseManagementSystemTag, caseTypeTag, ZonedDateTime.now());
+			return _KPIService.getKPIData(caseManagementSystemTag, caseTypeTag, ZonedDateTime.now(), weeks);
 		}
-		return _KPIService.getKPIData(caseManagementSystemTag, caseTypeTag, start);
+		return _KPIService.getKPIData(caseManagementSystemTag, caseTypeTag, start, weeks);
 	}
 }
@@ -5,6 +5,7 @@ import javax.validation.ConstraintViolationException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -55,4 +56,10 @@ public class ApiControllerAdvice {
 		return new SpringRestError(e, HttpStatus.CONFLICT, req);
 	}
 
+	@ExceptionHandler
+	@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+	public SpringRestError handleTaskRejected(TaskRejectedException e, HttpServletRequest req) {
+		LOG.warn("Background task rejected: {}", e.getMessage());
+		return new SpringRestError(e, HttpStatus.SERVICE_UNAVAILABLE, req);
+	}
 }
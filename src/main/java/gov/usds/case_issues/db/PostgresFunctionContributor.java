@@ -0,0 +1,29 @@
+package gov.usds.case_issues.db;
+
+import org.hibernate.boot.MetadataBuilder;
+import org.hibernate.boot.spi.MetadataBuilderContributor;
+import org.hibernate.dialect.function.SQLFunctionTemplate;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * A mix-in class to add Hibernate support for "functions" that are actually wrappers around postgresql
+ * syntax that Hibernate cannot express on its own: the non-standard operators for JSON fields
+ * (e.g. <code>@></code>), and row-value comparisons.
+ */
+public class PostgresFunctionContributor implements MetadataBuilderContributor {
+
+	/** Wrapper function for <code>@></code>: returns true if the first argument contains the second argument. */
+	public static final String JSON_CONTAINS = "json_contains";
+	/** Row-value <code>&gt;</code>: see {@link RowValueComparison} for the argument layout. */
+	public static final String ROW_GREATER_THAN = "row_greater_than";
+	/** Row-value <code>&lt;</code>: see {@link RowValueComparison} for the argument layout. */
+	public static final String ROW_LESS_THAN = "row_less_than";
+
+	@Override
+	public void contribute(MetadataBuilder metadataBuilder) {
+		metadataBuilder.applySqlFunction(JSON_CONTAINS,
+			new SQLFunctionTemplate(StandardBasicTypes.BOOLEAN, "(?1 @> ?2::jsonb)"));
+		metadataBuilder.applySqlFunction(ROW_GREATER_THAN, new RowValueComparison(">"));
+		metadataBuilder.applySqlFunction(ROW_LESS_THAN, new RowValueComparison("<"));
+	}
+}
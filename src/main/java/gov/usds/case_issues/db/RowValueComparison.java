@@ -0,0 +1,67 @@
+package gov.usds.case_issues.db;
+
+import java.util.List;
+
+import org.hibernate.QueryException;
+import org.hibernate.dialect.function.SQLFunction;
+import org.hibernate.engine.spi.Mapping;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.type.StandardBasicTypes;
+import org.hibernate.type.Type;
+
+/**
+ * A Hibernate function that renders a row-value comparison, e.g. <code>(a, b, c) &gt; (?, ?, ?)</code>.
+ * The first half of the arguments make up the left-hand row and the second half the right-hand row,
+ * so the function must be called with an even (and non-zero) number of arguments.
+ * Unlike the equivalent chain of <code>OR</code>ed comparisons, postgresql can turn this into a
+ * single range condition on an index that has the compared columns in the same order.
+ */
+public class RowValueComparison implements SQLFunction {
+
+	private final String operator;
+
+	public RowValueComparison(String operator) {
+		this.operator = operator;
+	}
+
+	@Override
+	public boolean hasArguments() {
+		return true;
+	}
+
+	@Override
+	public boolean hasParenthesesIfNoArguments() {
+		return true;
+	}
+
+	@Override
+	public Type getReturnType(Type firstArgumentType, Mapping mapping) throws QueryException {
+		return StandardBasicTypes.BOOLEAN;
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public String render(Type firstArgumentType, List arguments, SessionFactoryImplementor factory)
+			throws QueryException {
+		int argCount = arguments.size();
+		if (argCount == 0 || argCount % 2 != 0) {
+			throw new QueryException("Row value comparison requires two rows of equal length, but got "
+				+ argCount + " arguments");
+		}
+		int rowLength = argCount / 2;
+		return "((" + join(arguments.subList(0, rowLength)) + ") " + operator + " ("
+			+ join(arguments.subList(rowLength, argCount)) + "))";
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static String join(List elements) {
+		StringBuilder joined = new StringBuilder();
+		for (Object element : elements) {
+			if (joined.length() > 0) {
+				joined.append(", ");
+			}
+			joined.append(element);
+		}
+		return joined.toString();
+	}
+}
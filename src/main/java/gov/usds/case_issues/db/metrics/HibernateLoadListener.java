@@ -0,0 +1,32 @@
+package gov.usds.case_issues.db.metrics;
+
+import org.hibernate.HibernateException;
+import org.hibernate.event.spi.InitializeCollectionEvent;
+import org.hibernate.event.spi.InitializeCollectionEventListener;
+import org.hibernate.event.spi.PostLoadEvent;
+import org.hibernate.event.spi.PostLoadEventListener;
+
+/**
+ * Reports entity loads and lazy collection fetches to {@link QueryMetrics}, so that N+1 patterns show up
+ * as a jump in loads per request even when the statements involved are individually fast.
+ */
+public class HibernateLoadListener implements PostLoadEventListener, InitializeCollectionEventListener {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient QueryMetrics _metrics;
+
+	public HibernateLoadListener(QueryMetrics metrics) {
+		_metrics = metrics;
+	}
+
+	@Override
+	public void onPostLoad(PostLoadEvent event) {
+		_metrics.entityLoaded();
+	}
+
+	@Override
+	public void onInitializeCollection(InitializeCollectionEvent event) throws HibernateException {
+		_metrics.collectionFetched();
+	}
+}
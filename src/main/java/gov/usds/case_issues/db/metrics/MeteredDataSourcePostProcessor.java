@@ -0,0 +1,70 @@
+package gov.usds.case_issues.db.metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+/**
+ * Wraps any {@link DataSource} in the application context so that connection checkouts and statement
+ * executions are reported to {@link QueryMetrics}. The metrics bean is looked up lazily, since post-processors
+ * are created before the beans it depends on.
+ */
+public class MeteredDataSourcePostProcessor implements BeanPostProcessor {
+
+	private final ObjectProvider<QueryMetrics> _metrics;
+
+	public MeteredDataSourcePostProcessor(ObjectProvider<QueryMetrics> metrics) {
+		_metrics = metrics;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+		if (bean instanceof DataSource) {
+			return wrap(DataSource.class, bean, null);
+		}
+		return bean;
+	}
+
+	private Object wrap(Class<?> jdbcInterface, Object target, String sql) {
+		InvocationHandler handler = (proxy, method, args) -> intercept(target, sql, method, args);
+		return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {jdbcInterface}, handler);
+	}
+
+	/**
+	 * @param sql the statement text that a prepared statement was created with (null for anything else).
+	 */
+	private Object intercept(Object target, String sql, Method method, Object[] args) throws Throwable {
+		boolean execution = target instanceof Statement && method.getName().startsWith("execute");
+		boolean checkout = target instanceof DataSource && method.getName().equals("getConnection");
+		String sqlArgument = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+		long start = System.nanoTime();
+		Object result;
+		try {
+			result = method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		} finally {
+			long elapsed = System.nanoTime() - start;
+			if (execution) {
+				_metrics.getObject().statementExecuted(sqlArgument != null ? sqlArgument : sql, elapsed);
+			} else if (checkout) {
+				_metrics.getObject().connectionAcquired(elapsed);
+			}
+		}
+		Class<?> returnType = method.getReturnType();
+		if (result != null && returnType.isInterface()
+				&& (Connection.class.isAssignableFrom(returnType) || Statement.class.isAssignableFrom(returnType))) {
+			return wrap(returnType, result, sqlArgument);
+		}
+		return result;
+	}
+}
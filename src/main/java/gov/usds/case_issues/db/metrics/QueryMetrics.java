@@ -0,0 +1,125 @@
+package gov.usds.case_issues.db.metrics;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Collects database activity for the request being handled on the current thread (statements executed,
+ * entities loaded, collections fetched, time spent waiting for a connection), and records it as Micrometer
+ * metrics tagged with the request's endpoint when the request is finished. Activity outside of a request
+ * (background uploads, session storage) is tagged with an endpoint of {@value #NO_ENDPOINT}.
+ */
+public class QueryMetrics {
+
+	private static final Logger LOG = LoggerFactory.getLogger(QueryMetrics.class);
+
+	/** Statements executed per request. */
+	public static final String REQUEST_STATEMENTS = "db.request.statements";
+	/** Entities loaded per request. */
+	public static final String REQUEST_ENTITY_LOADS = "db.request.entity.loads";
+	/** Lazy collections fetched per request. */
+	public static final String REQUEST_COLLECTION_FETCHES = "db.request.collection.fetches";
+	/** Execution time of each statement. */
+	public static final String STATEMENT_TIMER = "db.statement.execution";
+	/** Statements that took longer than the slow statement threshold. */
+	public static final String SLOW_STATEMENTS = "db.statement.slow";
+	/** Time spent waiting to get a connection from the pool. */
+	public static final String CONNECTION_ACQUIRE = "db.connection.acquire";
+
+	public static final String NO_ENDPOINT = "none";
+
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern NUMERIC_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+
+	private final ThreadLocal<RequestActivity> _current = new ThreadLocal<>();
+	private final MeterRegistry _registry;
+	private final long _slowStatementNanos;
+
+	public QueryMetrics(MeterRegistry registry, Duration slowStatementThreshold) {
+		_registry = registry;
+		_slowStatementNanos = slowStatementThreshold.toNanos();
+	}
+
+	public void startRequest(String endpoint) {
+		_current.set(new RequestActivity(endpoint));
+	}
+
+	public void endRequest() {
+		RequestActivity activity = _current.get();
+		if (activity == null) {
+			return;
+		}
+		_current.remove();
+		Tags tags = Tags.of("endpoint", activity.endpoint);
+		_registry.summary(REQUEST_STATEMENTS, tags).record(activity.statements);
+		_registry.summary(REQUEST_ENTITY_LOADS, tags).record(activity.entityLoads);
+		_registry.summary(REQUEST_COLLECTION_FETCHES, tags).record(activity.collectionFetches);
+	}
+
+	public void statementExecuted(String sql, long elapsedNanos) {
+		RequestActivity activity = _current.get();
+		if (activity != null) {
+			activity.statements++;
+		}
+		Tags tags = Tags.of("endpoint", endpoint(activity));
+		_registry.timer(STATEMENT_TIMER, tags).record(elapsedNanos, TimeUnit.NANOSECONDS);
+		if (elapsedNanos >= _slowStatementNanos) {
+			_registry.counter(SLOW_STATEMENTS, tags).increment();
+			LOG.warn("Slow statement ({} ms) for {}: {}",
+				TimeUnit.NANOSECONDS.toMillis(elapsedNanos), endpoint(activity), redact(sql));
+		}
+	}
+
+	public void connectionAcquired(long elapsedNanos) {
+		_registry.timer(CONNECTION_ACQUIRE, Tags.of("endpoint", endpoint(_current.get())))
+			.record(elapsedNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void entityLoaded() {
+		RequestActivity activity = _current.get();
+		if (activity != null) {
+			activity.entityLoads++;
+		}
+	}
+
+	public void collectionFetched() {
+		RequestActivity activity = _current.get();
+		if (activity != null) {
+			activity.collectionFetches++;
+		}
+	}
+
+	/**
+	 * Strip literal values out of a statement before it is logged. Bind parameters never make it into the
+	 * statement text, but native queries and Hibernate-generated SQL can still contain inline literals.
+	 */
+	public static String redact(String sql) {
+		if (sql == null) {
+			return "(unknown statement)";
+		}
+		String redacted = STRING_LITERAL.matcher(sql).replaceAll("'?'");
+		return NUMERIC_LITERAL.matcher(redacted).replaceAll("?");
+	}
+
+	private static String endpoint(RequestActivity activity) {
+		return activity == null ? NO_ENDPOINT : activity.endpoint;
+	}
+
+	private static class RequestActivity {
+		private final String endpoint;
+		private long statements;
+		private long entityLoads;
+		private long collectionFetches;
+
+		RequestActivity(String endpoint) {
+			this.endpoint = endpoint;
+		}
+	}
+}
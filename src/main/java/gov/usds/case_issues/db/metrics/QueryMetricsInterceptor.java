@@ -0,0 +1,32 @@
+package gov.usds.case_issues.db.metrics;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Marks the start and end of each request for {@link QueryMetrics}, naming the endpoint after the HTTP
+ * method and the matched URL pattern (not the actual path, so that each case does not get its own tag).
+ */
+public class QueryMetricsInterceptor implements HandlerInterceptor {
+
+	private final QueryMetrics _metrics;
+
+	public QueryMetricsInterceptor(QueryMetrics metrics) {
+		_metrics = metrics;
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+		_metrics.startRequest(request.getMethod() + " " + (pattern != null ? pattern : "unmapped"));
+		return true;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+		_metrics.endRequest();
+	}
+}
@@ -93,5 +93,9 @@ public class CaseIssueUpload extends UpdatableEntity {
 	public void setNewIssueCount(long newIssueCount) {
 		this.newIssueCount = newIssueCount;
 	}
+	/** Streamed uploads do not know how many records they contain until they have all been read. */
+	public void setUploadedRecordCount(long uploadedRecordCount) {
+		this.uploadedRecordCount = uploadedRecordCount;
+	}
 
 }
@@ -7,19 +7,15 @@ import java.util.Map;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
-import javax.persistence.NamedNativeQueries;
-import javax.persistence.NamedNativeQuery;
 import javax.persistence.OneToMany;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Pattern;
 
 import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.Type;
-import org.hibernate.annotations.TypeDef;
 import org.hibernate.annotations.Where;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import com.vladmihalcea.hibernate.type.json.JsonStringType;
 
 /**
  * A case that has been seen, at some point, by this system
@@ -28,100 +24,45 @@ import com.vladmihalcea.hibernate.type.json.JsonStringType;
 /* And yes, "Case" would be a simpler name, until you remember that it's a reserved word in every language ever */
 @Entity
 @DynamicUpdate
-@TypeDef(name="json", typeClass=JsonStringType.class)
-@NamedNativeQueries({
-	/* ALL SNOOZED CASES */
-	@NamedNativeQuery(
-		name = "summary",
-		query = "SELECT " + TroubleCase.CASE_SNOOZE_DECODE + " as snooze_state, count(1) "
-				+ "FROM " + TroubleCase.CASE_DTO_CTE
-				+ "GROUP BY " + TroubleCase.CASE_SNOOZE_DECODE
-	),
-	/* Resolved Cases */
-	@NamedNativeQuery(
-		name = "resolvedCount",
-		query = TroubleCase.RESOLVED_CASE_COUNT
-	),
-	@NamedNativeQuery(
-		name = "averageDaysToResoluton",
-		query = TroubleCase.AVERAGE_DAYS_TO_RESOLUTION
-	),
-	@NamedNativeQuery(
-		name = "averageDaysWorked",
-		query = TroubleCase.AVERAGE_DAYS_WORKED
-	),
-})
 public class TroubleCase extends TroubleCaseFixedData {
-	public static final String RESOLVED_CASE_COUNT =
-		"SELECT COUNT(DISTINCT c.internal_id) "
-		+ "FROM {h-schema}trouble_case c "
-		+ "WHERE case_management_system_internal_id = :caseManagementSystemId "
-		+ "AND case_type_internal_id = :caseTypeId "
-		// case has been closed
-		+ "AND EXISTS ("
-			+ "SELECT openissues1_.internal_id "
-			+ "FROM {h-schema}case_issue openissues1_ "
-			+ "WHERE c.internal_id=openissues1_.issue_case_internal_id "
-			+ "AND ( openissues1_.issue_closed IS NOT null) "
-			+ "AND openissues1_.issue_closed BETWEEN :caseClosedWindowStart and :caseClosedWindowEnd "
-		+ ") "
-		// case has been snoozed
-		+ "AND EXISTS ("
-			+ "	SELECT *"
-			+ " FROM {h-schema}case_snooze s "
-			+ " WHERE s.snooze_case_internal_id = c.internal_id "
-		+ ")";
-
-	public static final String AVERAGE_DAYS_TO_RESOLUTION =
-		"SELECT COALESCE(AVG(DATE_PART('day', i.issue_closed - c.case_creation)), 0) "
-		+ "FROM {h-schema}trouble_case c "
-		+ "INNER JOIN {h-schema}case_issue i "
-		+ "ON c.internal_id = i.issue_case_internal_id AND ( i.issue_closed IS NOT NULL) "
-		+ "WHERE case_management_system_internal_id = :caseManagementSystemId "
-		+ "AND case_type_internal_id = :caseTypeId "
-		// case has been closed
-		+ "AND EXISTS ("
-			+ "SELECT DISTINCT ON(openissues1_.internal_id) * "
-			+ "FROM {h-schema}case_issue openissues1_ "
-			+ "WHERE c.internal_id=openissues1_.issue_case_internal_id "
-			+ "AND ( openissues1_.issue_closed IS NOT NULL) "
-			+ "AND openissues1_.issue_closed BETWEEN :caseClosedWindowStart AND :caseClosedWindowEnd "
-			+ "ORDER BY openissues1_.internal_id, openissues1_.issue_created DESC"
+	/**
+	 * Resolution totals for the cases in a case group, for weeks :firstWeek through :lastWeek counting back from
+	 * :rangeStart (week 0 is the week immediately before it). A case counts toward a week if it has been snoozed
+	 * and had an issue closed during the week; the day totals are taken over the issues of those cases that were
+	 * closed during the same week (so a week's totals do not change once it is over), and are kept as sums and
+	 * counts so that they can be saved and averaged later.
+	 * The search starts from the issues closed in each week, so the cost depends on the weeks asked for rather
+	 * than on the size of the case group.
+	 */
+	public static final String WEEKLY_KPI_TOTALS =
+		"WITH weeks AS ("
+			+ "SELECT n AS week_index, "
+			+ "CAST(:rangeStart AS timestamptz) - (n + 1) * interval '1 week' AS window_start, "
+			+ "CAST(:rangeStart AS timestamptz) - n * interval '1 week' AS window_end "
+			+ "FROM generate_series(:firstWeek, :lastWeek) n"
+		+ "), week_cases AS ("
+			+ "SELECT DISTINCT w.week_index, c.internal_id AS case_id, c.case_creation "
+			+ "FROM weeks w "
+			+ "JOIN {h-schema}case_issue i ON i.issue_closed >= w.window_start AND i.issue_closed < w.window_end "
+			+ "JOIN {h-schema}trouble_case c ON c.internal_id = i.issue_case_internal_id "
+			+ "WHERE c.case_management_system_internal_id = :caseManagementSystemId "
+			+ "AND c.case_type_internal_id = :caseTypeId "
+			+ "AND EXISTS (SELECT 1 FROM {h-schema}case_snooze s WHERE s.snooze_case_internal_id = c.internal_id)"
 		+ ") "
-		// case has been snoozed
-		+ "AND EXISTS ("
-			+ "	SELECT *"
-			+ " FROM {h-schema}case_snooze s "
-			+ " WHERE s.snooze_case_internal_id = c.internal_id "
-		+ ")";
-
-		public static final String AVERAGE_DAYS_WORKED =
-		"SELECT COALESCE(AVG(DATE_PART('day', i.issue_closed - s.created_at)), 0) "
-		+ "FROM {h-schema}trouble_case c "
-		+ "INNER JOIN {h-schema}case_issue i "
-		+ "ON c.internal_id = i.issue_case_internal_id AND ( i.issue_closed IS NOT NULL) "
-		+ "INNER JOIN ( "
-			+ "SELECT DISTINCT ON(s1.snooze_case_internal_id) * "
-			+ "FROM {h-schema}case_snooze s1 "
-			+ "ORDER BY s1.snooze_case_internal_id, s1.created_at ASC "
-		+ ") s "
-		+ "ON c.internal_id = s.snooze_case_internal_id "
-		+ "WHERE case_management_system_internal_id = :caseManagementSystemId "
-		+ "AND case_type_internal_id = :caseTypeId "
-		// case has been closed
-		+ "AND EXISTS ("
-			+ "SELECT DISTINCT ON(openissues1_.internal_id) * "
-			+ "FROM {h-schema}case_issue openissues1_ "
-			+ "WHERE c.internal_id=openissues1_.issue_case_internal_id "
-			+ "AND ( openissues1_.issue_closed IS NOT NULL) "
-			+ "AND openissues1_.issue_closed BETWEEN :caseClosedWindowStart AND :caseClosedWindowEnd "
-			+ "ORDER BY openissues1_.internal_id, openissues1_.issue_created DESC"
-		+ ")";
-
-	public static final String CASE_SNOOZE_DECODE =
-		"case when last_snooze_end is null then 'NEVER_SNOOZED' "
-		+ "when last_snooze_end < CURRENT_TIMESTAMP then 'PREVIOUSLY_SNOOZED' "
-		+ "else 'CURRENTLY_SNOOZED' end";
+		+ "SELECT w.week_index, w.window_start, w.window_end, "
+			+ "COUNT(DISTINCT wc.case_id) AS resolved_count, "
+			+ "COUNT(i.issue_closed) AS closed_issue_count, "
+			+ "COALESCE(SUM(DATE_PART('day', i.issue_closed - wc.case_creation)), 0) AS resolution_days_sum, "
+			+ "COALESCE(SUM(DATE_PART('day', i.issue_closed - s.first_snoozed)), 0) AS worked_days_sum "
+		+ "FROM weeks w "
+		+ "LEFT JOIN week_cases wc ON wc.week_index = w.week_index "
+		+ "LEFT JOIN LATERAL ("
+			+ "SELECT MIN(created_at) AS first_snoozed FROM {h-schema}case_snooze "
+			+ "WHERE snooze_case_internal_id = wc.case_id"
+		+ ") s ON true "
+		+ "LEFT JOIN {h-schema}case_issue i ON i.issue_case_internal_id = wc.case_id "
+			+ "AND i.issue_closed >= w.window_start AND i.issue_closed < w.window_end "
+		+ "GROUP BY w.week_index, w.window_start, w.window_end";
 
 	public static final String CASE_DTO_QUERY =
 		"SELECT c.*, "
@@ -142,8 +83,8 @@ public class TroubleCase extends TroubleCaseFixedData {
 	@Where(clause="issue_closed is null")
 	private List<CaseIssue> openIssues;
 
-	@Type(type="json")
-	@Column(columnDefinition = "varchar(32000)")
+	@Type(type="jsonb")
+	@Column(columnDefinition = "jsonb")
 	private Map<String, Object> extraData;
 
 	protected TroubleCase() {/* for hibernate/JPA */}
@@ -0,0 +1,76 @@
+package gov.usds.case_issues.db.model.projections;
+
+import java.util.Date;
+
+import gov.usds.case_issues.db.model.AttachmentType;
+
+/**
+ * A flattened attachment association, with just the columns needed to summarize an attachment for the
+ * hitlist (and the case it is attached to), so that a page of attachments can be loaded without hydrating
+ * the snoozes and cases they hang off of.
+ */
+public class CaseAttachmentRow {
+
+	private Long caseId;
+	private Long attachmentId;
+	private AttachmentType attachmentType;
+	private String subtypeTag;
+	private String subtypeUrlTemplate;
+	private String content;
+	private Date createdAt;
+	private String createdBy;
+	private String creatorName;
+
+	public CaseAttachmentRow(Long caseId, Long attachmentId, AttachmentType attachmentType, String subtypeTag,
+			String subtypeUrlTemplate, String content, Date createdAt, String createdBy, String creatorName) {
+		super();
+		this.caseId = caseId;
+		this.attachmentId = attachmentId;
+		this.attachmentType = attachmentType;
+		this.subtypeTag = subtypeTag;
+		this.subtypeUrlTemplate = subtypeUrlTemplate;
+		this.content = content;
+		this.createdAt = createdAt;
+		this.createdBy = createdBy;
+		this.creatorName = creatorName;
+	}
+
+	public Long getCaseId() {
+		return caseId;
+	}
+
+	public Long getAttachmentId() {
+		return attachmentId;
+	}
+
+	public AttachmentType getAttachmentType() {
+		return attachmentType;
+	}
+
+	/** The external ID of the attachment subtype, or null if the attachment has no subtype. */
+	public String getSubtypeTag() {
+		return subtypeTag;
+	}
+
+	public String getSubtypeUrlTemplate() {
+		return subtypeUrlTemplate;
+	}
+
+	public String getContent() {
+		return content;
+	}
+
+	/** The time the attachment was associated with the case. */
+	public Date getCreatedAt() {
+		return createdAt;
+	}
+
+	public String getCreatedBy() {
+		return createdBy;
+	}
+
+	/** The print name of the user who associated the attachment with the case, if that user is known. */
+	public String getCreatorName() {
+		return creatorName;
+	}
+}
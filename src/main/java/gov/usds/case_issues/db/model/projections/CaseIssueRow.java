@@ -0,0 +1,36 @@
+package gov.usds.case_issues.db.model.projections;
+
+import java.time.ZonedDateTime;
+
+/**
+ * A detached issue summary, read directly from the database rather than through a {@link gov.usds.case_issues.db.model.CaseIssue}
+ * entity (so that it does not drag the case it belongs to along with it).
+ */
+public class CaseIssueRow implements CaseIssueSummary {
+
+	private String issueType;
+	private ZonedDateTime issueCreated;
+	private ZonedDateTime issueClosed;
+
+	public CaseIssueRow(String issueType, ZonedDateTime issueCreated, ZonedDateTime issueClosed) {
+		super();
+		this.issueType = issueType;
+		this.issueCreated = issueCreated;
+		this.issueClosed = issueClosed;
+	}
+
+	@Override
+	public String getIssueType() {
+		return issueType;
+	}
+
+	@Override
+	public ZonedDateTime getIssueCreated() {
+		return issueCreated;
+	}
+
+	@Override
+	public ZonedDateTime getIssueClosed() {
+		return issueClosed;
+	}
+}
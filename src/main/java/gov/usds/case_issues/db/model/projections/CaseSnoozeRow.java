@@ -0,0 +1,50 @@
+package gov.usds.case_issues.db.model.projections;
+
+import java.time.ZonedDateTime;
+
+/**
+ * A detached snooze summary, read directly from the database along with the name of the user who created
+ * the snooze, so that neither the case nor the user needs to be loaded as an entity.
+ */
+public class CaseSnoozeRow implements CaseSnoozeSummary {
+
+	private String snoozeReason;
+	private ZonedDateTime snoozeStart;
+	private ZonedDateTime snoozeEnd;
+	private String createdBy;
+	private String creatorName;
+
+	public CaseSnoozeRow(String snoozeReason, ZonedDateTime snoozeStart, ZonedDateTime snoozeEnd,
+			String createdBy, String creatorName) {
+		super();
+		this.snoozeReason = snoozeReason;
+		this.snoozeStart = snoozeStart;
+		this.snoozeEnd = snoozeEnd;
+		this.createdBy = createdBy;
+		this.creatorName = creatorName;
+	}
+
+	@Override
+	public String getSnoozeReason() {
+		return snoozeReason;
+	}
+
+	@Override
+	public ZonedDateTime getSnoozeStart() {
+		return snoozeStart;
+	}
+
+	@Override
+	public ZonedDateTime getSnoozeEnd() {
+		return snoozeEnd;
+	}
+
+	public String getCreatedBy() {
+		return createdBy;
+	}
+
+	/** The print name of the user who created the snooze, if that user is known. */
+	public String getCreatorName() {
+		return creatorName;
+	}
+}
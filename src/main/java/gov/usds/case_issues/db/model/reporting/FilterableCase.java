@@ -11,8 +11,13 @@ import org.hibernate.annotations.Immutable;
 
 import gov.usds.case_issues.db.model.TroubleCaseFixedData;
 
+/**
+ * A case, along with its most recent snooze and whether it has any open issues, for use in filtering and sorting
+ * the hitlist. This is mapped to a table that is maintained by database triggers whenever cases, issues or snoozes
+ * change (see the filterable_case_view view for the definition of its contents), so it is read-only here.
+ */
 @Entity
-@Table(name="filterable_case_view")
+@Table(name="filterable_case")
 @Immutable
 public class FilterableCase extends TroubleCaseFixedData {
 
@@ -3,16 +3,28 @@ package gov.usds.case_issues.db.repositories;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
 import gov.usds.case_issues.db.model.CaseAttachmentAssociation;
 import gov.usds.case_issues.db.model.TroubleCase;
+import gov.usds.case_issues.db.model.projections.CaseAttachmentRow;
 
 public interface AttachmentAssociationRepository extends CrudRepository<CaseAttachmentAssociation, Long> {
 
 	@EntityGraph(attributePaths="attachment")
 	public List<CaseAttachmentAssociation> findAllBySnoozeSnoozeCaseOrderByUpdatedAtAsc(TroubleCase rootCase);
 
-	@EntityGraph(attributePaths={"attachment", "snooze.snoozeCase"})
-	public List<CaseAttachmentAssociation> findAllBySnoozeSnoozeCaseInternalIdIn(List<Long> caseIds);
+	@Query("SELECT new gov.usds.case_issues.db.model.projections.CaseAttachmentRow("
+			+ "s.snoozeCase.internalId, a.internalId, a.attachmentType, st.externalId, st.urlTemplate, a.content, "
+			+ "assoc.createdAt, assoc.createdBy, u.printName) "
+		+ "FROM CaseAttachmentAssociation assoc "
+			+ "JOIN assoc.snooze s "
+			+ "JOIN assoc.attachment a "
+			+ "LEFT JOIN a.attachmentSubtype st "
+			+ "LEFT JOIN assoc.creationUser u "
+		+ "WHERE s.snoozeCase.internalId IN :caseIds "
+		+ "ORDER BY assoc.internalId")
+	public List<CaseAttachmentRow> findAttachmentRowsByCaseIds(@Param("caseIds") List<Long> caseIds);
 }
@@ -6,10 +6,14 @@ import java.util.List;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.PastOrPresent;
 
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.rest.core.annotation.RestResource;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
 
+import gov.usds.case_issues.db.model.TroubleCase;
+
 /**
  * Repository interface for bulk operations (not independently autowired because
  * this turns out to break things horribly).
@@ -17,35 +21,268 @@ import org.springframework.validation.annotation.Validated;
 @Validated
 public interface BulkCaseRepository {
 
-	@Query(name="resolvedCount")
+	String CASE_GROUP_COUNTS = "{h-schema}case_group_count_change ";
+	String KPI_ROLLUP = "{h-schema}case_kpi_weekly_rollup ";
+	String CASE_GROUP_VERSIONS = "{h-schema}case_group_version_change ";
+
+	/* open and never-snoozed cases are counted by the triggers on filterable_case; which of the others are currently
+	 * snoozed changes as time passes with nothing being written, so that is counted here, from the snooze-end index. */
+	String FIND_SNOOZE_SUMMARY =
+		"SELECT COALESCE(SUM(never_snoozed), 0) AS never_snoozed, "
+			+ "COALESCE(SUM(open_cases - never_snoozed), 0) - live.snoozed AS previously_snoozed, "
+			+ "live.snoozed AS currently_snoozed "
+		+ "FROM (SELECT COUNT(*) AS snoozed FROM {h-schema}filterable_case "
+			+ "WHERE case_management_system_internal_id = :caseManagementSystemId "
+			+ "AND case_type_internal_id = :caseTypeId "
+			+ "AND has_open_issue AND snooze_end >= CURRENT_TIMESTAMP) live "
+		+ "LEFT JOIN " + CASE_GROUP_COUNTS + "c "
+			+ "ON c.case_management_system_internal_id = :caseManagementSystemId "
+			+ "AND c.case_type_internal_id = :caseTypeId "
+		+ "GROUP BY live.snoozed";
+
+	/* rows that another transaction is compacting at the same time are skipped rather than waited for */
+	String COMPACT_CASE_GROUP_COUNTS =
+		"WITH compacted AS ("
+			+ "DELETE FROM " + CASE_GROUP_COUNTS
+			+ "WHERE ctid = ANY(ARRAY("
+				+ "SELECT ctid FROM " + CASE_GROUP_COUNTS
+				+ "WHERE case_management_system_internal_id = :caseManagementSystemId "
+				+ "AND case_type_internal_id = :caseTypeId "
+				+ "FOR UPDATE SKIP LOCKED)) "
+			+ "RETURNING open_cases, never_snoozed"
+		+ ") "
+		+ "INSERT INTO " + CASE_GROUP_COUNTS
+			+ "(case_management_system_internal_id, case_type_internal_id, open_cases, never_snoozed) "
+		+ "SELECT :caseManagementSystemId, :caseTypeId, SUM(open_cases), SUM(never_snoozed) FROM compacted "
+		+ "HAVING SUM(open_cases) <> 0 OR SUM(never_snoozed) <> 0";
+
+	/* the same as for the case count ledger: whatever another transaction is compacting is left for next time */
+	String COMPACT_CASE_GROUP_VERSIONS =
+		"WITH compacted AS ("
+			+ "DELETE FROM " + CASE_GROUP_VERSIONS
+			+ "WHERE ctid = ANY(ARRAY("
+				+ "SELECT ctid FROM " + CASE_GROUP_VERSIONS
+				+ "WHERE case_management_system_internal_id = :caseManagementSystemId "
+				+ "AND case_type_internal_id = :caseTypeId "
+				+ "FOR UPDATE SKIP LOCKED)) "
+			+ "RETURNING changes"
+		+ ") "
+		+ "INSERT INTO " + CASE_GROUP_VERSIONS
+			+ "(case_management_system_internal_id, case_type_internal_id, changes) "
+		+ "SELECT :caseManagementSystemId, :caseTypeId, SUM(changes) FROM compacted "
+		+ "HAVING COUNT(*) > 0";
+
+	String FIND_KPI_ROLLUP =
+		"SELECT n AS week_index, r.resolved_count, r.closed_issue_count, r.resolution_days_sum, r.worked_days_sum, r.frozen "
+		+ "FROM generate_series(0, :weeks - 1) n "
+		+ "LEFT JOIN " + KPI_ROLLUP + "r "
+			+ "ON r.case_management_system_internal_id = :caseManagementSystemId "
+			+ "AND r.case_type_internal_id = :caseTypeId "
+			+ "AND r.week_start = CAST(:rangeStart AS timestamptz) - (n + 1) * interval '1 week' "
+		+ "ORDER BY n";
+
+	String FIND_KPI_TOTALS =
+		"SELECT week_index, resolved_count, closed_issue_count, resolution_days_sum, worked_days_sum, false AS frozen "
+		+ "FROM (" + TroubleCase.WEEKLY_KPI_TOTALS + ") AS totals "
+		+ "ORDER BY week_index";
+
+	/* issues, snoozes and attachments are squeezed into the same columns so that they can be fetched together:
+	 * the first branch fixes the column types for the others. */
+	String FIND_CASE_HISTORY =
+		"SELECT 'ISSUE' AS row_kind, i.issue_type AS row_text, i.issue_created AS row_start, i.issue_closed AS row_end, "
+			+ "CAST(NULL AS bigint) AS attachment_id, CAST(NULL AS text) AS attachment_type, "
+			+ "CAST(NULL AS text) AS subtype_tag, CAST(NULL AS text) AS subtype_url_template, "
+			+ "CAST(NULL AS text) AS created_by, CAST(NULL AS text) AS creator_name, "
+			+ "i.issue_created AS row_sort, i.internal_id AS row_id "
+		+ "FROM {h-schema}case_issue i "
+		+ "WHERE i.issue_case_internal_id = :caseId "
+		+ "UNION ALL "
+		+ "SELECT 'SNOOZE', s.snooze_reason, s.snooze_start, s.snooze_end, NULL, NULL, NULL, NULL, "
+			+ "s.created_by, u.print_name, s.snooze_start, s.internal_id "
+		+ "FROM {h-schema}case_snooze s "
+		+ "LEFT JOIN {h-schema}user_information u ON u.user_id = s.created_by "
+		+ "WHERE s.snooze_case_internal_id = :caseId "
+		+ "UNION ALL "
+		+ "SELECT 'ATTACHMENT', a.content, assoc.created_at, NULL, a.internal_id, a.attachment_type, "
+			+ "st.external_id, st.url_template, assoc.created_by, u.print_name, assoc.updated_at, assoc.internal_id "
+		+ "FROM {h-schema}case_attachment_association assoc "
+		+ "JOIN {h-schema}case_snooze s ON s.internal_id = assoc.snooze_internal_id "
+		+ "JOIN {h-schema}case_attachment a ON a.internal_id = assoc.attachment_internal_id "
+		+ "LEFT JOIN {h-schema}attachment_subtype st ON st.internal_id = a.attachment_subtype_internal_id "
+		+ "LEFT JOIN {h-schema}user_information u ON u.user_id = assoc.created_by "
+		+ "WHERE s.snooze_case_internal_id = :caseId "
+		+ "ORDER BY row_sort, row_id";
+
+	/* anything that changes what the case details look like either bumps one of these timestamps or changes the count */
+	String FIND_CASE_DETAILS_VERSION =
+		"SELECT GREATEST(c.updated_at, m.updated_at, t.updated_at, i.last_changed, s.last_changed, a.last_changed), "
+			+ "i.item_count + s.item_count + a.item_count "
+		+ "FROM {h-schema}trouble_case c "
+		+ "JOIN {h-schema}case_management_system m ON m.internal_id = c.case_management_system_internal_id "
+		+ "JOIN {h-schema}case_type t ON t.internal_id = c.case_type_internal_id "
+		+ "CROSS JOIN LATERAL (SELECT MAX(updated_at) AS last_changed, COUNT(*) AS item_count "
+			+ "FROM {h-schema}case_issue WHERE issue_case_internal_id = c.internal_id) i "
+		+ "CROSS JOIN LATERAL (SELECT MAX(updated_at) AS last_changed, COUNT(*) AS item_count "
+			+ "FROM {h-schema}case_snooze WHERE snooze_case_internal_id = c.internal_id) s "
+		+ "CROSS JOIN LATERAL (SELECT MAX(assoc.updated_at) AS last_changed, COUNT(*) AS item_count "
+			+ "FROM {h-schema}case_attachment_association assoc "
+			+ "JOIN {h-schema}case_snooze snz ON snz.internal_id = assoc.snooze_internal_id "
+			+ "WHERE snz.snooze_case_internal_id = c.internal_id) a "
+		+ "WHERE m.external_id = :caseManagementSystemTag AND c.receipt_number = :receiptNumber";
+
+	String FIND_HITLIST_VERSION =
+		"SELECT (SELECT COALESCE(SUM(changes), 0) FROM " + CASE_GROUP_VERSIONS
+				+ "WHERE case_management_system_internal_id = :caseManagementSystemId "
+				+ "AND case_type_internal_id = :caseTypeId), "
+			+ "(SELECT MIN(snooze_end) FROM {h-schema}filterable_case "
+				+ "WHERE case_management_system_internal_id = :caseManagementSystemId "
+				+ "AND case_type_internal_id = :caseTypeId "
+				+ "AND has_open_issue AND snooze_end > CURRENT_TIMESTAMP)";
+
+	/* a week is frozen once it has been over for long enough that nothing more is expected to land in it;
+	 * after that, refreshing it again is a no-op, unless a change (like a backdated upload) has reached back into it. */
+	String REFRESH_KPI_ROLLUP =
+		"INSERT INTO " + KPI_ROLLUP + "AS r "
+			+ "(case_management_system_internal_id, case_type_internal_id, week_start, resolved_count, "
+			+ "closed_issue_count, resolution_days_sum, worked_days_sum, computed_at, frozen) "
+		+ "SELECT :caseManagementSystemId, :caseTypeId, window_start, resolved_count, "
+			+ "closed_issue_count, resolution_days_sum, worked_days_sum, CURRENT_TIMESTAMP, "
+			+ "window_end + :freezeAfterSeconds * interval '1 second' <= CURRENT_TIMESTAMP "
+		+ "FROM (" + TroubleCase.WEEKLY_KPI_TOTALS + ") AS totals "
+		+ "ON CONFLICT (case_management_system_internal_id, case_type_internal_id, week_start) DO UPDATE SET "
+			+ "resolved_count = EXCLUDED.resolved_count, "
+			+ "closed_issue_count = EXCLUDED.closed_issue_count, "
+			+ "resolution_days_sum = EXCLUDED.resolution_days_sum, "
+			+ "worked_days_sum = EXCLUDED.worked_days_sum, "
+			+ "computed_at = EXCLUDED.computed_at, "
+			+ "frozen = EXCLUDED.frozen "
+		+ "WHERE NOT r.frozen OR r.week_start + interval '1 week' > CAST(:changedSince AS timestamptz)";
+
+	String CLEAR_KPI_ROLLUP =
+		"DELETE FROM " + KPI_ROLLUP
+		+ "WHERE case_management_system_internal_id = :caseManagementSystemId "
+		+ "AND case_type_internal_id = :caseTypeId "
+		+ "AND week_start < CAST(:before AS timestamptz) "
+		+ "AND week_start + interval '1 week' > CAST(:changedSince AS timestamptz)";
+
+	/**
+	 * Fetch all issues, snoozes and attachments for a single case in one round trip.
+	 * @return one row per item, in the order each kind of item is displayed, of item kind (ISSUE, SNOOZE or ATTACHMENT),
+	 *     issue type/snooze reason/attachment content, start (or creation) time, end time, attachment id, attachment type,
+	 *     attachment subtype tag and URL template, and the ID and name of the user who created the item.
+	 */
+	@Query(value=FIND_CASE_HISTORY, nativeQuery=true)
+	@RestResource(exported=false)
+	public List<Object[]> getCaseHistory(Long caseId);
+
+	/**
+	 * Fetch what is needed to tell whether the details of a case have changed.
+	 * @return an empty list if there is no such case, or a single row of the latest change to the case or anything
+	 *     attached to it, and the number of issues, snoozes and attachments it has.
+	 */
+	@Query(value=FIND_CASE_DETAILS_VERSION, nativeQuery=true)
+	@RestResource(exported=false)
+	public List<Object[]> getCaseDetailsVersion(String caseManagementSystemTag, String receiptNumber);
+
+	/**
+	 * Fetch what is needed to tell whether the hitlist for a case group has changed.
+	 * @return a single row of the group's version, the sum of its change ledger (0 if nothing has changed since the
+	 *     ledger was added),
+	 *     and the earliest end of a current snooze on an open case in the group (null if there are none).
+	 */
+	@Query(value=FIND_HITLIST_VERSION, nativeQuery=true)
 	@RestResource(exported=false)
-	public int getResolvedCaseCount(
+	public List<Object[]> getHitlistVersion(Long caseManagementSystemId, Long caseTypeId);
+
+	/**
+	 * Fetch the saved weekly KPI totals for a case group, for the weeks counting back from rangeStart.
+	 * @return one row per week, most recent first, of week index, resolved case count, closed issue count,
+	 *     total days to resolution, total days worked and whether the totals are frozen.
+	 *     All but the week index are null for weeks that have not been saved.
+	 */
+	@Query(value=FIND_KPI_ROLLUP, nativeQuery=true)
+	@RestResource(exported=false)
+	public List<Object[]> getKPIRollup(
 		Long caseManagementSystemId,
 		Long caseTypeId,
-		@PastOrPresent @NotNull ZonedDateTime caseClosedWindowStart,
-		@PastOrPresent @NotNull ZonedDateTime caseClosedWindowEnd
+		@PastOrPresent @NotNull ZonedDateTime rangeStart,
+		int weeks
 	);
 
-	@Query(name="averageDaysToResoluton")
+	/**
+	 * Compute the KPI totals for weeks firstWeek through lastWeek before rangeStart
+	 * (see {@link TroubleCase#WEEKLY_KPI_TOTALS}) without saving them.
+	 * @return one row per week, in the same form as {@link #getKPIRollup}, with frozen always false.
+	 */
+	@Query(value=FIND_KPI_TOTALS, nativeQuery=true)
 	@RestResource(exported=false)
-	public int getAverageDaysToResolution(
+	public List<Object[]> getKPITotals(
 		Long caseManagementSystemId,
 		Long caseTypeId,
-		@PastOrPresent @NotNull ZonedDateTime caseClosedWindowStart,
-		@PastOrPresent @NotNull ZonedDateTime caseClosedWindowEnd
+		@PastOrPresent @NotNull ZonedDateTime rangeStart,
+		int firstWeek,
+		int lastWeek
 	);
 
+	/**
+	 * Recompute and save the KPI totals for weeks firstWeek through lastWeek before rangeStart
+	 * (see {@link TroubleCase#WEEKLY_KPI_TOTALS}), leaving frozen weeks alone unless they end after changedSince.
+	 * rangeStart may be in the future, so that the week in progress can be saved too.
+	 */
+	@Modifying
+	@Transactional
+	@Query(value=REFRESH_KPI_ROLLUP, nativeQuery=true)
+	@RestResource(exported=false)
+	public int refreshKPIRollup(
+		Long caseManagementSystemId,
+		Long caseTypeId,
+		@NotNull ZonedDateTime rangeStart,
+		int firstWeek,
+		int lastWeek,
+		long freezeAfterSeconds,
+		@NotNull ZonedDateTime changedSince
+	);
 
-	@Query(name="averageDaysWorked")
+	/**
+	 * Throw out the saved KPI totals (frozen or not) for the weeks of a case group that end after changedSince but
+	 * start before the given time, so that they are computed again the next time they are asked for.
+	 */
+	@Modifying
+	@Transactional
+	@Query(value=CLEAR_KPI_ROLLUP, nativeQuery=true)
 	@RestResource(exported=false)
-	public int getAverageDaysWorked(
+	public int clearKPIRollup(
 		Long caseManagementSystemId,
 		Long caseTypeId,
-		@PastOrPresent @NotNull ZonedDateTime caseClosedWindowStart,
-		@PastOrPresent @NotNull ZonedDateTime caseClosedWindowEnd
+		@NotNull ZonedDateTime before,
+		@NotNull ZonedDateTime changedSince
 	);
 
-	@Query(name="summary")
+	/**
+	 * Fetch the snooze summary counts for the open cases in this case group.
+	 * @return a single row of never-snoozed, previously-snoozed and currently-snoozed counts.
+	 */
+	@Query(value=FIND_SNOOZE_SUMMARY, nativeQuery=true)
 	@RestResource(exported=false)
 	public List<Object[]> getSnoozeSummary(Long caseManagementSystemId, Long caseTypeId);
+
+	/**
+	 * Replace the rows of the case count ledger for this case group with a single row holding their totals, so that
+	 * {@link #getSnoozeSummary} has fewer rows to add up.
+	 */
+	@Modifying
+	@Transactional
+	@Query(value=COMPACT_CASE_GROUP_COUNTS, nativeQuery=true)
+	@RestResource(exported=false)
+	public int compactCaseGroupCounts(Long caseManagementSystemId, Long caseTypeId);
+
+	/**
+	 * Replace the rows of the change ledger for this case group with a single row holding their total, so that
+	 * {@link #getHitlistVersion} has fewer rows to add up.
+	 */
+	@Modifying
+	@Transactional
+	@Query(value=COMPACT_CASE_GROUP_VERSIONS, nativeQuery=true)
+	@RestResource(exported=false)
+	public int compactCaseGroupVersions(Long caseManagementSystemId, Long caseTypeId);
 }
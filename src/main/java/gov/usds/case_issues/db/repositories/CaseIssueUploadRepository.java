@@ -3,7 +3,11 @@ package gov.usds.case_issues.db.repositories;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.rest.core.annotation.RestResource;
+import org.springframework.transaction.annotation.Transactional;
 
 import gov.usds.case_issues.db.model.CaseIssueUpload;
 import gov.usds.case_issues.db.model.CaseManagementSystem;
@@ -11,9 +15,9 @@ import gov.usds.case_issues.db.model.CaseType;
 import gov.usds.case_issues.db.model.UploadStatus;
 
 /**
- * CRUD repository for upload objects.
+ * CRUD repository for upload objects, and the statements for applying them to the database.
  */
-public interface CaseIssueUploadRepository extends CrudRepository<CaseIssueUpload, Long> {
+public interface CaseIssueUploadRepository extends CrudRepository<CaseIssueUpload, Long>, IssueReconciliationRepository {
 
 	public List<CaseIssueUpload> findAllByCaseManagementSystem(
 			CaseManagementSystem sys);
@@ -27,4 +31,13 @@ public interface CaseIssueUploadRepository extends CrudRepository<CaseIssueUploa
 			CaseManagementSystem sys, CaseType type, String issueType, UploadStatus uploadStatus);
 	public Optional<CaseIssueUpload> findFirstByCaseManagementSystemAndCaseTypeAndUploadStatusOrderByEffectiveDateDesc(
 			CaseManagementSystem sys, CaseType type, UploadStatus uploadStatus);
+
+	@Modifying
+	@Transactional
+	@Query("update #{#entityName} u set u.uploadedRecordCount = :uploadedRecordCount, "
+			+ "u.closedIssueCount = :closedIssueCount, u.newIssueCount = :newIssueCount "
+			+ "where u.internalId = :uploadId and u.uploadStatus = :uploadStatus")
+	@RestResource(exported=false)
+	public int updateProgress(Long uploadId, UploadStatus uploadStatus, long uploadedRecordCount,
+			Long closedIssueCount, Long newIssueCount);
 }
@@ -1,9 +1,13 @@
 package gov.usds.case_issues.db.repositories;
 
+import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.rest.core.annotation.RestResource;
 
 import gov.usds.case_issues.db.model.CaseSnooze;
 import gov.usds.case_issues.db.model.TroubleCase;
@@ -15,4 +19,17 @@ public interface CaseSnoozeRepository extends PagingAndSortingRepository<CaseSno
 
 	/** Retrieve the latest snooze, if any */
 	public Optional<CaseSnooze> findFirstBySnoozeCaseOrderBySnoozeEndDesc(TroubleCase mainCase);
+
+	/** Retrieve every snooze on any of these cases that ends after the given time (i.e. the active ones, given the current time) */
+	@RestResource(exported=false)
+	public List<CaseSnooze> findAllBySnoozeCaseInAndSnoozeEndAfter(Collection<TroubleCase> cases, ZonedDateTime endsAfter);
+
+	/**
+	 * Find the earliest time that an issue was closed on any of these cases that have never been snoozed (which is
+	 * how far back snoozing them for the first time changes their resolution KPIs).
+	 */
+	@Query("select min(i.issueClosed) from CaseIssue i where i.issueCase in :cases "
+		+ "and not exists (select s from CaseSnooze s where s.snoozeCase = i.issueCase)")
+	@RestResource(exported=false)
+	public Optional<ZonedDateTime> findEarliestIssueClosedNeverSnoozed(Collection<TroubleCase> cases);
 }
@@ -0,0 +1,166 @@
+package gov.usds.case_issues.db.repositories;
+
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.rest.core.annotation.RestResource;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Repository interface for applying an issue upload to the database with set-based statements, by way of the
+ * case_issue_upload_staging table (not independently autowired, for the same reasons as {@link BulkCaseRepository}).
+ * The general sequence is: stage all the uploaded cases, reconcile them against the existing cases and issues,
+ * then clear the staged cases.
+ */
+public interface IssueReconciliationRepository {
+
+	String STAGING_TABLE = "{h-schema}case_issue_upload_staging ";
+	String NEXT_ID = "nextval('{h-schema}case_issue_entity_id_sequence')";
+	String AUDIT_VALUES = ":now, CAST(:user AS varchar), :now, CAST(:user AS varchar)";
+
+	/* pg_advisory_xact_lock returns void, which cannot be mapped, so count the single row it returns instead */
+	String LOCK_ISSUE_TYPE =
+		"SELECT COUNT(*) FROM pg_advisory_xact_lock("
+		+ "hashtext(CONCAT_WS('/', 'case_issue_upload', :caseManagementSystemId, :caseTypeId, :issueType)))";
+
+	String STAGE_CASES =
+		"INSERT INTO " + STAGING_TABLE + "(upload_internal_id, receipt_number, case_creation, extra_data) "
+		+ "SELECT :uploadId, r.receipt_number, r.case_creation, r.extra_data "
+		+ "FROM jsonb_to_recordset(CAST(:stagedCases AS jsonb)) "
+		+ "AS r(receipt_number varchar, case_creation timestamptz, extra_data jsonb)";
+
+	String FIND_STAGED_RECEIPTS =
+		"SELECT s.receipt_number FROM " + STAGING_TABLE + "s "
+		+ "WHERE s.upload_internal_id = :uploadId "
+		+ "AND s.receipt_number IN (:receiptNumbers)";
+
+	String CLOSE_UNSTAGED_ISSUES =
+		"UPDATE {h-schema}case_issue i "
+		+ "SET issue_closed = :effectiveDate, updated_at = :now, updated_by = CAST(:user AS varchar) "
+		+ "FROM {h-schema}trouble_case c "
+		+ "WHERE i.issue_case_internal_id = c.internal_id "
+		+ "AND c.case_management_system_internal_id = :caseManagementSystemId "
+		+ "AND c.case_type_internal_id = :caseTypeId "
+		+ "AND i.issue_type = :issueType "
+		+ "AND i.issue_closed IS NULL "
+		+ "AND NOT EXISTS ("
+			+ "SELECT 1 FROM " + STAGING_TABLE + "s "
+			+ "WHERE s.upload_internal_id = :uploadId "
+			+ "AND s.receipt_number = c.receipt_number"
+		+ ")";
+
+	String COUNT_CASE_TYPE_CONFLICTS =
+		"SELECT COUNT(*) "
+		+ "FROM " + STAGING_TABLE + "s "
+		+ "JOIN {h-schema}trouble_case c ON c.receipt_number = s.receipt_number "
+		+ "WHERE s.upload_internal_id = :uploadId "
+		+ "AND c.case_management_system_internal_id = :caseManagementSystemId "
+		+ "AND c.case_type_internal_id <> :caseTypeId";
+
+	String MERGED_EXTRA_DATA = "COALESCE(c.extra_data, jsonb_build_object()) || s.extra_data";
+
+	String UPDATE_STAGED_CASE_DATA =
+		"UPDATE {h-schema}trouble_case c "
+		+ "SET extra_data = " + MERGED_EXTRA_DATA + ", "
+		+ "updated_at = :now, updated_by = CAST(:user AS varchar) "
+		+ "FROM " + STAGING_TABLE + "s "
+		+ "WHERE s.upload_internal_id = :uploadId "
+		+ "AND c.case_management_system_internal_id = :caseManagementSystemId "
+		+ "AND c.receipt_number = s.receipt_number "
+		// don't touch the update timestamp of cases whose data is not actually changing
+		+ "AND (c.extra_data IS NULL OR " + MERGED_EXTRA_DATA + " <> c.extra_data)";
+
+	String INSERT_STAGED_CASES =
+		"INSERT INTO {h-schema}trouble_case (internal_id, created_at, created_by, updated_at, updated_by, "
+			+ "case_management_system_internal_id, case_type_internal_id, receipt_number, case_creation, extra_data) "
+		+ "SELECT " + NEXT_ID + ", " + AUDIT_VALUES + ", "
+			+ ":caseManagementSystemId, :caseTypeId, s.receipt_number, s.case_creation, s.extra_data "
+		+ "FROM " + STAGING_TABLE + "s "
+		+ "WHERE s.upload_internal_id = :uploadId "
+		+ "AND NOT EXISTS ("
+			+ "SELECT 1 FROM {h-schema}trouble_case c "
+			+ "WHERE c.case_management_system_internal_id = :caseManagementSystemId "
+			+ "AND c.receipt_number = s.receipt_number"
+		+ ")";
+
+	String OPEN_STAGED_ISSUES =
+		"INSERT INTO {h-schema}case_issue (internal_id, created_at, created_by, updated_at, updated_by, "
+			+ "issue_case_internal_id, issue_type, issue_created) "
+		+ "SELECT " + NEXT_ID + ", " + AUDIT_VALUES + ", c.internal_id, :issueType, :effectiveDate "
+		+ "FROM " + STAGING_TABLE + "s "
+		+ "JOIN {h-schema}trouble_case c "
+			+ "ON c.case_management_system_internal_id = :caseManagementSystemId "
+			+ "AND c.receipt_number = s.receipt_number "
+		+ "WHERE s.upload_internal_id = :uploadId "
+		+ "AND NOT EXISTS ("
+			+ "SELECT 1 FROM {h-schema}case_issue i "
+			+ "WHERE i.issue_case_internal_id = c.internal_id "
+			+ "AND i.issue_type = :issueType "
+			+ "AND i.issue_closed IS NULL"
+		+ ")";
+
+	String CLEAR_STAGED_CASES =
+		"DELETE FROM " + STAGING_TABLE + "WHERE upload_internal_id = :uploadId";
+
+	/**
+	 * Take a transaction-scoped advisory lock on one issue type for one case type in one case management system,
+	 * so that concurrent uploads for the same issues are applied one at a time without locking any case rows.
+	 */
+	@Query(value=LOCK_ISSUE_TYPE, nativeQuery=true)
+	@RestResource(exported=false)
+	long lockIssueType(Long caseManagementSystemId, Long caseTypeId, String issueType);
+
+	/**
+	 * Stage a batch of uploaded cases.
+	 * @param stagedCases a JSON array of objects with receipt_number, case_creation and extra_data attributes.
+	 */
+	@Modifying
+	@Transactional
+	@Query(value=STAGE_CASES, nativeQuery=true)
+	@RestResource(exported=false)
+	int stageCases(Long uploadId, String stagedCases);
+
+	@Query(value=FIND_STAGED_RECEIPTS, nativeQuery=true)
+	@RestResource(exported=false)
+	List<String> findStagedReceipts(Long uploadId, Collection<String> receiptNumbers);
+
+	@Modifying
+	@Transactional
+	@Query(value=CLOSE_UNSTAGED_ISSUES, nativeQuery=true)
+	@RestResource(exported=false)
+	int closeUnstagedIssues(Long uploadId, Long caseManagementSystemId, Long caseTypeId, String issueType,
+			ZonedDateTime effectiveDate, Date now, String user);
+
+	@Query(value=COUNT_CASE_TYPE_CONFLICTS, nativeQuery=true)
+	@RestResource(exported=false)
+	long countCaseTypeConflicts(Long uploadId, Long caseManagementSystemId, Long caseTypeId);
+
+	@Modifying
+	@Transactional
+	@Query(value=UPDATE_STAGED_CASE_DATA, nativeQuery=true)
+	@RestResource(exported=false)
+	int updateStagedCaseData(Long uploadId, Long caseManagementSystemId, Date now, String user);
+
+	@Modifying
+	@Transactional
+	@Query(value=INSERT_STAGED_CASES, nativeQuery=true)
+	@RestResource(exported=false)
+	int insertStagedCases(Long uploadId, Long caseManagementSystemId, Long caseTypeId, Date now, String user);
+
+	@Modifying
+	@Transactional
+	@Query(value=OPEN_STAGED_ISSUES, nativeQuery=true)
+	@RestResource(exported=false)
+	int openStagedIssues(Long uploadId, Long caseManagementSystemId, String issueType,
+			ZonedDateTime effectiveDate, Date now, String user);
+
+	@Modifying
+	@Transactional
+	@Query(value=CLEAR_STAGED_CASES, nativeQuery=true)
+	@RestResource(exported=false)
+	int clearStagedCases(Long uploadId);
+}
@@ -1,6 +1,8 @@
 package gov.usds.case_issues.db.repositories;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -9,6 +11,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.rest.core.annotation.Description;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.data.rest.core.annotation.RestResource;
 import org.springframework.validation.annotation.Validated;
 
 import gov.usds.case_issues.db.model.CaseManagementSystem;
@@ -40,6 +43,24 @@ public interface TroubleCaseRepository extends TroubleCaseFixedDataRepository<Tr
 	@Query(ACTIVE_CASE_QUERY + " and " + ACTIVE_SNOOZE_CLAUSE)
 	public Page<TroubleCase> getSnoozedWithOpenIssues(CaseManagementSystem caseManagementSystem, CaseType caseType, Pageable pageable);
 
+	/**
+	 * Find a case by its public identifiers, fetching its case management system and case type along with it, and
+	 * the users who created and last updated all three (which would otherwise each be loaded in a query of its own).
+	 */
+	@Query("select c from #{#entityName} c join fetch c.caseManagementSystem s join fetch c.caseType t "
+		+ "left join fetch c.creationUser left join fetch c.updateUser "
+		+ "left join fetch s.creationUser left join fetch s.updateUser "
+		+ "left join fetch t.creationUser left join fetch t.updateUser "
+		+ "where s.externalId = :caseManagementSystemTag and c.receiptNumber = :receiptNumber")
+	@RestResource(exported=false)
+	public Optional<TroubleCase> findCaseForDetails(String caseManagementSystemTag, String receiptNumber);
+
+	/** Find all of these cases that exist in a case management system, fetching their case types along with them. */
+	@Query("select c from #{#entityName} c join fetch c.caseType "
+		+ "where c.caseManagementSystem = :caseManagementSystem and c.receiptNumber in :receiptNumbers")
+	@RestResource(exported=false)
+	public List<TroubleCase> findCasesForUpdate(CaseManagementSystem caseManagementSystem, Collection<String> receiptNumbers);
+
 	// this override is to make this method work in a testing context, since that is the only context in which this method
 	// should EVER BE CALLED
 	@Override
@@ -7,6 +7,7 @@ import gov.usds.case_issues.db.model.CaseAttachment;
 import gov.usds.case_issues.db.model.CaseAttachmentAssociation;
 import gov.usds.case_issues.db.model.UserInformation;
 import gov.usds.case_issues.db.model.AttachmentType;
+import gov.usds.case_issues.db.model.projections.CaseAttachmentRow;
 
 public class AttachmentSummary {
 
@@ -26,14 +27,7 @@ public class AttachmentSummary {
 		content = note.getContent();
 		if (null != note.getSubtype()) {
 			subType = note.getSubtype().getExternalId();
-		}
-		if (note.getAttachmentType() == AttachmentType.LINK) {
-			String urlTemplate = note.getSubtype().getUrlTemplate();
-			if (urlTemplate.contains("%s")) {
-				href= String.format(urlTemplate, content);
-			} else {
-				href = urlTemplate + content;
-			}
+			href = buildHref(type, note.getSubtype().getUrlTemplate(), content);
 		}
 		if (associationCreator != null) {
 			user = new SerializedUserInformation(associationCreator);
@@ -44,6 +38,29 @@ public class AttachmentSummary {
 		timestamp = ZonedDateTime.ofInstant(backEnd.getCreatedAt().toInstant(), ZoneId.of("Z"));
 	}
 
+	public AttachmentSummary(CaseAttachmentRow row) {
+		attachmentId = row.getAttachmentId();
+		type = row.getAttachmentType();
+		content = row.getContent();
+		subType = row.getSubtypeTag();
+		if (null != subType) {
+			href = buildHref(type, row.getSubtypeUrlTemplate(), content);
+		}
+		user = new SerializedUserInformation(row.getCreatedBy(), row.getCreatorName() != null ? row.getCreatorName() : "");
+		timestamp = ZonedDateTime.ofInstant(row.getCreatedAt().toInstant(), ZoneId.of("Z"));
+	}
+
+	private static String buildHref(AttachmentType type, String urlTemplate, String content) {
+		if (type != AttachmentType.LINK) {
+			return null;
+		}
+		if (urlTemplate.contains("%s")) {
+			return String.format(urlTemplate, content);
+		} else {
+			return urlTemplate + content;
+		}
+	}
+
 	public long getId() {
 		return attachmentId;
 	}
@@ -0,0 +1,26 @@
+package gov.usds.case_issues.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * API definition for a request to apply the same {@link SnoozeRequest} (reason, duration and notes) to
+ * a list of cases at once.
+ */
+public class BatchSnoozeRequest extends SnoozeRequest {
+
+	private List<String> receiptNumbers = new ArrayList<>();
+
+	protected BatchSnoozeRequest() {
+		super(null, 0);
+	}
+
+	public BatchSnoozeRequest(String snoozeReason, int duration, List<String> receiptNumbers) {
+		super(snoozeReason, duration);
+		this.receiptNumbers = receiptNumbers;
+	}
+
+	public List<String> getReceiptNumbers() {
+		return receiptNumbers;
+	}
+}
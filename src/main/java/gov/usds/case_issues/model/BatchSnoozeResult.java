@@ -0,0 +1,50 @@
+package gov.usds.case_issues.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * API container for what happened to a single case in a batch snooze (or batch snooze-ending) request.
+ */
+public class BatchSnoozeResult {
+
+	/** The possible outcomes for each case in a batch request. */
+	public enum Outcome {
+		/** A new snooze was created (replacing the active one, if there was one) */
+		SNOOZED,
+		/** The active snooze was ended */
+		ENDED,
+		/** There was no active snooze to end */
+		NOT_SNOOZED,
+		/** There is no case with this receipt number in the case management system */
+		NOT_FOUND,
+	}
+
+	private String receiptNumber;
+	private Outcome outcome;
+	private CaseSnoozeSummaryFacade snooze;
+
+	public BatchSnoozeResult(String receiptNumber, Outcome outcome) {
+		this(receiptNumber, outcome, null);
+	}
+
+	public BatchSnoozeResult(String receiptNumber, Outcome outcome, CaseSnoozeSummaryFacade snooze) {
+		this.receiptNumber = receiptNumber;
+		this.outcome = outcome;
+		this.snooze = snooze;
+	}
+
+	public String getReceiptNumber() {
+		return receiptNumber;
+	}
+
+	public Outcome getOutcome() {
+		return outcome;
+	}
+
+	/** The new snooze, for {@link Outcome#SNOOZED} cases. */
+	@JsonInclude(Include.NON_NULL)
+	public CaseSnoozeSummaryFacade getSnooze() {
+		return snooze;
+	}
+}
@@ -0,0 +1,28 @@
+package gov.usds.case_issues.model;
+
+/**
+ * Formats that the full list of cases in a case group can be exported in.
+ */
+public enum CaseExportFormat {
+	/** One row per case, with notes and user-defined fields as JSON-valued columns */
+	CSV("text/csv", "csv"),
+	/** Newline-delimited JSON: one case per line, in the same shape as the paged case list API */
+	NDJSON("application/x-ndjson", "ndjson"),
+	;
+
+	private final String _mediaType;
+	private final String _fileExtension;
+
+	private CaseExportFormat(String mediaType, String fileExtension) {
+		_mediaType = mediaType;
+		_fileExtension = fileExtension;
+	}
+
+	public String getMediaType() {
+		return _mediaType;
+	}
+
+	public String getFileExtension() {
+		return _fileExtension;
+	}
+}
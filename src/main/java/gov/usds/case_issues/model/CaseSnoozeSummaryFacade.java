@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.Optional;
 
 import gov.usds.case_issues.db.model.CaseSnooze;
+import gov.usds.case_issues.db.model.projections.CaseSnoozeRow;
 import gov.usds.case_issues.db.model.projections.CaseSnoozeSummary;
 
 /**
@@ -33,6 +34,11 @@ public class CaseSnoozeSummaryFacade implements CaseSnoozeSummary {
 		}
 	}
 
+	public CaseSnoozeSummaryFacade(CaseSnoozeRow row) {
+		this.wrapped = row;
+		user = new SerializedUserInformation(row.getCreatedBy(), row.getCreatorName() != null ? row.getCreatorName() : "");
+	}
+
 	public CaseSnoozeSummaryFacade(CaseSnooze wrapped, List<AttachmentSummary> savedNotes) {
 		this(wrapped);
 		this.notes = savedNotes;
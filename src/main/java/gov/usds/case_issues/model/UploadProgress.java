@@ -0,0 +1,43 @@
+package gov.usds.case_issues.model;
+
+import java.time.ZonedDateTime;
+
+import gov.usds.case_issues.db.model.CaseIssueUpload;
+import gov.usds.case_issues.db.model.UploadStatus;
+
+/**
+ * API Model for the state of a {@link CaseIssueUpload}, including the progress made so far if the
+ * upload is still being processed.
+ */
+public class UploadProgress {
+
+	private CaseIssueUpload upload;
+
+	public UploadProgress(CaseIssueUpload upload) {
+		super();
+		this.upload = upload;
+	}
+
+	public Long getUploadId() {
+		return upload.getInternalId();
+	}
+	public String getIssueType() {
+		return upload.getIssueType();
+	}
+	public ZonedDateTime getEffectiveDate() {
+		return upload.getEffectiveDate();
+	}
+	public UploadStatus getUploadStatus() {
+		return upload.getUploadStatus();
+	}
+	/** The number of records that have been read from the input so far. */
+	public long getUploadedRecordCount() {
+		return upload.getUploadedRecordCount();
+	}
+	public Long getNewIssueCount() {
+		return upload.getNewIssueCount();
+	}
+	public Long getClosedIssueCount() {
+		return upload.getClosedIssueCount();
+	}
+}
@@ -1,7 +1,10 @@
 package gov.usds.case_issues.services;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +38,33 @@ public class CaseAttachmentService {
 
 	@Transactional(readOnly=false)
 	public CaseAttachmentAssociation attachToSnooze(AttachmentRequest request, CaseSnooze snooze) {
+		return _associationRepository.save(new CaseAttachmentAssociation(snooze, findOrCreateAttachment(request)));
+	}
+
+	/**
+	 * Attach the same notes to each of a group of snoozes, looking each note up (or creating it) only once
+	 * and saving all of the associations together.
+	 * @return the associations created for each snooze, in the order the notes were requested.
+	 */
+	@Transactional(readOnly=false)
+	public Map<CaseSnooze, List<CaseAttachmentAssociation>> attachToSnoozes(List<AttachmentRequest> requests,
+			List<CaseSnooze> snoozes) {
+		List<CaseAttachment> attachments = requests.stream()
+			.map(this::findOrCreateAttachment)
+			.collect(Collectors.toList());
+		Map<CaseSnooze, List<CaseAttachmentAssociation>> associations = new LinkedHashMap<>();
+		for (CaseSnooze snooze : snoozes) {
+			associations.put(snooze, attachments.stream()
+				.map(a -> new CaseAttachmentAssociation(snooze, a))
+				.collect(Collectors.toList()));
+		}
+		_associationRepository.saveAll(associations.values().stream()
+			.flatMap(List::stream)
+			.collect(Collectors.toList()));
+		return associations;
+	}
+
+	private CaseAttachment findOrCreateAttachment(AttachmentRequest request) {
 		AttachmentType requestedType = request.getNoteType();
 		String requestedSubtype = request.getSubtype();
 
@@ -55,16 +85,13 @@ public class CaseAttachmentService {
 			throw new IllegalArgumentException("Subtypes are not allowed for attachment type " + requestedType);
 		}
 
-		CaseAttachment attachment = null;
 		Optional<CaseAttachment> search = _attachmentRepository.findByAttachmentTypeAndAttachmentSubtypeAndContent(requestedType, subType, request.getContent());
 		if (search.isPresent()) {
-			attachment = search.get();
-			LOG.debug("Found existing note {}", attachment.getInternalId());
+			LOG.debug("Found existing note {}", search.get().getInternalId());
+			return search.get();
 		} else {
-			attachment = _attachmentRepository.save(new CaseAttachment(requestedType, subType, request.getContent()));
+			return _attachmentRepository.save(new CaseAttachment(requestedType, subType, request.getContent()));
 		}
-
-		return _associationRepository.save(new CaseAttachmentAssociation(snooze, attachment));
 	}
 
 	public List<CaseAttachmentAssociation> findAttachmentsForCase(TroubleCase rootCase) {
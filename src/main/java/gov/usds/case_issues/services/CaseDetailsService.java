@@ -1,33 +1,52 @@
 package gov.usds.case_issues.services;
 
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import javax.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import gov.usds.case_issues.db.model.AttachmentType;
 import gov.usds.case_issues.db.model.CaseAttachmentAssociation;
 import gov.usds.case_issues.db.model.CaseManagementSystem;
 import gov.usds.case_issues.db.model.CaseSnooze;
 import gov.usds.case_issues.db.model.TroubleCase;
+import gov.usds.case_issues.db.model.projections.CaseAttachmentRow;
+import gov.usds.case_issues.db.model.projections.CaseIssueRow;
 import gov.usds.case_issues.db.model.projections.CaseIssueSummary;
+import gov.usds.case_issues.db.model.projections.CaseSnoozeRow;
 import gov.usds.case_issues.db.model.projections.CaseSnoozeSummary;
-import gov.usds.case_issues.db.repositories.CaseIssueRepository;
 import gov.usds.case_issues.db.repositories.CaseManagementSystemRepository;
 import gov.usds.case_issues.db.repositories.CaseSnoozeRepository;
 import gov.usds.case_issues.db.repositories.TroubleCaseRepository;
 import gov.usds.case_issues.model.ApiModelNotFoundException;
 import gov.usds.case_issues.model.AttachmentRequest;
 import gov.usds.case_issues.model.AttachmentSummary;
+import gov.usds.case_issues.model.BatchSnoozeRequest;
+import gov.usds.case_issues.model.BatchSnoozeResult;
+import gov.usds.case_issues.model.BatchSnoozeResult.Outcome;
 import gov.usds.case_issues.model.CaseDetails;
 import gov.usds.case_issues.model.CaseSnoozeSummaryFacade;
 import gov.usds.case_issues.model.SnoozeRequest;
+import gov.usds.case_issues.services.model.CaseGroupChange;
+import gov.usds.case_issues.services.model.CaseGroupChange.ChangeType;
 
 /**
  * Service object for querying and manipulating details of individual cases (largely manipulating the
@@ -37,6 +56,20 @@ import gov.usds.case_issues.model.SnoozeRequest;
 @Transactional(readOnly=true)
 public class CaseDetailsService {
 
+	/** The most cases that a batch request can change at once. */
+	public static final int MAX_BATCH_SIZE = 1000;
+
+	private static final int HISTORY_KIND = 0;
+	private static final int HISTORY_TEXT = 1;
+	private static final int HISTORY_START = 2;
+	private static final int HISTORY_END = 3;
+	private static final int HISTORY_ATTACHMENT_ID = 4;
+	private static final int HISTORY_ATTACHMENT_TYPE = 5;
+	private static final int HISTORY_SUBTYPE_TAG = 6;
+	private static final int HISTORY_SUBTYPE_URL_TEMPLATE = 7;
+	private static final int HISTORY_CREATED_BY = 8;
+	private static final int HISTORY_CREATOR_NAME = 9;
+
 	@Autowired
 	private CaseManagementSystemRepository _caseManagementSystemRepo;
 	@Autowired
@@ -44,9 +77,9 @@ public class CaseDetailsService {
 	@Autowired
 	private CaseSnoozeRepository _snoozeRepo;
 	@Autowired
-	private CaseIssueRepository _issueRepo;
-	@Autowired
 	private CaseAttachmentService _attachmentService;
+	@Autowired
+	private ApplicationEventPublisher _eventPublisher;
 
 	public TroubleCase findCaseByTags(String caseManagementSystemTag, String receiptNumber) {
 		CaseManagementSystem caseManagementSystem = _caseManagementSystemRepo.findByExternalId(caseManagementSystemTag)
@@ -63,22 +96,51 @@ public class CaseDetailsService {
 
 	/**
 	 * Find all details about a case, using projection APIs that avoid circular references.
+	 * The case (with its case management system and case type) is fetched in one query, and all of its issues,
+	 * snoozes and notes in a second one.
 	 * @param caseManagementSystemTag
 	 * @param receiptNumber
 	 * @return
 	 */
 	public CaseDetails findCaseDetails(String caseManagementSystemTag, String receiptNumber) {
-		TroubleCase mainCase = findCaseByTags(caseManagementSystemTag, receiptNumber);
-		Collection<CaseIssueSummary> issues = _issueRepo.findAllByIssueCaseOrderByIssueCreated(mainCase);
-		List<CaseSnoozeSummaryFacade> snoozes = _snoozeRepo.findAllBySnoozeCaseOrderBySnoozeStartAsc(mainCase).stream()
-													.map(CaseSnoozeSummaryFacade::new)
-													.collect(Collectors.toList());
-		List<AttachmentSummary> notes = _attachmentService.findAttachmentsForCase(mainCase).stream()
-													.map(AttachmentSummary::new)
-													.collect(Collectors.toList());
+		TroubleCase mainCase = _caseRepo.findCaseForDetails(caseManagementSystemTag, receiptNumber)
+				.orElseThrow(()->caseNotFound(caseManagementSystemTag, receiptNumber));
+		List<CaseIssueSummary> issues = new ArrayList<>();
+		List<CaseSnoozeSummaryFacade> snoozes = new ArrayList<>();
+		List<AttachmentSummary> notes = new ArrayList<>();
+		for (Object[] row : _caseRepo.getCaseHistory(mainCase.getInternalId())) {
+			String kind = (String) row[HISTORY_KIND];
+			String text = (String) row[HISTORY_TEXT];
+			if ("ISSUE".equals(kind)) {
+				issues.add(new CaseIssueRow(text, toZoned(row[HISTORY_START]), toZoned(row[HISTORY_END])));
+			} else if ("SNOOZE".equals(kind)) {
+				snoozes.add(new CaseSnoozeSummaryFacade(new CaseSnoozeRow(text,
+					toZoned(row[HISTORY_START]), toZoned(row[HISTORY_END]),
+					(String) row[HISTORY_CREATED_BY], (String) row[HISTORY_CREATOR_NAME])));
+			} else {
+				notes.add(new AttachmentSummary(new CaseAttachmentRow(mainCase.getInternalId(),
+					((Number) row[HISTORY_ATTACHMENT_ID]).longValue(),
+					AttachmentType.valueOf((String) row[HISTORY_ATTACHMENT_TYPE]),
+					(String) row[HISTORY_SUBTYPE_TAG], (String) row[HISTORY_SUBTYPE_URL_TEMPLATE], text,
+					(Date) row[HISTORY_START], (String) row[HISTORY_CREATED_BY], (String) row[HISTORY_CREATOR_NAME])));
+			}
+		}
 		return new CaseDetails(mainCase, issues, snoozes, notes);
 	}
 
+	/** Distinguish a missing case from a missing case management system, the way {@link #findCaseByTags} does. */
+	private ApiModelNotFoundException caseNotFound(String caseManagementSystemTag, String receiptNumber) {
+		if (!_caseManagementSystemRepo.findByExternalId(caseManagementSystemTag).isPresent()) {
+			return new ApiModelNotFoundException("Case Management System", caseManagementSystemTag);
+		}
+		return new ApiModelNotFoundException("Case", receiptNumber);
+	}
+
+	/** Convert a native query timestamp the same way Hibernate does for entity fields. */
+	private static ZonedDateTime toZoned(Object timestamp) {
+		return timestamp == null ? null : ZonedDateTime.ofInstant(((Date) timestamp).toInstant(), ZoneId.systemDefault());
+	}
+
 	public Optional<CaseSnoozeSummary> findActiveSnooze(String caseManagementSystemTag, String receiptNumber) {
 		Optional<CaseSnooze> found = findSnooze(caseManagementSystemTag, receiptNumber);
 		if (snoozeIsActive(found)) {
@@ -93,6 +155,7 @@ public class CaseDetailsService {
 		Optional<CaseSnooze> found = findSnooze(caseManagementSystemTag, receiptNumber);
 		if (snoozeIsActive(found)) {
 			found.get().endSnoozeNow();
+			publishChange(found.get().getSnoozeCase(), ChangeType.SNOOZE_ENDED, null);
 			return true;
 		} else {
 			return false;
@@ -107,10 +170,13 @@ public class CaseDetailsService {
 			CaseSnooze oldSnooze = foundSnooze.get();
 			oldSnooze.endSnoozeNow();
 		}
+		ZonedDateTime earliestChange = foundSnooze.isPresent() ? null
+			: _snoozeRepo.findEarliestIssueClosedNeverSnoozed(Collections.singletonList(mainCase)).orElse(null);
 		String reason = requestedSnooze.getSnoozeReason();
 		int duration = requestedSnooze.getDuration();
 		CaseSnooze replacement = new CaseSnooze(mainCase, reason, duration);
 		_snoozeRepo.save(replacement);
+		publishChange(mainCase, ChangeType.CASE_SNOOZED, earliestChange);
 		List<AttachmentSummary> savedNotes = requestedSnooze.getNotes().stream()
 				.map(r->_attachmentService.attachToSnooze(r, replacement))
 				.map(AttachmentSummary::new)
@@ -118,6 +184,108 @@ public class CaseDetailsService {
 		return new CaseSnoozeSummaryFacade(replacement, savedNotes);
 	}
 
+	/**
+	 * Snooze every case in the list with the same reason, duration and notes, in a single transaction, ending any
+	 * active snoozes they have first. The cases, their active snoozes and each note are looked up once for the
+	 * whole batch rather than once per case.
+	 * @return the outcome for each receipt number, in the order requested (ignoring duplicates).
+	 */
+	@Transactional(readOnly=false)
+	public List<BatchSnoozeResult> updateSnoozes(String caseManagementSystemTag, @Valid BatchSnoozeRequest requestedSnooze) {
+		Map<String, TroubleCase> cases = findCasesByTags(caseManagementSystemTag, requestedSnooze.getReceiptNumbers());
+		findActiveSnoozes(cases.values()).forEach(CaseSnooze::endSnoozeNow);
+		ZonedDateTime earliestChange = cases.isEmpty() ? null
+			: _snoozeRepo.findEarliestIssueClosedNeverSnoozed(cases.values()).orElse(null);
+		Map<String, CaseSnooze> replacements = new LinkedHashMap<>();
+		cases.forEach((receiptNumber, c) -> replacements.put(receiptNumber,
+			new CaseSnooze(c, requestedSnooze.getSnoozeReason(), requestedSnooze.getDuration())));
+		List<CaseSnooze> saved = new ArrayList<>(replacements.values());
+		_snoozeRepo.saveAll(saved);
+		Map<CaseSnooze, List<CaseAttachmentAssociation>> notes = _attachmentService.attachToSnoozes(requestedSnooze.getNotes(), saved);
+		publishBatchChange(cases.values(), ChangeType.CASE_SNOOZED, earliestChange);
+		return distinct(requestedSnooze.getReceiptNumbers()).stream()
+			.map(receiptNumber -> {
+				CaseSnooze snooze = replacements.get(receiptNumber);
+				if (snooze == null) {
+					return new BatchSnoozeResult(receiptNumber, Outcome.NOT_FOUND);
+				}
+				List<AttachmentSummary> savedNotes = notes.get(snooze).stream()
+					.map(AttachmentSummary::new)
+					.collect(Collectors.toList());
+				return new BatchSnoozeResult(receiptNumber, Outcome.SNOOZED, new CaseSnoozeSummaryFacade(snooze, savedNotes));
+			})
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * End the active snooze (if any) on every case in the list, in a single transaction. Listeners are only told
+	 * about the case groups where a snooze actually ended.
+	 * @return the outcome for each receipt number, in the order requested (ignoring duplicates).
+	 */
+	@Transactional(readOnly=false)
+	public List<BatchSnoozeResult> endActiveSnoozes(String caseManagementSystemTag, List<String> receiptNumbers) {
+		Map<String, TroubleCase> cases = findCasesByTags(caseManagementSystemTag, receiptNumbers);
+		Set<String> ended = new HashSet<>();
+		List<TroubleCase> endedCases = new ArrayList<>();
+		for (CaseSnooze snooze : findActiveSnoozes(cases.values())) {
+			snooze.endSnoozeNow();
+			ended.add(snooze.getSnoozeCase().getReceiptNumber());
+			endedCases.add(snooze.getSnoozeCase());
+		}
+		publishBatchChange(endedCases, ChangeType.SNOOZE_ENDED, null);
+		return distinct(receiptNumbers).stream()
+			.map(receiptNumber -> new BatchSnoozeResult(receiptNumber,
+				!cases.containsKey(receiptNumber) ? Outcome.NOT_FOUND
+				: ended.contains(receiptNumber) ? Outcome.ENDED
+				: Outcome.NOT_SNOOZED))
+			.collect(Collectors.toList());
+	}
+
+	/** Find the cases in a batch request, keyed on receipt number (leaving out those that do not exist). */
+	private Map<String, TroubleCase> findCasesByTags(String caseManagementSystemTag, List<String> receiptNumbers) {
+		if (receiptNumbers == null || receiptNumbers.isEmpty()) {
+			throw new IllegalArgumentException("At least one receipt number is required");
+		}
+		Collection<String> requested = distinct(receiptNumbers);
+		if (requested.size() > MAX_BATCH_SIZE) {
+			throw new IllegalArgumentException("No more than " + MAX_BATCH_SIZE + " cases can be changed in one request");
+		}
+		CaseManagementSystem caseManagementSystem = _caseManagementSystemRepo.findByExternalId(caseManagementSystemTag)
+				.orElseThrow(()->new ApiModelNotFoundException("Case Management System", caseManagementSystemTag));
+		return _caseRepo.findCasesForUpdate(caseManagementSystem, requested).stream()
+			.collect(Collectors.toMap(TroubleCase::getReceiptNumber, c -> c, (a, b) -> a, LinkedHashMap::new));
+	}
+
+	private List<CaseSnooze> findActiveSnoozes(Collection<TroubleCase> cases) {
+		if (cases.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return _snoozeRepo.findAllBySnoozeCaseInAndSnoozeEndAfter(cases, ZonedDateTime.now());
+	}
+
+	private static Collection<String> distinct(List<String> receiptNumbers) {
+		return new LinkedHashSet<>(receiptNumbers);
+	}
+
+	/**
+	 * Let listeners know that cases have changed, with one notification per case group rather than one per case
+	 * (so that a large batch does not swamp the notification queue). The earliest change is for the whole batch,
+	 * which may reach back further than the changes to some of the case groups in it.
+	 */
+	private void publishBatchChange(Collection<TroubleCase> changed, ChangeType changeType, ZonedDateTime earliestChange) {
+		changed.stream()
+			.map(c -> Arrays.asList(c.getCaseManagementSystem().getInternalId(), c.getCaseType().getInternalId()))
+			.distinct()
+			.forEach(group -> _eventPublisher.publishEvent(
+				CaseGroupChange.caseChanged(group.get(0), group.get(1), changeType, null, earliestChange)));
+	}
+
+	/** Let listeners know about a change to a case, once the current transaction commits. */
+	private void publishChange(TroubleCase changed, ChangeType changeType, ZonedDateTime earliestChange) {
+		_eventPublisher.publishEvent(CaseGroupChange.caseChanged(changed.getCaseManagementSystem().getInternalId(),
+			changed.getCaseType().getInternalId(), changeType, changed.getReceiptNumber(), earliestChange));
+	}
+
 	private static boolean snoozeIsActive(Optional<CaseSnooze> snooze) {
 		return snooze.isPresent() && snooze.get().getSnoozeEnd().isAfter(ZonedDateTime.now());
 	}
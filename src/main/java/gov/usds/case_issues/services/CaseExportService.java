@@ -0,0 +1,122 @@
+package gov.usds.case_issues.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+
+import gov.usds.case_issues.db.model.projections.CaseSnoozeSummary;
+import gov.usds.case_issues.db.model.reporting.FilterableCase;
+import gov.usds.case_issues.model.CaseExportFormat;
+import gov.usds.case_issues.model.CaseSnoozeFilter;
+import gov.usds.case_issues.model.CaseSummary;
+import gov.usds.case_issues.services.model.CaseGroupInfo;
+
+/**
+ * Writes out every case in a case group that matches a set of filters (the same ones the paged case list
+ * accepts), one case at a time as they are read from the database.
+ */
+@Service
+public class CaseExportService {
+
+	private static final CsvSchema CSV_SCHEMA = CsvSchema.builder()
+		.addColumn("receiptNumber")
+		.addColumn("caseCreation")
+		.addColumn("caseInitialUploadDate")
+		.addColumn("caseDataModifiedDate")
+		.addColumn("snoozeReason")
+		.addColumn("snoozeStart")
+		.addColumn("snoozeEnd")
+		.addColumn("extraData")
+		.addColumn("notes")
+		.build()
+		.withHeader();
+
+	@Autowired
+	private CaseFilteringService _filteringService;
+	@Autowired
+	private ObjectMapper _jsonMapper;
+
+	/**
+	 * Write the matching cases to the stream, which is flushed but not closed.
+	 */
+	public void export(CaseGroupInfo group, CaseSnoozeFilter queryFilter, List<? extends Specification<FilterableCase>> filters,
+			CaseExportFormat format, OutputStream out) throws IOException {
+		try {
+			switch (format) {
+				case CSV:
+					writeCsv(group, queryFilter, filters, out);
+					break;
+				case NDJSON:
+					writeNdjson(group, queryFilter, filters, out);
+					break;
+				default:
+					throw new IllegalArgumentException("Unsupported export format " + format);
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		out.flush();
+	}
+
+	private void writeNdjson(CaseGroupInfo group, CaseSnoozeFilter queryFilter, List<? extends Specification<FilterableCase>> filters,
+			OutputStream out) {
+		ObjectWriter writer = _jsonMapper.writer();
+		_filteringService.forEachCase(group, queryFilter, filters, c -> {
+			try {
+				out.write(writer.writeValueAsBytes(c));
+				out.write('\n');
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	private void writeCsv(CaseGroupInfo group, CaseSnoozeFilter queryFilter, List<? extends Specification<FilterableCase>> filters,
+			OutputStream out) throws IOException {
+		ObjectWriter writer = new CsvMapper()
+			.writer(CSV_SCHEMA)
+			.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		try (SequenceWriter rows = writer.writeValues(out)) {
+			_filteringService.forEachCase(group, queryFilter, filters, c -> {
+				try {
+					rows.write(toCsvRow(c));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		}
+	}
+
+	private Object[] toCsvRow(CaseSummary c) throws IOException {
+		CaseSnoozeSummary snooze = c.getSnoozeInformation();
+		return new Object[] {
+			c.getReceiptNumber(),
+			format(c.getCaseCreation()),
+			format(c.getCaseInitialUploadDate()),
+			format(c.getCaseDataModifiedDate()),
+			snooze == null ? null : snooze.getSnoozeReason(),
+			snooze == null ? null : format(snooze.getSnoozeStart()),
+			snooze == null ? null : format(snooze.getSnoozeEnd()),
+			_jsonMapper.writeValueAsString(c.getExtraData()),
+			_jsonMapper.writeValueAsString(c.getNotes()),
+		};
+	}
+
+	private static String format(ZonedDateTime timestamp) {
+		return timestamp == null ? null : DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(timestamp);
+	}
+}
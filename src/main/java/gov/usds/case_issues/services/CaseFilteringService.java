@@ -2,24 +2,35 @@ package gov.usds.case_issues.services;
 
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Expression;
 import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 
+import org.hibernate.annotations.QueryHints;
 import org.hibernate.validator.constraints.Range;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -27,17 +38,22 @@ import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.domain.Sort.Order;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
 
-import gov.usds.case_issues.db.model.CaseAttachmentAssociation;
+import gov.usds.case_issues.db.PostgresFunctionContributor;
+import gov.usds.case_issues.db.model.projections.CaseAttachmentRow;
 import gov.usds.case_issues.db.model.reporting.FilterableCase;
 import gov.usds.case_issues.db.repositories.AttachmentAssociationRepository;
 import gov.usds.case_issues.db.repositories.reporting.FilterableCaseRepository;
 import gov.usds.case_issues.model.AttachmentSummary;
 import gov.usds.case_issues.model.CaseSnoozeFilter;
 import gov.usds.case_issues.model.CaseSummary;
+import gov.usds.case_issues.services.model.CaseGroupInfo;
 import gov.usds.case_issues.services.model.CasePageInfo;
+import gov.usds.case_issues.services.model.CasePageKey;
 import gov.usds.case_issues.services.model.DelegatingFilterableCaseSummary;
 import gov.usds.case_issues.validators.TagFragment;
 
@@ -58,6 +74,12 @@ public class CaseFilteringService {
 	private AttachmentAssociationRepository _attachmentAssociationRepo;
 	@Autowired
 	private PageTranslationService _translator;
+	@Autowired
+	private PageCursorService _cursorService;
+	@PersistenceContext
+	private EntityManager _entityManager;
+	@Value("${case-export.fetch-size:500}")
+	private int _exportFetchSize;
 
 	/** The maximum allowed page size for a paged request. */
 	public static final int MAX_PAGE_SIZE = 100;
@@ -73,12 +95,54 @@ public class CaseFilteringService {
 			) {
 		Sort sortOrder = requestedSortOrder.orElse(defaultSort(queryFilters)); // in the long run we should probably validate this better.
 		CaseSnoozeFilter singleFilter = queryFilters.stream().findFirst().get();
-		Specification<FilterableCase> spec = baseSpec(caseManagementSystemTag, caseTypeTag, sortOrder, pageReference)
+		CasePageInfo path = _translator.translatePath(caseManagementSystemTag, caseTypeTag, pageReference.orElse(null));
+		Specification<FilterableCase> spec = baseSpec(path, sortOrder)
 			.and(caseCategorySpec(singleFilter));
 		for (Specification<FilterableCase> f : filters) {
 			spec = spec.and(f);
 		}
-		return wrapFetched(spec, PageRequest.of(0, pageSize, sortOrder));
+		return wrapFetched(path, spec, PageRequest.of(0, pageSize, sortOrder));
+	}
+
+	/**
+	 * Hand every case in the group that matches the filters to the consumer, in the default order for the main filter.
+	 * Cases are read through a database cursor and attachments are fetched a batch of cases at a time, so memory use
+	 * does not depend on how many cases there are (as long as the consumer does not hold on to them).
+	 */
+	@Transactional(readOnly=true)
+	public void forEachCase(
+			@NotNull CaseGroupInfo group,
+			@NotNull CaseSnoozeFilter queryFilter,
+			@NotNull List<? extends Specification<FilterableCase>> filters,
+			@NotNull Consumer<? super CaseSummary> action) {
+		Sort sortOrder = defaultSort(Collections.singleton(queryFilter));
+		Specification<FilterableCase> spec = pathSpec(group).and(caseCategorySpec(queryFilter));
+		for (Specification<FilterableCase> f : filters) {
+			spec = spec.and(f);
+		}
+		CriteriaBuilder cb = _entityManager.getCriteriaBuilder();
+		CriteriaQuery<FilterableCase> query = cb.createQuery(FilterableCase.class);
+		Root<FilterableCase> root = query.from(FilterableCase.class);
+		query.where(spec.toPredicate(root, query, cb));
+		query.orderBy(QueryUtils.toOrders(sortOrder, root, cb));
+		try (Stream<FilterableCase> found = _entityManager.createQuery(query)
+				.setHint(QueryHints.FETCH_SIZE, _exportFetchSize)
+				.setHint(QueryHints.READ_ONLY, true)
+				.getResultStream()) {
+			Iterator<FilterableCase> cases = found.iterator();
+			List<FilterableCase> batch = new ArrayList<>(_exportFetchSize);
+			while (cases.hasNext()) {
+				batch.add(cases.next());
+				if (batch.size() == _exportFetchSize || !cases.hasNext()) {
+					Map<Long, List<AttachmentSummary>> attachments = fetchAllAttachments(batch);
+					for (FilterableCase c : batch) {
+						action.accept(new DelegatingFilterableCaseSummary(c, attachments.get(c.getInternalId()), null));
+						_entityManager.detach(c); // otherwise the persistence context ends up holding every case
+					}
+					batch.clear();
+				}
+			}
+		}
 	}
 
 	private Sort defaultSort(Set<CaseSnoozeFilter> queryFilters) {
@@ -103,7 +167,7 @@ public class CaseFilteringService {
 		}
 	}
 
-	private List<CaseSummary> wrapFetched(Specification<FilterableCase> mainSpec, Pageable pageInfo) {
+	private List<CaseSummary> wrapFetched(CaseGroupInfo group, Specification<FilterableCase> mainSpec, Pageable pageInfo) {
 		try {
 			LOG.debug("Starting fetch using {}/{}", mainSpec, pageInfo);
 			Slice<FilterableCase> page = _repo.findAll(mainSpec, pageInfo);
@@ -111,7 +175,8 @@ public class CaseFilteringService {
 			List<FilterableCase> cases = page.getContent();
 			Map<Long, List<AttachmentSummary>> attachments = fetchAllAttachments(cases);
 			return cases.stream()
-					.map(c -> new DelegatingFilterableCaseSummary(c, attachments.get(c.getInternalId())))
+					.map(c -> new DelegatingFilterableCaseSummary(c, attachments.get(c.getInternalId()),
+						_cursorService.encode(group, new CasePageKey(c))))
 					.collect(Collectors.toList());
 		} catch (InvalidDataAccessApiUsageException e) {
 			if (e.getCause() instanceof IllegalArgumentException) {
@@ -123,36 +188,34 @@ public class CaseFilteringService {
 	}
 
 	private Map<Long, List<AttachmentSummary>> fetchAllAttachments(List<FilterableCase> cases) {
+		if (cases.isEmpty()) {
+			return new HashMap<>();
+		}
 		List<Long> caseIds = cases.stream().map(FilterableCase::getInternalId).collect(Collectors.toList());
-		List<CaseAttachmentAssociation> associations = _attachmentAssociationRepo.findAllBySnoozeSnoozeCaseInternalIdIn(caseIds);
+		return groupAttachments(_attachmentAssociationRepo.findAttachmentRowsByCaseIds(caseIds));
+	}
+
+	/** Group attachment rows by case, keeping their order. */
+	static Map<Long, List<AttachmentSummary>> groupAttachments(List<CaseAttachmentRow> rows) {
 		Map<Long, List<AttachmentSummary>> attachments = new HashMap<>();
-		for (CaseAttachmentAssociation assoc : associations) {
-			Long caseId = assoc.getSnooze().getSnoozeCase().getInternalId();
-			List<AttachmentSummary> attachmentList = attachments.get(caseId);
-			if (attachmentList == null) {
-				attachmentList = new ArrayList<>();
-				attachments.put(caseId, attachmentList);
-			}
-			attachmentList.add(new AttachmentSummary(assoc));
+		for (CaseAttachmentRow row : rows) {
+			attachments.computeIfAbsent(row.getCaseId(), id -> new ArrayList<>()).add(new AttachmentSummary(row));
 		}
 		return attachments;
 	}
 
-	private Specification<FilterableCase> baseSpec(String caseManagementSystemTag, String caseTypeTag, Sort sortOrder,
-			Optional<String> pageReference) {
-		CasePageInfo path = _translator.translatePath(caseManagementSystemTag, caseTypeTag, pageReference.orElse(null)); 
+	private Specification<FilterableCase> baseSpec(CasePageInfo path, Sort sortOrder) {
 		Specification<FilterableCase> fullSpec = pathSpec(path);
 		if (!path.isFirstPage()) {
-			fullSpec = fullSpec.and(pageSpec(path.getCase(), sortOrder));
+			fullSpec = fullSpec.and(pageSpec(path.getPageKey(), sortOrder));
 		}
 		return fullSpec;
 	}
 
-	private Specification<FilterableCase> pageSpec(FilterableCase troubleCase, Sort sortOrder) {
-		FilterableCase snuck = troubleCase;
-		Map<String, Function<FilterableCase, Comparable<?>>> lookup = new HashMap<>();
-		lookup.put("caseCreation", FilterableCase::getCaseCreation);
-		lookup.put("receiptNumber", FilterableCase::getReceiptNumber);
+	private Specification<FilterableCase> pageSpec(CasePageKey snuck, Sort sortOrder) {
+		Map<String, Function<CasePageKey, Comparable<?>>> lookup = new HashMap<>();
+		lookup.put("caseCreation", CasePageKey::getCaseCreation);
+		lookup.put("receiptNumber", CasePageKey::getReceiptNumber);
 		lookup.put("snoozeEnd", e -> { // slightly gross workaround
 			ZonedDateTime snoozeEnd = e.getSnoozeEnd();
 			if (null == snoozeEnd || snoozeEnd.isBefore(ZonedDateTime.now())) {
@@ -161,19 +224,28 @@ public class CaseFilteringService {
 			return snoozeEnd;
 		});
 
+		Map<String, Comparable<?>> pageKey = new HashMap<>();
+		for (Order o : sortOrder) {
+			String property = o.getProperty();
+			Comparable<?> val = lookup.get(property).apply(snuck);
+			if (val == null) {
+				throw new IllegalArgumentException("Property " + property + " cannot be found via page reference");
+			}
+			pageKey.put(property, val);
+		}
+		if (isUniformlyOrdered(sortOrder)) {
+			return rowValueKeySet(pageKey, sortOrder);
+		}
+
 		@SuppressWarnings({"rawtypes", "unchecked"})
 		Specification<FilterableCase> keySet = (root, query, cb) -> {
 			List<Predicate> priorFields = new ArrayList<>();
 			List<Predicate> alternates = new ArrayList<>();
 			for (Order o : sortOrder) {
 				String property = o.getProperty();
-				Comparable val = lookup.get(property).apply(snuck);
-				if (val == null) {
-					throw new IllegalArgumentException("Property " + property + " cannot be found via page reference");
-				}
 				List<Predicate> conjunction = new ArrayList<>(priorFields);
 				Path<Comparable> field = root.get(property);
-				Expression<Comparable> placeholder = cb.literal(val);
+				Expression<Comparable> placeholder = cb.literal((Comparable) pageKey.get(property));
 				conjunction.add(o.isAscending() ? cb.greaterThan(field, placeholder) : cb.lessThan(field, placeholder));
 				alternates.add(cb.and(conjunction.toArray(new Predicate[conjunction.size()])));
 				priorFields.add(cb.equal(field, placeholder));	
@@ -183,10 +255,34 @@ public class CaseFilteringService {
 		return keySet;
 	}
 
-	private Specification<FilterableCase> pathSpec(CasePageInfo path) {
+	private static boolean isUniformlyOrdered(Sort sortOrder) {
+		return sortOrder.stream().map(Order::getDirection).distinct().count() == 1;
+	}
+
+	/**
+	 * Build the keyset condition as a single row-value comparison, which the database can use as
+	 * one index range condition (so a deep page is as cheap as the first one). Only correct when every
+	 * field in the sort order goes the same direction.
+	 */
+	private static Specification<FilterableCase> rowValueKeySet(Map<String, Comparable<?>> pageKey, Sort sortOrder) {
+		boolean ascending = sortOrder.iterator().next().isAscending();
+		String function = ascending ? PostgresFunctionContributor.ROW_GREATER_THAN : PostgresFunctionContributor.ROW_LESS_THAN;
+		return (root, query, cb) -> {
+			List<Expression<?>> fields = new ArrayList<>();
+			List<Expression<?>> values = new ArrayList<>();
+			for (Order o : sortOrder) {
+				fields.add(root.get(o.getProperty()));
+				values.add(cb.literal(pageKey.get(o.getProperty())));
+			}
+			fields.addAll(values);
+			return cb.isTrue(cb.function(function, Boolean.class, fields.toArray(new Expression<?>[fields.size()])));
+		};
+	}
+
+	private Specification<FilterableCase> pathSpec(CaseGroupInfo path) {
 		return (root1, query1, cb1) -> cb1.and(
-			cb1.equal(root1.get("caseManagementSystem"), path.getCaseManagementSystem()),
-			cb1.equal(root1.get("caseType"), path.getCaseType()),
+			cb1.equal(root1.get("caseManagementSystem").get("internalId"), path.getCaseManagementSystemId()),
+			cb1.equal(root1.get("caseType").get("internalId"), path.getCaseTypeId()),
 			// this should probably do the subquery directly rather than using the one in the view
 			cb1.isTrue(root1.get("hasOpenIssue"))
 		);
@@ -0,0 +1,111 @@
+package gov.usds.case_issues.services;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.rest.core.annotation.HandleAfterCreate;
+import org.springframework.data.rest.core.annotation.HandleAfterDelete;
+import org.springframework.data.rest.core.annotation.HandleAfterSave;
+import org.springframework.data.rest.core.annotation.RepositoryEventHandler;
+import org.springframework.stereotype.Service;
+
+import gov.usds.case_issues.db.model.CaseManagementSystem;
+import gov.usds.case_issues.db.model.CaseType;
+import gov.usds.case_issues.services.model.CaseGroupInfo;
+
+/**
+ * A small in-process cache of {@link CaseGroupInfo} objects (which hold only IDs and tags, so they are safe to share
+ * between threads), keyed on the tags used in API paths. Entries expire after a fixed time, the least recently used
+ * entries are dropped once the cache is full, and the whole cache is cleared whenever a case management system or
+ * case type is changed through the repository REST resources. A lookup that was started before the cache was
+ * cleared is returned to its caller, but not cached, since it may have read the data from before the change.
+ */
+@Service
+@RepositoryEventHandler
+public class CaseGroupCache {
+
+	private static final Logger LOG = LoggerFactory.getLogger(CaseGroupCache.class);
+	private static final float LOAD_FACTOR = 0.75f;
+
+	private final Map<String, Entry> _entries;
+	private final long _timeToLiveNanos;
+	/** Incremented (while holding the lock on {@link #_entries}) every time the cache is cleared. */
+	private long _generation;
+
+	public CaseGroupCache(
+			@Value("${path-translation.cache.max-entries:100}") int maxEntries,
+			@Value("${path-translation.cache.time-to-live:PT5M}") Duration timeToLive) {
+		_timeToLiveNanos = timeToLive.toNanos();
+		_entries = new LinkedHashMap<String, Entry>(maxEntries, LOAD_FACTOR, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Get the cached group for these tags, or look it up with the supplied loader if there is no live entry.
+	 * Loader failures (e.g. because a tag does not exist) are not cached.
+	 */
+	public CaseGroupInfo get(String caseManagementSystemTag, String caseTypeTag, Supplier<CaseGroupInfo> loader) {
+		String key = caseManagementSystemTag + "/" + caseTypeTag;
+		long now = System.nanoTime();
+		long generation;
+		synchronized (_entries) {
+			Entry found = _entries.get(key);
+			if (found != null && now - found.loadedAt < _timeToLiveNanos) {
+				return found.group;
+			}
+			generation = _generation;
+		}
+		CaseGroupInfo loaded = loader.get();
+		synchronized (_entries) {
+			if (generation == _generation) {
+				_entries.put(key, new Entry(loaded, now));
+			} else {
+				LOG.debug("Case group cache was cleared while {} was being loaded: not caching it", key);
+			}
+		}
+		return loaded;
+	}
+
+	public void evictAll() {
+		LOG.debug("Clearing case group cache");
+		synchronized (_entries) {
+			_generation++;
+			_entries.clear();
+		}
+	}
+
+	@HandleAfterCreate
+	@HandleAfterSave
+	@HandleAfterDelete
+	public void caseManagementSystemChanged(CaseManagementSystem changed) {
+		evictAll();
+	}
+
+	@HandleAfterCreate
+	@HandleAfterSave
+	@HandleAfterDelete
+	public void caseTypeChanged(CaseType changed) {
+		evictAll();
+	}
+
+	private static final class Entry {
+		private final CaseGroupInfo group;
+		private final long loadedAt;
+
+		private Entry(CaseGroupInfo group, long loadedAt) {
+			this.group = group;
+			this.loadedAt = loadedAt;
+		}
+	}
+}
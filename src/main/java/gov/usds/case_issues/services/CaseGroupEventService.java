@@ -0,0 +1,168 @@
+package gov.usds.case_issues.services;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import gov.usds.case_issues.config.ExecutorConfig;
+import gov.usds.case_issues.services.model.CaseGroupChange;
+import gov.usds.case_issues.services.model.CaseGroupInfo;
+
+/**
+ * Keeps track of the clients listening for changes to each case group, and sends them each {@link CaseGroupChange}
+ * once the transaction that made the change has committed (so that a client reacting to a notification is sure
+ * to see the change).
+ * <p>
+ * Each client has its own bounded queue of notifications, which is sent from the background pool by a task of its
+ * own, so that a slow client holds up only its own notifications (and never the upload or request that caused them).
+ * A client that falls too far behind is disconnected, and can catch up by reloading when it reconnects.
+ * <p>
+ * Listeners are only held in memory, so they hear about changes made through this instance of the application and
+ * no other: this only supports a single instance. Running more would need the changes passed between them (with
+ * Postgres LISTEN/NOTIFY, for instance).
+ */
+@Service
+public class CaseGroupEventService {
+
+	private static final Logger LOG = LoggerFactory.getLogger(CaseGroupEventService.class);
+
+	@Value("${case-events.timeout:PT30M}")
+	private Duration _timeout;
+	@Value("${case-events.max-subscribers:200}")
+	private int _maxSubscribers;
+	@Value("${case-events.subscriber-queue-capacity:20}")
+	private int _subscriberQueueCapacity;
+
+	private final ConcurrentMap<String, List<Subscriber>> _subscribers = new ConcurrentHashMap<>();
+	private final AtomicInteger _subscriberCount = new AtomicInteger();
+	@Autowired
+	@Qualifier(ExecutorConfig.CASE_EVENT_EXECUTOR)
+	private AsyncTaskExecutor _sendExecutor;
+
+	@PreDestroy
+	public void shutdown() {
+		_subscribers.values().forEach(subscribers -> subscribers.forEach(s -> s._emitter.complete()));
+	}
+
+	/**
+	 * Start listening for changes to a case group. The feed ends after the configured timeout, and clients
+	 * are expected to reconnect (which EventSource does on its own).
+	 * @throws TaskRejectedException if there are already as many listeners as we are willing to hold open.
+	 */
+	public SseEmitter subscribe(CaseGroupInfo group) {
+		if (_subscriberCount.incrementAndGet() > _maxSubscribers) {
+			_subscriberCount.decrementAndGet();
+			throw new TaskRejectedException("Too many clients are listening for case changes");
+		}
+		String key = key(group.getCaseManagementSystemId(), group.getCaseTypeId());
+		Subscriber subscriber = new Subscriber(key, new SseEmitter(_timeout.toMillis()), _subscriberQueueCapacity);
+		_subscribers.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(subscriber);
+		Runnable unsubscribe = () -> unsubscribe(subscriber);
+		subscriber._emitter.onCompletion(unsubscribe);
+		subscriber._emitter.onTimeout(unsubscribe);
+		subscriber._emitter.onError(e -> unsubscribe.run());
+		return subscriber._emitter;
+	}
+
+	@TransactionalEventListener(fallbackExecution=true)
+	public void caseGroupChanged(CaseGroupChange change) {
+		List<Subscriber> subscribers = _subscribers.get(key(change.getCaseManagementSystemId(), change.getCaseTypeId()));
+		if (subscribers == null) {
+			return;
+		}
+		for (Subscriber subscriber : subscribers) {
+			if (!subscriber._queue.offer(change)) {
+				subscriber._overflowed = true;
+			}
+			scheduleSend(subscriber);
+		}
+	}
+
+	private void scheduleSend(Subscriber subscriber) {
+		if (subscriber._sending.compareAndSet(false, true)) {
+			try {
+				_sendExecutor.execute(() -> send(subscriber));
+			} catch (TaskRejectedException e) {
+				// whatever is queued goes out with the next notification for this subscriber
+				subscriber._sending.set(false);
+				LOG.warn("Delayed case group notifications: too many clients are waiting to be sent to");
+			}
+		}
+	}
+
+	private void send(Subscriber subscriber) {
+		do {
+			if (subscriber._overflowed) {
+				LOG.debug("Dropping event listener that fell {} notifications behind", _subscriberQueueCapacity);
+				unsubscribe(subscriber);
+				subscriber._emitter.complete();
+				return;
+			}
+			CaseGroupChange change;
+			while ((change = subscriber._queue.poll()) != null) {
+				try {
+					subscriber._emitter.send(SseEmitter.event()
+						.name(change.getChangeType().name())
+						.data(change, MediaType.APPLICATION_JSON));
+				} catch (IOException | IllegalStateException e) {
+					LOG.debug("Dropping event listener that could not be sent to: {}", e.getMessage());
+					unsubscribe(subscriber);
+					subscriber._emitter.completeWithError(e);
+					return;
+				}
+			}
+			subscriber._sending.set(false);
+			// anything queued after the last poll, but before sending was switched off, was left for us
+		} while ((subscriber._overflowed || !subscriber._queue.isEmpty())
+				&& subscriber._sending.compareAndSet(false, true));
+	}
+
+	private void unsubscribe(Subscriber subscriber) {
+		List<Subscriber> subscribers = _subscribers.get(subscriber._key);
+		if (subscribers != null && subscribers.remove(subscriber)) {
+			_subscriberCount.decrementAndGet();
+		}
+	}
+
+	private static String key(Long caseManagementSystemId, Long caseTypeId) {
+		return caseManagementSystemId + "/" + caseTypeId;
+	}
+
+	/** A listening client, with the notifications waiting to be sent to it. */
+	private static class Subscriber {
+
+		private final String _key;
+		private final SseEmitter _emitter;
+		private final BlockingQueue<CaseGroupChange> _queue;
+		/** Whether a task is sending (or about to send) this subscriber's notifications. */
+		private final AtomicBoolean _sending = new AtomicBoolean();
+		private volatile boolean _overflowed;
+
+		private Subscriber(String key, SseEmitter emitter, int queueCapacity) {
+			_key = key;
+			_emitter = emitter;
+			_queue = new ArrayBlockingQueue<>(queueCapacity);
+		}
+	}
+}
@@ -1,22 +1,31 @@
 package gov.usds.case_issues.services;
 
 import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.AuditorAware;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.validation.annotation.Validated;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import gov.usds.case_issues.authorization.RequireUploadPermission;
 import gov.usds.case_issues.config.DataFormatSpec;
 import gov.usds.case_issues.config.WebConfigurationProperties;
@@ -28,7 +37,6 @@ import gov.usds.case_issues.db.model.TroubleCase;
 import gov.usds.case_issues.db.model.UploadStatus;
 import gov.usds.case_issues.db.model.reporting.FilterableCase;
 import gov.usds.case_issues.db.repositories.BulkCaseRepository;
-import gov.usds.case_issues.db.repositories.CaseIssueRepository;
 import gov.usds.case_issues.db.repositories.CaseIssueUploadRepository;
 import gov.usds.case_issues.db.repositories.CaseManagementSystemRepository;
 import gov.usds.case_issues.db.repositories.CaseTypeRepository;
@@ -36,8 +44,10 @@ import gov.usds.case_issues.db.repositories.TroubleCaseRepository;
 import gov.usds.case_issues.db.repositories.reporting.FilterableCaseRepository;
 import gov.usds.case_issues.model.ApiModelNotFoundException;
 import gov.usds.case_issues.model.CaseRequest;
+import gov.usds.case_issues.services.model.CaseGroupChange;
 import gov.usds.case_issues.services.model.CaseGroupInfo;
 import gov.usds.case_issues.services.model.CasePageInfo;
+import gov.usds.case_issues.services.model.CasePageKey;
 import gov.usds.case_issues.validators.TagFragment;
 
 /**
@@ -51,6 +61,14 @@ public class CaseListService implements PageTranslationService {
 
 	private static final Logger LOG = LoggerFactory.getLogger(CaseListService.class);
 
+	/** The number of uploaded records written to the staging table at a time by {@link #putIssueStream}. */
+	public static final int UPLOAD_CHUNK_SIZE = 1000;
+	/**
+	 * The snooze states reported by {@link #getSummaryInfo}, in the column order of
+	 * {@link BulkCaseRepository#getSnoozeSummary}.
+	 */
+	private static final String[] SNOOZE_STATES = {"NEVER_SNOOZED", "PREVIOUSLY_SNOOZED", "CURRENTLY_SNOOZED"};
+
 	@Autowired
 	private CaseTypeRepository _caseTypeRepo;
 	@Autowired
@@ -58,18 +76,30 @@ public class CaseListService implements PageTranslationService {
 	@Autowired
 	private BulkCaseRepository _bulkRepo;
 
-	@Autowired
-	private CaseIssueRepository _issueRepo;
 	@Autowired
 	private TroubleCaseRepository _caseRepo;
 	@Autowired
 	private FilterableCaseRepository _filterableCaseRepo;
 	@Autowired
+	private PageCursorService _cursorService;
+	@Autowired
+	private CaseGroupCache _caseGroupCache;
+	@Autowired
 	private UploadStatusService _uploadStatusService; // we should not have this and the repo injected in the same class!
 	@Autowired
 	private CaseIssueUploadRepository _uploadRepo;
 	@Autowired
+	private UploadMetricsService _uploadMetrics;
+	@Autowired
+	private ApplicationEventPublisher _eventPublisher;
+	@Autowired
 	private WebConfigurationProperties _webProperties;
+	@Autowired
+	private AuditorAware<String> _auditor;
+	@Autowired
+	private ObjectMapper _jsonMapper;
+	@Autowired
+	private TransactionTemplate _transactionTemplate;
 
 	public List<TroubleCase> getCases(
 			@TagFragment String caseManagementSystemTag,
@@ -82,20 +112,35 @@ public class CaseListService implements PageTranslationService {
 		}
 
 		return _caseRepo.getFirst5ByCaseManagementSystemAndCaseTypeAndReceiptNumberContains(
-			translated.getCaseManagementSystem(),
-			translated.getCaseType(),
+			_caseManagementSystemRepo.getOne(translated.getCaseManagementSystemId()),
+			_caseTypeRepo.getOne(translated.getCaseTypeId()),
 			query
 		);
 	}
 
 
+	/**
+	 * Get the snooze summary counts for a case group, along with the effective date of the last successful upload.
+	 * The counts are kept up to date by the transactions that change the cases (see
+	 * {@link BulkCaseRepository#getSnoozeSummary}), so this only reads them.
+	 */
 	public Map<String, Object> getSummaryInfo(@TagFragment String caseManagementSystemTag, @TagFragment String caseTypeTag) {
 		CaseGroupInfo translated = translatePath(caseManagementSystemTag, caseTypeTag);
-		Map<String, Object> caseCounts = _bulkRepo.getSnoozeSummary(translated.getCaseManagementSystemId(), translated.getCaseTypeId())
-				.stream()
-				.collect(Collectors.toMap(a->((String) a[0]).trim(), a->(Number) a[1]));
+		Long systemId = translated.getCaseManagementSystemId();
+		Long typeId = translated.getCaseTypeId();
+		List<Object[]> summary = _bulkRepo.getSnoozeSummary(systemId, typeId);
+		Map<String, Object> caseCounts = new HashMap<>();
+		if (!summary.isEmpty()) {
+			Object[] counts = summary.get(0);
+			for (int i = 0; i < SNOOZE_STATES.length; i++) {
+				Number count = (Number) counts[i];
+				if (count.longValue() > 0) { // states with no cases are left out
+					caseCounts.put(SNOOZE_STATES[i], count);
+				}
+			}
+		}
 		Optional<CaseIssueUpload> lastSuccess = _uploadStatusService.getLastUpload(
-			translated.getCaseManagementSystem(), translated.getCaseType(), UploadStatus.SUCCESSFUL);
+			_caseManagementSystemRepo.getOne(systemId), _caseTypeRepo.getOne(typeId), UploadStatus.SUCCESSFUL);
 		if (lastSuccess.isPresent()) {
 			caseCounts.put("lastUpdated", lastSuccess.get().getEffectiveDate());
 		}
@@ -103,6 +148,10 @@ public class CaseListService implements PageTranslationService {
 	}
 
 	public CaseGroupInfo translatePath(@TagFragment String caseManagementSystemTag, @TagFragment String caseTypeTag) {
+		return _caseGroupCache.get(caseManagementSystemTag, caseTypeTag, () -> lookUpPath(caseManagementSystemTag, caseTypeTag));
+	}
+
+	private CaseGroupInfo lookUpPath(String caseManagementSystemTag, String caseTypeTag) {
 		LOG.debug("Looking up path information for {}/{}", caseManagementSystemTag, caseTypeTag);
 		CaseManagementSystem caseManagementSystem = _caseManagementSystemRepo.findByExternalId(caseManagementSystemTag)
 				.orElseThrow(()->new ApiModelNotFoundException("Case Management System", caseManagementSystemTag));
@@ -111,15 +160,23 @@ public class CaseListService implements PageTranslationService {
 		return new CaseGroupInfo(caseManagementSystem, caseType);
 	}
 
-	public CasePageInfo translatePath(@TagFragment String caseManagementSystemTag, @TagFragment String caseTypeTag, @TagFragment String receipt) {
+	/**
+	 * Translate the path of a hitlist request, along with the page reference if there is one. The page reference
+	 * may be either a cursor issued by {@link PageCursorService} (which needs no lookup) or the receipt number of
+	 * the last case on the previous page.
+	 */
+	public CasePageInfo translatePath(@TagFragment String caseManagementSystemTag, @TagFragment String caseTypeTag, @TagFragment String pageReference) {
 		CaseGroupInfo group = translatePath(caseManagementSystemTag, caseTypeTag);
-		if (receipt != null) {
+		if (PageCursorService.isCursor(pageReference)) {
+			return new CasePageInfo(group, _cursorService.decode(group, pageReference).get());
+		}
+		if (pageReference != null) {
 			Optional<FilterableCase> lastCase =_filterableCaseRepo.findByCaseManagementSystemAndReceiptNumber(
-				group.getCaseManagementSystem(),
-				receipt
+				_caseManagementSystemRepo.getOne(group.getCaseManagementSystemId()),
+				pageReference
 			);
 			if (lastCase.isPresent()) {
-				return new CasePageInfo(group, lastCase.get());
+				return new CasePageInfo(group, new CasePageKey(lastCase.get()));
 			}
 			// I would argue that if it isn't we should throw IllegalArgumentException, but that's a breaking change
 		}
@@ -146,80 +203,174 @@ public class CaseListService implements PageTranslationService {
 	 * @throws ApiModelNotFoundException if the {@link CaseManagementSystem} or {@link CaseType} could not be found.
 	 */
 
-	@Transactional(readOnly=false)
+	@Transactional(propagation=Propagation.NOT_SUPPORTED)
 	@RequireUploadPermission
 	public CaseIssueUpload putIssueList(CaseIssueUpload translated, List<CaseRequest> newIssueCases) {
-		// convenience aliases to local variables, for use in closures
-		final ZonedDateTime eventDate = translated.getEffectiveDate();
-		final String issueTypeTag = translated.getIssueType();
-
-		List<CaseIssue> currentIssues = _issueRepo.findActiveIssues(translated.getCaseManagementSystem(), translated.getCaseType(),
-				translated.getIssueType());
-		Map<String, CaseIssue> currentMap = currentIssues.stream().collect(Collectors.toMap(i->i.getIssueCase().getReceiptNumber(), i->i));
-
-		// build a list containing only CaseSummary objects with no existing CaseIssue
-		List<CaseRequest> requestedNewIssues = new ArrayList<>();
-		for (CaseRequest caseSummary : newIssueCases) {
-			CaseIssue existingIssue = currentMap.remove(caseSummary.getReceiptNumber());
-			if (null == existingIssue) {
-				requestedNewIssues.add(caseSummary);
-			} else {
-				TroubleCase issueCase = existingIssue.getIssueCase();
-				issueCase.getExtraData().putAll(caseSummary.getExtraData());
-				if (issueCase.getCaseType() != translated.getCaseType()) {
-					LOG.error("Illegal update of case type requested for {}", issueCase.getReceiptNumber());
-				}
+		return putIssueStream(translated, newIssueCases.iterator());
+	}
+
+	/**
+	 * Streaming version of {@link #putIssueList(CaseIssueUpload, List)}: the cases are read from the iterator and
+	 * written to the staging table {@link #UPLOAD_CHUNK_SIZE} at a time, and then reconciled against the existing
+	 * cases and issues with a handful of set-based statements, so neither the input nor the current issue list
+	 * is ever held in memory.
+	 * <p>
+	 * Each chunk is staged in its own short transaction, together with the progress of the upload, so that progress
+	 * can be followed without holding a second connection; the staged cases are then applied in a single
+	 * transaction, and are removed again if the upload does not get that far.
+	 * @throws IllegalArgumentException if the same receipt number appears more than once in the input.
+	 */
+	@Transactional(propagation=Propagation.NOT_SUPPORTED)
+	@RequireUploadPermission
+	public CaseIssueUpload putIssueStream(CaseIssueUpload translated, Iterator<? extends CaseRequest> newIssueCases) {
+		CaseIssueUpload upload = translated.getInternalId() != null ? translated
+			: _transactionTemplate.execute(status -> _uploadRepo.save(translated)); // the staged cases need it to point to
+		Long uploadId = upload.getInternalId();
+		boolean applied = false;
+		try {
+			CaseIssueUpload finished = stageAndReconcile(upload, newIssueCases);
+			applied = true;
+			return finished;
+		} finally {
+			if (!applied) {
+				_transactionTemplate.execute(status -> _uploadRepo.clearStagedCases(uploadId));
 			}
 		}
+	}
 
-		// terminate all the remaining issues in the current collection
-		// this could also be done directly in the database, which might not be a bad idea?
-		currentMap.values().forEach(i -> i.setIssueClosed(eventDate));
-		LOG.info("Closing {} issues", currentMap.size());
-		translated.setClosedIssueCount(currentMap.size());
-
-		// get or create cases
-		HashSet<String> newReceipts = requestedNewIssues.stream().map(CaseRequest::getReceiptNumber)
-				.collect(Collectors.toCollection(HashSet::new));
-		Map<String, TroubleCase> existingCases = _caseRepo.getAllByCaseManagementSystemAndReceiptNumberIn(
-				translated.getCaseManagementSystem(), newReceipts).stream().collect(Collectors.toMap(TroubleCase::getReceiptNumber, i->i));
-		newReceipts.removeAll(existingCases.keySet());
-
-		List<TroubleCase> unsavedCases = new ArrayList<>();
-		// create or update cases
-		for (CaseRequest candidate : requestedNewIssues) {
-			String receiptNumber = candidate.getReceiptNumber();
-			if (newReceipts.contains(receiptNumber)) {
-				unsavedCases.add(new TroubleCase(translated.getCaseManagementSystem(),
-						receiptNumber, translated.getCaseType(),
-						candidate.getCaseCreation(), candidate.getExtraData()));
-			} else {
-				TroubleCase found = existingCases.get(receiptNumber);
-				if (found.getCaseType() != translated.getCaseType()) {
-					LOG.error("Illegal update of case type requested for {}", receiptNumber);
-				}
-				found.getExtraData().putAll(candidate.getExtraData());
+	private CaseIssueUpload stageAndReconcile(CaseIssueUpload upload, Iterator<? extends CaseRequest> newIssueCases) {
+		long started = System.nanoTime();
+		// staging is interleaved with reading the input, so its time has to be added up
+		long stageNanos = 0;
+		long recordCount = 0;
+		List<CaseRequest> chunk = new ArrayList<>(UPLOAD_CHUNK_SIZE);
+		while (newIssueCases.hasNext()) {
+			chunk.add(newIssueCases.next());
+			if (chunk.size() == UPLOAD_CHUNK_SIZE) {
+				long stageStart = System.nanoTime();
+				recordCount = commitChunk(upload.getInternalId(), chunk, recordCount);
+				stageNanos += System.nanoTime() - stageStart;
+				chunk.clear();
 			}
 		}
-		// slightly dumb bit of DRY factory work
-		Function<? super TroubleCase, ? extends CaseIssue> createIssue = tc -> new CaseIssue(tc, issueTypeTag, eventDate);
-
-		// well this is ugly
-		Iterable<TroubleCase> newlySavedCases = _caseRepo.saveAll(unsavedCases);
-		List<CaseIssue> newIssues = new ArrayList<>();
-		newlySavedCases.forEach(tc -> newIssues.add(createIssue.apply(tc)));
-
-		// aaaand save everything!
-		_issueRepo.saveAll(
-			Stream.concat(
-				existingCases.values().stream().map(createIssue),
-				newIssues.stream()
-			).collect(Collectors.toSet())
-		);
-		translated.setNewIssueCount(existingCases.size() + newIssues.size());
-		translated.setUploadStatus(UploadStatus.SUCCESSFUL);
-		_uploadRepo.save(translated);
-		return translated;
+		if (!chunk.isEmpty()) {
+			long stageStart = System.nanoTime();
+			recordCount = commitChunk(upload.getInternalId(), chunk, recordCount);
+			stageNanos += System.nanoTime() - stageStart;
+		}
+		LOG.info("Staged {} uploaded records", recordCount);
+		_uploadMetrics.recordPhase(upload, UploadMetricsService.PHASE_STAGE, stageNanos);
+		_uploadMetrics.recordRows(upload, "records", recordCount);
+		upload.setUploadedRecordCount(recordCount);
+		return _transactionTemplate.execute(status -> {
+			reconcileStagedCases(upload);
+			upload.setUploadStatus(UploadStatus.SUCCESSFUL);
+			_uploadMetrics.recordSuccess(upload, System.nanoTime() - started);
+			// sent on to listeners once this transaction commits (see CaseGroupEventService)
+			_eventPublisher.publishEvent(CaseGroupChange.uploadCompleted(upload.getCaseManagementSystem().getInternalId(),
+				upload.getCaseType().getInternalId(), upload.getIssueType(), upload.getEffectiveDate()));
+			return _uploadRepo.save(upload);
+		});
+	}
+
+	/**
+	 * Stage one chunk of the upload and record the new total in the same transaction.
+	 * @return the number of records staged so far.
+	 */
+	private long commitChunk(Long uploadId, List<CaseRequest> chunk, long previousCount) {
+		return _transactionTemplate.execute(status -> {
+			long recordCount = previousCount + stageChunk(uploadId, chunk);
+			_uploadStatusService.recordProgress(uploadId, recordCount, null, null);
+			return recordCount;
+		});
+	}
+
+	private int stageChunk(Long uploadId, List<CaseRequest> chunk) {
+		Set<String> receipts = new HashSet<>();
+		List<Map<String, Object>> stagedCases = toStagedCases(chunk, receipts);
+		List<String> previouslyStaged = _uploadRepo.findStagedReceipts(uploadId, receipts);
+		if (!previouslyStaged.isEmpty()) {
+			throw duplicateReceipt(previouslyStaged.get(0));
+		}
+		try {
+			return _uploadRepo.stageCases(uploadId, _jsonMapper.writeValueAsString(stagedCases));
+		} catch (JsonProcessingException e) {
+			throw new IllegalArgumentException("Uploaded case data could not be converted to JSON", e);
+		}
+	}
+
+	/**
+	 * Convert a chunk of uploaded cases to the rows that are sent (as JSON) to the staging table, adding their
+	 * receipt numbers to receipts.
+	 * @throws IllegalArgumentException if the same receipt number appears more than once in the chunk.
+	 */
+	static List<Map<String, Object>> toStagedCases(List<CaseRequest> chunk, Set<String> receipts) {
+		List<Map<String, Object>> stagedCases = new ArrayList<>(chunk.size());
+		for (CaseRequest request : chunk) {
+			if (!receipts.add(request.getReceiptNumber())) {
+				throw duplicateReceipt(request.getReceiptNumber());
+			}
+			Map<String, Object> stagedCase = new HashMap<>();
+			stagedCase.put("receipt_number", request.getReceiptNumber());
+			stagedCase.put("case_creation", request.getCaseCreation().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+			stagedCase.put("extra_data", request.getExtraData());
+			stagedCases.add(stagedCase);
+		}
+		return stagedCases;
+	}
+
+	private static IllegalArgumentException duplicateReceipt(String receiptNumber) {
+		return new IllegalArgumentException(
+			String.format("Multiple records in input with same receipt number (%s)", receiptNumber));
+	}
+
+	/**
+	 * Apply the staged cases for this upload, holding an advisory lock on its issue type until the transaction ends:
+	 * <ul>
+	 * <li>Issues that are open for cases that were not staged are closed;</li>
+	 * <li>Staged cases that already exist have their additional data updated;</li>
+	 * <li>Staged cases that do not exist are created;</li>
+	 * <li>Staged cases with no open issue of the correct type get a new one.</li>
+	 * </ul>
+	 */
+	private void reconcileStagedCases(CaseIssueUpload upload) {
+		Long uploadId = upload.getInternalId();
+		Long systemId = upload.getCaseManagementSystem().getInternalId();
+		Long caseTypeId = upload.getCaseType().getInternalId();
+		String issueType = upload.getIssueType();
+		ZonedDateTime eventDate = upload.getEffectiveDate();
+		// native statements skip JPA auditing, so we have to fill in the audit columns ourselves
+		String user = _auditor.getCurrentAuditor().orElse(null);
+		Date now = new Date();
+
+		_uploadMetrics.time(upload, UploadMetricsService.PHASE_LOCK,
+			() -> _uploadRepo.lockIssueType(systemId, caseTypeId, issueType));
+		int closedIssues = _uploadMetrics.time(upload, UploadMetricsService.PHASE_CLOSE,
+			() -> _uploadRepo.closeUnstagedIssues(uploadId, systemId, caseTypeId, issueType, eventDate, now, user));
+		LOG.info("Closed {} issues", closedIssues);
+		long conflicts = _uploadMetrics.time(upload, UploadMetricsService.PHASE_LOOKUP,
+			() -> _uploadRepo.countCaseTypeConflicts(uploadId, systemId, caseTypeId));
+		if (conflicts > 0) {
+			LOG.error("Illegal update of case type requested for {} cases", conflicts);
+		}
+		int updatedCases = _uploadMetrics.time(upload, UploadMetricsService.PHASE_UPDATE,
+			() -> _uploadRepo.updateStagedCaseData(uploadId, systemId, now, user));
+		int newCases = _uploadMetrics.time(upload, UploadMetricsService.PHASE_INSERT,
+			() -> _uploadRepo.insertStagedCases(uploadId, systemId, caseTypeId, now, user));
+		int newIssues = _uploadMetrics.time(upload, UploadMetricsService.PHASE_OPEN,
+			() -> _uploadRepo.openStagedIssues(uploadId, systemId, issueType, eventDate, now, user));
+		LOG.info("Updated {} cases, created {} cases and opened {} issues", updatedCases, newCases, newIssues);
+		_uploadRepo.clearStagedCases(uploadId);
+		// uploads add many rows to the case count and change ledgers, so this is a good time to fold them together
+		_bulkRepo.compactCaseGroupCounts(systemId, caseTypeId);
+		_bulkRepo.compactCaseGroupVersions(systemId, caseTypeId);
+		_uploadMetrics.recordRows(upload, "closed-issues", closedIssues);
+		_uploadMetrics.recordRows(upload, "new-issues", newIssues);
+		_uploadMetrics.recordRows(upload, "updated-cases", updatedCases);
+		_uploadMetrics.recordRows(upload, "new-cases", newCases);
+
+		upload.setClosedIssueCount(closedIssues);
+		upload.setNewIssueCount(newIssues);
 	}
 
 	public DataFormatSpec getUploadFormat(String uploadFormatId) {
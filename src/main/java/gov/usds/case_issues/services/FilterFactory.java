@@ -14,7 +14,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
-import gov.usds.case_issues.db.JsonOperatorContributor;
+import gov.usds.case_issues.db.PostgresFunctionContributor;
 import gov.usds.case_issues.db.model.CaseAttachment;
 import gov.usds.case_issues.db.model.CaseAttachmentAssociation;
 import gov.usds.case_issues.model.AttachmentRequest;
@@ -47,7 +47,7 @@ public class FilterFactory {
 	public static CaseFilter caseExtraData(Map<String, Object> fieldFilter) {
 		String jsonQuery = new JSONObject(fieldFilter).toString();
 		return (root, query, cb) -> cb.isTrue(
-			cb.function(JsonOperatorContributor.JSON_CONTAINS,
+			cb.function(PostgresFunctionContributor.JSON_CONTAINS,
 				Boolean.class,
 				root.get(MetaModel.CASE_DETAIL_FIELDS),
 				cb.literal(jsonQuery)
@@ -1,15 +1,26 @@
 package gov.usds.case_issues.services;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.time.ZonedDateTime;
+import java.util.Iterator;
 import java.util.List;
 
+import javax.annotation.PostConstruct;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.security.task.DelegatingSecurityContextAsyncTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import gov.usds.case_issues.authorization.RequireUploadPermission;
+import gov.usds.case_issues.config.ExecutorConfig;
 import gov.usds.case_issues.db.model.CaseIssueUpload;
+import gov.usds.case_issues.db.model.UploadStatus;
 import gov.usds.case_issues.model.CaseRequest;
 import gov.usds.case_issues.services.model.CaseGroupInfo;
 
@@ -22,14 +33,38 @@ public class IssueUploadService {
 	private UploadStatusService _statusService;
 	@Autowired
 	private CaseListService _listService;
+	@Autowired
+	@Qualifier(ExecutorConfig.UPLOAD_EXECUTOR)
+	private AsyncTaskExecutor _backgroundExecutor;
+
+	private AsyncTaskExecutor _uploadExecutor;
+
+	/**
+	 * The input for an upload that is processed in the background: it is opened on the worker thread, and
+	 * closed when the upload is finished (successfully or otherwise) or could not be started.
+	 */
+	public interface DeferredUpload extends Closeable {
+
+		Iterator<? extends CaseRequest> open() throws IOException;
+
+		@Override
+		default void close() throws IOException {
+			// nothing to release by default
+		}
+	}
+
+	@PostConstruct
+	public void initExecutor() {
+		// uploads need the requesting user, both for permission checks and for the audit columns
+		_uploadExecutor = new DelegatingSecurityContextAsyncTaskExecutor(_backgroundExecutor);
+	}
 
 	@SuppressWarnings("checkstyle:IllegalCatch")
 	@RequireUploadPermission
 	public CaseIssueUpload putIssueList(CaseGroupInfo pathInfo, String issueTypeTag, List<CaseRequest> newIssueCases,
 			ZonedDateTime eventDate) {
 		CaseIssueUpload uploadStatus = _statusService.commenceUpload(
-				pathInfo.getCaseManagementSystem(),
-				pathInfo.getCaseType(),
+				pathInfo,
 				issueTypeTag,
 				eventDate,
 				newIssueCases.size());
@@ -46,4 +81,91 @@ public class IssueUploadService {
 		}
 		return uploadStatus;
 	}
+
+	/**
+	 * Streaming version of {@link #putIssueList}: the record count is not known until the input is exhausted,
+	 * and bad input may not be discovered until part of the upload has been processed, in which case the
+	 * upload is marked as failed and the exception is passed along to the caller.
+	 */
+	@SuppressWarnings("checkstyle:IllegalCatch")
+	@RequireUploadPermission
+	public CaseIssueUpload putIssueStream(CaseGroupInfo pathInfo, String issueTypeTag, Iterator<? extends CaseRequest> newIssueCases,
+			ZonedDateTime eventDate) {
+		CaseIssueUpload uploadStatus = _statusService.commenceUpload(
+				pathInfo,
+				issueTypeTag,
+				eventDate,
+				0);
+		try {
+			LOG.info("Processing streamed upload for {}/{}/{}",
+					uploadStatus.getCaseManagementSystem().getExternalId(),
+					uploadStatus.getCaseType().getExternalId(),
+					uploadStatus.getIssueType());
+			uploadStatus = _listService.putIssueStream(uploadStatus, newIssueCases);
+		} catch (IllegalArgumentException e) {
+			LOG.warn("Issue upload {} rejected: {}", uploadStatus.getInternalId(), e.getMessage());
+			_statusService.failUpload(uploadStatus);
+			throw e;
+		} catch (Exception e) {
+			LOG.error("Issue upload {} failed!", uploadStatus.getInternalId(), e);
+			uploadStatus = _statusService.failUpload(uploadStatus);
+		}
+		return uploadStatus;
+	}
+
+	/**
+	 * Background version of {@link #putIssueStream}: the upload record is created right away (so business rule
+	 * violations are still reported to the caller), and the input is processed on a worker thread. Progress can
+	 * be followed through {@link UploadStatusService#getUpload}.
+	 * @return the upload record, with status {@link UploadStatus#STARTED}.
+	 * @throws TaskRejectedException if there are already too many uploads waiting to be processed.
+	 */
+	@RequireUploadPermission
+	public CaseIssueUpload submitIssueStream(CaseGroupInfo pathInfo, String issueTypeTag, DeferredUpload input,
+			ZonedDateTime eventDate) {
+		boolean submitted = false;
+		try {
+			CaseIssueUpload uploadStatus = _statusService.commenceUpload(
+					pathInfo,
+					issueTypeTag,
+					eventDate,
+					0);
+			try {
+				_uploadExecutor.execute(() -> processDeferredUpload(uploadStatus, input));
+			} catch (TaskRejectedException e) {
+				LOG.warn("Issue upload {} rejected: too many uploads in progress", uploadStatus.getInternalId());
+				_statusService.failUpload(uploadStatus);
+				throw e;
+			}
+			submitted = true;
+			return uploadStatus;
+		} finally {
+			if (!submitted) {
+				closeQuietly(input);
+			}
+		}
+	}
+
+	@SuppressWarnings("checkstyle:IllegalCatch")
+	private void processDeferredUpload(CaseIssueUpload uploadStatus, DeferredUpload input) {
+		try (DeferredUpload source = input) {
+			LOG.info("Processing background upload {} for {}/{}/{}",
+					uploadStatus.getInternalId(),
+					uploadStatus.getCaseManagementSystem().getExternalId(),
+					uploadStatus.getCaseType().getExternalId(),
+					uploadStatus.getIssueType());
+			_listService.putIssueStream(uploadStatus, source.open());
+		} catch (Exception e) {
+			LOG.error("Issue upload {} failed!", uploadStatus.getInternalId(), e);
+			_statusService.failUpload(uploadStatus);
+		}
+	}
+
+	private static void closeQuietly(DeferredUpload input) {
+		try {
+			input.close();
+		} catch (IOException e) {
+			LOG.warn("Could not release upload input", e);
+		}
+	}
 }
@@ -1,83 +1,347 @@
 package gov.usds.case_issues.services;
 
 import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalAdjuster;
 import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.annotation.PostConstruct;
+
+import org.hibernate.validator.constraints.Range;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.validation.annotation.Validated;
 
+import gov.usds.case_issues.config.ExecutorConfig;
 import gov.usds.case_issues.db.repositories.BulkCaseRepository;
+import gov.usds.case_issues.services.model.CaseGroupChange;
 import gov.usds.case_issues.services.model.CaseGroupInfo;
 import gov.usds.case_issues.validators.TagFragment;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 
+/**
+ * Weekly resolution KPIs for a case group. The totals for each week are saved in a rollup table, which is kept
+ * up to date by the uploads and snoozes that change it: once one of those commits, the weeks of its case group
+ * that can still change, and any that the change reached back into, are recomputed on a small dedicated pool. Reading KPIs never writes anything. Weeks that
+ * have never been saved (because nothing has changed in their case group since the rollup was started) are
+ * computed when they are asked for, split into chunks that run concurrently on the same pool, so that the
+ * request waits for the slowest chunk rather than for all of them.
+ */
 @Service
 @Validated
 public class KPIService {
-	private static final int WEEKS = 10;
+
+	private static final Logger LOG = LoggerFactory.getLogger(KPIService.class);
+	/** The number of weeks of data returned if the caller does not ask for a specific number. */
+	public static final int DEFAULT_WEEKS = 10;
+	/** The largest number of weeks of data that can be requested at once. */
+	public static final int MAX_WEEKS = 104;
 	private static TemporalAdjuster START_OF_WEEK = TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY);
 
+	private static final int WEEK_INDEX_COLUMN = 0;
+	private static final int RESOLVED_COLUMN = 1;
+	private static final int CLOSED_ISSUE_COLUMN = 2;
+	private static final int DAYS_TO_RESOLUTION_COLUMN = 3;
+	private static final int DAYS_WORKED_COLUMN = 4;
+	private static final int FROZEN_COLUMN = 5;
+	private static final long MILLIS_PER_SECOND = 1000;
+
 	@Autowired
 	private BulkCaseRepository _bulkRepo;
 	@Autowired
 	private CaseListService _caseListService;
+	@Autowired
+	private MeterRegistry _meterRegistry;
+	@Autowired
+	private TransactionTemplate _transactionTemplate;
+	@Autowired
+	@Qualifier(ExecutorConfig.KPI_EXECUTOR)
+	private AsyncTaskExecutor _executor;
+	@Value("${kpi.rollup.freeze-after:P7D}")
+	private Duration _freezeAfter;
+	@Value("${kpi.rollup.time-zone:UTC}")
+	private ZoneId _timeZone;
+	@Value("${kpi.executor.weeks-per-task:13}")
+	private int _weeksPerTask;
+	@Value("${kpi.executor.timeout:PT10S}")
+	private Duration _timeout;
+	@Value("${kpi.executor.partial-results:true}")
+	private boolean _partialResults;
+
+	/**
+	 * Case groups with a refresh waiting to start, so that a burst of changes leads to one refresh, along with the
+	 * earliest change that refresh has to reach back to.
+	 */
+	private final ConcurrentMap<String, ZonedDateTime> _pendingRefreshes = new ConcurrentHashMap<>();
+	private TransactionTemplate _refreshTransaction;
+	private Timer _readTimer;
+	private Timer _computeTimer;
+	private Timer _refreshTimer;
+	private Counter _partialResultCounter;
+
+	@PostConstruct
+	public void init() {
+		_readTimer = Timer.builder("kpi.rollup.read")
+			.description("Time spent reading saved weekly KPI totals")
+			.register(_meterRegistry);
+		_computeTimer = Timer.builder("kpi.totals.compute")
+			.description("Time spent computing one chunk of unsaved weekly KPI totals for a request")
+			.register(_meterRegistry);
+		_refreshTimer = Timer.builder("kpi.rollup.refresh")
+			.description("Time spent recomputing and saving the weekly KPI totals of a changed case group")
+			.register(_meterRegistry);
+		_partialResultCounter = Counter.builder("kpi.partial.results")
+			.description("KPI requests answered without waiting for every unsaved week to be computed")
+			.register(_meterRegistry);
+		// a refresh that cannot be handed off runs in the after-commit phase of the change that caused it,
+		// where it needs a transaction of its own
+		_refreshTransaction = new TransactionTemplate(_transactionTemplate.getTransactionManager());
+		_refreshTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+	}
 
 	public Map<String, Object> getKPIData(
 		@TagFragment String caseManagementSystemTag,
 		@TagFragment String caseTypeTag,
 		ZonedDateTime start
+	) {
+		return getKPIData(caseManagementSystemTag, caseTypeTag, start, DEFAULT_WEEKS);
+	}
+
+	/**
+	 * Fetch the KPIs for the weeks before the one containing start, most recent first. A value is null if its
+	 * week could not be computed in time (only possible if partial results are turned on).
+	 * @throws TaskRejectedException if the KPI pool is too busy to compute unsaved weeks, or if that takes longer
+	 *     than the configured timeout and partial results are turned off.
+	 */
+	public Map<String, Object> getKPIData(
+		@TagFragment String caseManagementSystemTag,
+		@TagFragment String caseTypeTag,
+		ZonedDateTime start,
+		@Range(min=1, max=MAX_WEEKS) int weeks
 	) {
 		CaseGroupInfo translated = _caseListService.translatePath(
 			caseManagementSystemTag,
 			caseTypeTag
 		);
+		ZonedDateTime startOfWeek = startOfWeek(start);
+		Long systemId = translated.getCaseManagementSystemId();
+		Long typeId = translated.getCaseTypeId();
+		List<Object[]> weeklyData = new ArrayList<>(
+			_readTimer.record(() -> _bulkRepo.getKPIRollup(systemId, typeId, startOfWeek, weeks)));
+		int firstMissing = -1;
+		int lastMissing = -1;
+		for (int i = 0; i < weeklyData.size(); i++) {
+			if (weeklyData.get(i)[RESOLVED_COLUMN] == null) {
+				if (firstMissing < 0) {
+					firstMissing = i;
+				}
+				lastMissing = i;
+			}
+		}
+		if (firstMissing >= 0) {
+			for (Object[] computed : computeTotals(systemId, typeId, startOfWeek, firstMissing, lastMissing)) {
+				weeklyData.set(((Number) computed[WEEK_INDEX_COLUMN]).intValue(), computed);
+			}
+		}
 		HashMap<String, Object> kpis = new HashMap<String, Object>();
-		Long caseManagementSystemId = translated.getCaseManagementSystemId();
-		Long caseTypeId = translated.getCaseTypeId();
-		ZonedDateTime startOfWeek = start.with(START_OF_WEEK);
-		kpis.put("ResolvedTickets", getResolvedTickets(caseManagementSystemId, caseTypeId, startOfWeek));
-		kpis.put("DaysToResolution", getAverageDaysToResolution(caseManagementSystemId, caseTypeId, startOfWeek));
-		kpis.put("DaysWorked", getAverageDaysWorked(caseManagementSystemId, caseTypeId, startOfWeek));
+		kpis.put("ResolvedTickets", column(weeklyData, RESOLVED_COLUMN));
+		kpis.put("DaysToResolution", average(weeklyData, DAYS_TO_RESOLUTION_COLUMN));
+		kpis.put("DaysWorked", average(weeklyData, DAYS_WORKED_COLUMN));
 		return kpis;
 	}
 
-	private List<Integer> getResolvedTickets(Long caseManagementSystemId, Long caseTypeId, ZonedDateTime rangeStart) {
-		ArrayList<Integer> ticketsResolved = new ArrayList<Integer>();
-		for (int i = 0; i < WEEKS; i++) {
-			ZonedDateTime start = rangeStart.minusWeeks(i +1);
-			ZonedDateTime end = rangeStart.minusWeeks(i);
-			int resolved = _bulkRepo.getResolvedCaseCount(caseManagementSystemId, caseTypeId, start, end);
-			ticketsResolved.add(i, resolved);
+	/**
+	 * Compute (without saving) the totals for weeks firstWeek through lastWeek, in chunks of up to weeks-per-task
+	 * weeks at a time. If that takes longer than the configured timeout, then either give up (if partial results
+	 * are turned off) or go with the weeks computed so far. Either way, the unfinished chunks are stopped rather than
+	 * left to run: chunks that have not started are cancelled, running ones are interrupted, and each chunk's query
+	 * has a timeout of whatever was left of the request's time when it started (since interrupting a thread does
+	 * not stop a query that is already running).
+	 */
+	private List<Object[]> computeTotals(Long systemId, Long typeId, ZonedDateTime startOfWeek, int firstWeek,
+			int lastWeek) {
+		long deadline = System.nanoTime() + _timeout.toNanos();
+		List<Future<List<Object[]>>> chunks = new ArrayList<>();
+		try {
+			for (int chunkStart = firstWeek; chunkStart <= lastWeek; chunkStart += _weeksPerTask) {
+				int chunkEnd = Math.min(chunkStart + _weeksPerTask - 1, lastWeek);
+				int from = chunkStart;
+				chunks.add(_executor.submit(() -> _computeTimer.record(() ->
+					computeChunk(systemId, typeId, startOfWeek, from, chunkEnd, deadline))));
+			}
+			for (Future<List<Object[]>> chunk : chunks) {
+				chunk.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			}
+		} catch (TaskRejectedException e) {
+			chunks.forEach(chunk -> chunk.cancel(true));
+			throw e;
+		} catch (TimeoutException e) {
+			chunks.forEach(chunk -> chunk.cancel(true));
+			if (!_partialResults) {
+				throw new TaskRejectedException("KPI computation did not finish in time", e);
+			}
+			LOG.warn("KPI computation for weeks {}-{} did not finish within {}: returning partial results",
+				firstWeek, lastWeek, _timeout);
+			_partialResultCounter.increment();
+		} catch (ExecutionException e) {
+			chunks.forEach(chunk -> chunk.cancel(true));
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("KPI computation failed", e.getCause());
+		} catch (InterruptedException e) {
+			chunks.forEach(chunk -> chunk.cancel(true));
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted waiting for KPI computation", e);
 		}
-		return ticketsResolved;
+		List<Object[]> computed = new ArrayList<>();
+		for (Future<List<Object[]>> chunk : chunks) {
+			if (chunk.isDone() && !chunk.isCancelled()) {
+				try {
+					computed.addAll(chunk.get());
+				} catch (ExecutionException | InterruptedException e) {
+					// only possible for a chunk that failed after we stopped waiting: leave its weeks out
+					LOG.debug("KPI computation chunk failed after the timeout: {}", e.getMessage());
+				}
+			}
+		}
+		return computed;
+	}
+
+	/**
+	 * Compute one chunk of weeks, in a transaction that times out (cancelling its query) at the deadline of the
+	 * request that asked for it, rounded up to the second.
+	 */
+	private List<Object[]> computeChunk(Long systemId, Long typeId, ZonedDateTime startOfWeek, int firstWeek,
+			int lastWeek, long deadline) {
+		TransactionTemplate chunkTransaction = new TransactionTemplate(_transactionTemplate.getTransactionManager());
+		chunkTransaction.setReadOnly(true);
+		long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+		chunkTransaction.setTimeout((int) Math.max(1, (remainingMillis + MILLIS_PER_SECOND - 1) / MILLIS_PER_SECOND));
+		return chunkTransaction.execute(status -> _bulkRepo.getKPITotals(systemId, typeId, startOfWeek, firstWeek, lastWeek));
 	}
 
-	private List<Integer> getAverageDaysToResolution(Long caseManagementSystemId, Long caseTypeId, ZonedDateTime rangeStart) {
-		ArrayList<Integer> daysToResolution = new ArrayList<Integer>();
-		for (int i = 0; i < WEEKS; i++) {
-			ZonedDateTime start = rangeStart.minusWeeks(i +1);
-			ZonedDateTime end = rangeStart.minusWeeks(i);
-			int days = _bulkRepo.getAverageDaysToResolution(caseManagementSystemId, caseTypeId, start, end);
-			daysToResolution.add(i, days);
+	/**
+	 * Once a change to a case group has committed, bring its saved totals up to date in the background.
+	 * If the KPI pool is too busy to take the work, it is done here instead, rather than leaving the rollup stale.
+	 */
+	@TransactionalEventListener(fallbackExecution=true)
+	public void caseGroupChanged(CaseGroupChange change) {
+		Long systemId = change.getCaseManagementSystemId();
+		Long typeId = change.getCaseTypeId();
+		String key = systemId + "/" + typeId;
+		ZonedDateTime earliestChange = change.getEarliestChange();
+		AtomicBoolean alreadyPending = new AtomicBoolean();
+		_pendingRefreshes.merge(key, earliestChange, (pending, latest) -> {
+			alreadyPending.set(true);
+			return latest.isBefore(pending) ? latest : pending;
+		});
+		if (alreadyPending.get()) {
+			return; // the refresh that is already waiting will see this change too, and reach back as far as it needs
+		}
+		Runnable refresh = () -> {
+			ZonedDateTime changedSince = _pendingRefreshes.remove(key);
+			_refreshTransaction.execute(status -> {
+				refreshRollup(systemId, typeId, changedSince);
+				return null;
+			});
+		};
+		try {
+			_executor.execute(refresh);
+		} catch (TaskRejectedException e) {
+			LOG.warn("KPI pool is busy: refreshing totals for case group {} in the calling thread", key);
+			refresh.run();
 		}
-		return daysToResolution;
 	}
 
-	private List<Integer> getAverageDaysWorked(Long caseManagementSystemId, Long caseTypeId, ZonedDateTime rangeStart) {
-		ArrayList<Integer> daysToResolution = new ArrayList<Integer>();
-		for (int i = 0; i < WEEKS; i++) {
-			ZonedDateTime start = rangeStart.minusWeeks(i +1);
-			ZonedDateTime end = rangeStart.minusWeeks(i);
-			int days = _bulkRepo.getAverageDaysWorked(caseManagementSystemId, caseTypeId, start, end);
-			daysToResolution.add(i, days);
+	/**
+	 * Recompute and save the totals for every week of a case group that has not been frozen, including the week
+	 * in progress, along with any of the last {@link #MAX_WEEKS} weeks that have not been saved yet.
+	 */
+	public void refreshRollup(Long systemId, Long typeId) {
+		refreshRollup(systemId, typeId, ZonedDateTime.now());
+	}
+
+	/**
+	 * Recompute and save the totals for a case group as {@link #refreshRollup(Long, Long)} does, and also for every
+	 * week since the one containing changedSince, frozen or not. Saved weeks that the change reached back into but
+	 * that are older than the last {@link #MAX_WEEKS} are thrown out instead, to be computed when they are asked for.
+	 */
+	public void refreshRollup(Long systemId, Long typeId, ZonedDateTime changedSince) {
+		ZonedDateTime thisWeek = startOfWeek(ZonedDateTime.now());
+		List<Object[]> saved = _bulkRepo.getKPIRollup(systemId, typeId, thisWeek, MAX_WEEKS);
+		// counting back from the start of next week, so that week 0 is the one in progress (which is never frozen)
+		ZonedDateTime rangeStart = thisWeek.plusWeeks(1);
+		long changedWeek = ChronoUnit.WEEKS.between(startOfWeek(changedSince), thisWeek);
+		int lastStale = (int) Math.max(0, Math.min(changedWeek, MAX_WEEKS));
+		for (int i = 0; i < saved.size(); i++) {
+			Object[] row = saved.get(i);
+			if (row[FROZEN_COLUMN] == null || !((Boolean) row[FROZEN_COLUMN])) {
+				lastStale = Math.max(lastStale, i + 1);
+			}
+		}
+		long freezeAfterSeconds = _freezeAfter.getSeconds();
+		for (int chunkStart = 0; chunkStart <= lastStale; chunkStart += _weeksPerTask) {
+			int chunkEnd = Math.min(chunkStart + _weeksPerTask - 1, lastStale);
+			int from = chunkStart;
+			_refreshTimer.record(() -> _bulkRepo.refreshKPIRollup(systemId, typeId, rangeStart, from, chunkEnd,
+				freezeAfterSeconds, changedSince));
+		}
+		if (changedWeek > lastStale) {
+			_bulkRepo.clearKPIRollup(systemId, typeId, rangeStart.minusWeeks(lastStale + 1), changedSince);
 		}
-		return daysToResolution;
 	}
-}
 
+	/** Weeks start at midnight on Monday in the configured time zone, so that a week is always saved under one key. */
+	private ZonedDateTime startOfWeek(ZonedDateTime instant) {
+		return instant.withZoneSameInstant(_timeZone).with(START_OF_WEEK).truncatedTo(ChronoUnit.DAYS);
+	}
+
+	/** Weeks that could not be computed in time (which can only happen with partial results) are reported as null. */
+	private static List<Integer> column(List<Object[]> rows, int columnIndex) {
+		List<Integer> values = new ArrayList<>(rows.size());
+		for (Object[] row : rows) {
+			values.add(row[columnIndex] == null ? null : ((Number) row[columnIndex]).intValue());
+		}
+		return values;
+	}
+
+	/** Average a column of day totals over the closed issues counted for each week, truncated to whole days. */
+	private static List<Integer> average(List<Object[]> rows, int columnIndex) {
+		List<Integer> values = new ArrayList<>(rows.size());
+		for (Object[] row : rows) {
+			if (row[CLOSED_ISSUE_COLUMN] == null) {
+				values.add(null);
+				continue;
+			}
+			long count = ((Number) row[CLOSED_ISSUE_COLUMN]).longValue();
+			values.add(count == 0 ? 0 : (int) (((Number) row[columnIndex]).doubleValue() / count));
+		}
+		return values;
+	}
+}
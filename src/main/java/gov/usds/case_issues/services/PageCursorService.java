@@ -0,0 +1,174 @@
+package gov.usds.case_issues.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.stereotype.Service;
+
+import gov.usds.case_issues.services.model.CaseGroupInfo;
+import gov.usds.case_issues.services.model.CasePageKey;
+
+/**
+ * Encodes and decodes the page references handed out with each page of the hitlist. A page reference is
+ * a signed, URL-safe encoding of the sort-key values of a case (along with the case group it was found in),
+ * so that fetching the next page does not require looking that case up again.
+ */
+@Service
+public class PageCursorService {
+
+	private static final Logger LOG = LoggerFactory.getLogger(PageCursorService.class);
+
+	/** Distinguishes a page cursor from a plain receipt number, which is still accepted as a page reference. */
+	public static final String CURSOR_PREFIX = "pc-";
+
+	private static final String MAC_ALGORITHM = "HmacSHA256";
+	private static final int MAC_LENGTH = 32;
+	private static final byte CURSOR_VERSION = 1;
+	/** The profiles in which a missing signing key is replaced by a random one, rather than stopping startup. */
+	private static final Profiles UNSIGNED_PROFILES = Profiles.of("dev", "autotest");
+
+	@Value("${page-cursor.signing-key:}")
+	private String _signingKey;
+	@Autowired
+	private Environment _environment;
+
+	/** Mac instances are not thread-safe, but are expensive enough to look up that we keep one per thread. */
+	private ThreadLocal<Mac> _mac;
+
+	/**
+	 * @throws IllegalStateException if no signing key is configured, outside of development and testing, or if the
+	 *     configured key is shorter than {@value #MAC_LENGTH} bytes.
+	 */
+	@PostConstruct
+	public void initializeKey() {
+		byte[] keyBytes;
+		if (_signingKey == null || _signingKey.isEmpty()) {
+			if (!_environment.acceptsProfiles(UNSIGNED_PROFILES)) {
+				throw new IllegalStateException("page-cursor.signing-key (PAGE_CURSOR_SIGNING_KEY) must be set");
+			}
+			LOG.warn("No page cursor signing key configured: page references will not survive a restart"
+				+ " or be usable across multiple instances.");
+			keyBytes = new byte[MAC_LENGTH];
+			new SecureRandom().nextBytes(keyBytes);
+		} else {
+			keyBytes = _signingKey.getBytes(StandardCharsets.UTF_8);
+			if (keyBytes.length < MAC_LENGTH) {
+				throw new IllegalStateException("page-cursor.signing-key (PAGE_CURSOR_SIGNING_KEY) must be at least "
+					+ MAC_LENGTH + " bytes long");
+			}
+		}
+		SecretKeySpec key = new SecretKeySpec(keyBytes, MAC_ALGORITHM);
+		_mac = ThreadLocal.withInitial(() -> createMac(key));
+	}
+
+	public static boolean isCursor(String pageReference) {
+		return pageReference != null && pageReference.startsWith(CURSOR_PREFIX);
+	}
+
+	public String encode(CaseGroupInfo group, CasePageKey pageKey) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(CURSOR_VERSION);
+			out.writeLong(group.getCaseManagementSystemId());
+			out.writeLong(group.getCaseTypeId());
+			writeTimestamp(out, pageKey.getCaseCreation());
+			out.writeUTF(pageKey.getReceiptNumber());
+			out.writeBoolean(pageKey.getSnoozeEnd() != null);
+			if (pageKey.getSnoozeEnd() != null) {
+				writeTimestamp(out, pageKey.getSnoozeEnd());
+			}
+			out.write(sign(bytes.toByteArray()));
+		} catch (IOException e) {
+			throw new IllegalStateException("Writing to an in-memory buffer failed", e);
+		}
+		return CURSOR_PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+	}
+
+	/**
+	 * Decode a page cursor created by {@link #encode}.
+	 * @return the page key, or empty if the reference is not a cursor at all.
+	 * @throws IllegalArgumentException if the reference looks like a cursor but was not issued by this
+	 *    service, or was issued for a different case group.
+	 */
+	public Optional<CasePageKey> decode(CaseGroupInfo group, String pageReference) {
+		if (!isCursor(pageReference)) {
+			return Optional.empty();
+		}
+		byte[] decoded;
+		try {
+			decoded = Base64.getUrlDecoder().decode(pageReference.substring(CURSOR_PREFIX.length()));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid page reference", e);
+		}
+		if (decoded.length <= MAC_LENGTH) {
+			throw new IllegalArgumentException("Invalid page reference");
+		}
+		byte[] payload = Arrays.copyOf(decoded, decoded.length - MAC_LENGTH);
+		byte[] signature = Arrays.copyOfRange(decoded, payload.length, decoded.length);
+		if (!MessageDigest.isEqual(signature, sign(payload))) {
+			throw new IllegalArgumentException("Invalid page reference");
+		}
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+			if (in.readByte() != CURSOR_VERSION) {
+				throw new IllegalArgumentException("Unsupported page reference");
+			}
+			if (in.readLong() != group.getCaseManagementSystemId() || in.readLong() != group.getCaseTypeId()) {
+				throw new IllegalArgumentException("Page reference is for a different case management system or case type");
+			}
+			ZonedDateTime caseCreation = readTimestamp(in);
+			String receiptNumber = in.readUTF();
+			ZonedDateTime snoozeEnd = in.readBoolean() ? readTimestamp(in) : null;
+			return Optional.of(new CasePageKey(caseCreation, receiptNumber, snoozeEnd));
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Invalid page reference", e);
+		}
+	}
+
+	private byte[] sign(byte[] payload) {
+		return _mac.get().doFinal(payload); // doFinal also resets the Mac for the next call
+	}
+
+	private static Mac createMac(SecretKeySpec key) {
+		try {
+			Mac mac = Mac.getInstance(MAC_ALGORITHM);
+			mac.init(key);
+			return mac;
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Unable to sign page references", e);
+		}
+	}
+
+	private static void writeTimestamp(DataOutputStream out, ZonedDateTime timestamp) throws IOException {
+		Instant instant = timestamp.toInstant();
+		out.writeLong(instant.getEpochSecond());
+		out.writeInt(instant.getNano());
+	}
+
+	private static ZonedDateTime readTimestamp(DataInputStream in) throws IOException {
+		long seconds = in.readLong();
+		return Instant.ofEpochSecond(seconds, in.readInt()).atZone(ZoneOffset.UTC);
+	}
+}
@@ -0,0 +1,55 @@
+package gov.usds.case_issues.services;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import gov.usds.case_issues.db.repositories.TroubleCaseRepository;
+import gov.usds.case_issues.services.model.CaseGroupInfo;
+import gov.usds.case_issues.services.model.ResourceVersion;
+
+/**
+ * Works out the current version of resources that clients poll, with a single cheap query each, so that
+ * an unchanged resource can be answered with a 304 without building it.
+ */
+@Service
+@Transactional(readOnly=true)
+public class ResourceVersionService {
+
+	@Autowired
+	private TroubleCaseRepository _caseRepo;
+	@Autowired
+	private CaseListService _listService;
+
+	/**
+	 * The version of the details of a case (see {@link CaseDetailsService#findCaseDetails}), based on the latest
+	 * change to the case or anything attached to it, and on the number of things attached to it (to catch deletions).
+	 * @return the version, or empty if the case does not exist.
+	 */
+	public Optional<ResourceVersion> getCaseDetailsVersion(String caseManagementSystemTag, String receiptNumber) {
+		List<Object[]> found = _caseRepo.getCaseDetailsVersion(caseManagementSystemTag, receiptNumber);
+		if (found.isEmpty()) {
+			return Optional.empty();
+		}
+		long lastChanged = ((Date) found.get(0)[0]).getTime();
+		long itemCount = ((Number) found.get(0)[1]).longValue();
+		return Optional.of(new ResourceVersion(Long.toHexString(lastChanged) + "-" + Long.toHexString(itemCount), lastChanged));
+	}
+
+	/**
+	 * The version of the hitlist for a case group: the group's version, which goes up with every change to it, plus
+	 * the next time a snooze runs out (which moves a case between lists without changing anything in the database).
+	 * This has no last-modified time, since expiring snoozes are not recorded anywhere.
+	 */
+	public ResourceVersion getHitlistVersion(String caseManagementSystemTag, String caseTypeTag) {
+		CaseGroupInfo group = _listService.translatePath(caseManagementSystemTag, caseTypeTag);
+		Object[] row = _caseRepo.getHitlistVersion(group.getCaseManagementSystemId(), group.getCaseTypeId()).get(0);
+		long version = ((Number) row[0]).longValue();
+		long nextWake = row[1] == null ? 0 : ((Date) row[1]).getTime();
+		return new ResourceVersion(Long.toHexString(version) + "-" + Long.toHexString(nextWake), -1);
+	}
+}
@@ -0,0 +1,149 @@
+package gov.usds.case_issues.services;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import gov.usds.case_issues.db.model.CaseIssueUpload;
+import gov.usds.case_issues.services.model.CaseGroupInfo;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Micrometer instrumentation for issue uploads: how long each phase of an upload takes, how fast records
+ * are processed, and how many cases and issues each upload changes. Everything is tagged with the case
+ * management system, case type and issue type of the upload. Outcomes are only counted once the transaction
+ * that records them commits, so that an upload whose completion is rolled back is not counted as a success.
+ */
+@Service
+public class UploadMetricsService {
+
+	/** Time spent in each phase of an upload, tagged with the phase name. */
+	public static final String PHASE_TIMER = "case.upload.phase";
+	/** Records processed per second, over the whole of each successful upload. */
+	public static final String THROUGHPUT = "case.upload.throughput";
+	/** Counts of records, cases and issues, tagged with what was counted. */
+	public static final String ROW_COUNTER = "case.upload.rows";
+	/** Completed uploads, tagged with their outcome. */
+	public static final String UPLOAD_COUNTER = "case.upload.count";
+
+	public static final String PHASE_PARSE = "parse";
+	public static final String PHASE_STAGE = "stage";
+	public static final String PHASE_LOCK = "lock";
+	public static final String PHASE_CLOSE = "close-issues";
+	public static final String PHASE_LOOKUP = "case-lookup";
+	public static final String PHASE_UPDATE = "update-cases";
+	public static final String PHASE_INSERT = "insert-cases";
+	public static final String PHASE_OPEN = "open-issues";
+
+	private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	@Autowired
+	private MeterRegistry _registry;
+
+	public <T> T time(CaseIssueUpload upload, String phase, Supplier<T> work) {
+		return phaseTimer(upload, phase).record(work);
+	}
+
+	/** Record time for a phase that is interleaved with other work, and so was added up by the caller. */
+	public void recordPhase(CaseIssueUpload upload, String phase, long elapsedNanos) {
+		phaseTimer(upload, phase).record(elapsedNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void recordRows(CaseIssueUpload upload, String kind, long count) {
+		_registry.counter(ROW_COUNTER, tags(upload).and("kind", kind)).increment(count);
+	}
+
+	/**
+	 * Record the time spent parsing the input for an upload to this case group. Parsing is done by whoever reads
+	 * the input, which may be before the upload has started, so this is not tied to an upload record.
+	 */
+	public void recordParse(CaseGroupInfo group, String issueType, long elapsedNanos) {
+		_registry.timer(PHASE_TIMER, tags(group.getCaseManagementSystemTag(), group.getCaseTypeTag(), issueType)
+			.and("phase", PHASE_PARSE)).record(elapsedNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Wrap input that is parsed as it is read, so that the time spent in its hasNext and next methods is recorded
+	 * with {@link #recordParse} once it has all been read.
+	 */
+	public <T> Iterator<T> timeParsing(CaseGroupInfo group, String issueType, Iterator<T> input) {
+		return new Iterator<T>() {
+			private long _elapsedNanos;
+
+			@Override
+			public boolean hasNext() {
+				long start = System.nanoTime();
+				boolean more = input.hasNext();
+				_elapsedNanos += System.nanoTime() - start;
+				if (!more) {
+					recordParse(group, issueType, _elapsedNanos);
+					_elapsedNanos = 0;
+				}
+				return more;
+			}
+
+			@Override
+			public T next() {
+				long start = System.nanoTime();
+				T value = input.next();
+				_elapsedNanos += System.nanoTime() - start;
+				return value;
+			}
+		};
+	}
+
+	public void recordSuccess(CaseIssueUpload upload, long elapsedNanos) {
+		Tags tags = tags(upload);
+		long recordCount = upload.getUploadedRecordCount();
+		afterCommit(() -> {
+			_registry.counter(UPLOAD_COUNTER, tags.and("outcome", "success")).increment();
+			if (elapsedNanos > 0) {
+				DistributionSummary.builder(THROUGHPUT)
+					.baseUnit("rows/s")
+					.tags(tags)
+					.register(_registry)
+					.record(recordCount * NANOS_PER_SECOND / elapsedNanos);
+			}
+		});
+	}
+
+	public void recordFailure(CaseIssueUpload upload) {
+		Tags tags = tags(upload);
+		afterCommit(() -> _registry.counter(UPLOAD_COUNTER, tags.and("outcome", "failure")).increment());
+	}
+
+	/** Run the action once the current transaction commits, or right away if there is no transaction. */
+	private static void afterCommit(Runnable action) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			action.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				action.run();
+			}
+		});
+	}
+
+	private Timer phaseTimer(CaseIssueUpload upload, String phase) {
+		return _registry.timer(PHASE_TIMER, tags(upload).and("phase", phase));
+	}
+
+	private static Tags tags(CaseIssueUpload upload) {
+		return tags(upload.getCaseManagementSystem().getExternalId(), upload.getCaseType().getExternalId(),
+			upload.getIssueType());
+	}
+
+	private static Tags tags(String systemTag, String caseTypeTag, String issueType) {
+		return Tags.of("system", systemTag, "caseType", caseTypeTag, "issueType", issueType);
+	}
+}
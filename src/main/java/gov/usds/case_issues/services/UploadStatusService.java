@@ -17,7 +17,11 @@ import gov.usds.case_issues.db.model.CaseManagementSystem;
 import gov.usds.case_issues.db.model.CaseType;
 import gov.usds.case_issues.db.model.UploadStatus;
 import gov.usds.case_issues.db.repositories.CaseIssueUploadRepository;
+import gov.usds.case_issues.db.repositories.CaseManagementSystemRepository;
+import gov.usds.case_issues.db.repositories.CaseTypeRepository;
+import gov.usds.case_issues.model.ApiModelNotFoundException;
 import gov.usds.case_issues.model.BusinessConstraintViolationException;
+import gov.usds.case_issues.services.model.CaseGroupInfo;
 
 @Service
 @Transactional
@@ -27,6 +31,12 @@ public class UploadStatusService {
 
 	@Autowired
 	private CaseIssueUploadRepository _uploadRepository;
+	@Autowired
+	private CaseManagementSystemRepository _systemRepository;
+	@Autowired
+	private CaseTypeRepository _caseTypeRepository;
+	@Autowired
+	private UploadMetricsService _uploadMetrics;
 
 	/**
 	 * <p>Create a new upload record with status {@link UploadStatus#STARTED}, provided that there is no
@@ -51,6 +61,20 @@ public class UploadStatusService {
 		    new CaseIssueUpload(sys, caseType, issueType, effectiveDate, uploadedRecords));
 	}
 
+	/**
+	 * Version of {@link #commenceUpload(CaseManagementSystem, CaseType, String, ZonedDateTime, int)} for a
+	 * {@link CaseGroupInfo}: the system and type are read in this transaction, so the returned upload has them loaded.
+	 */
+	@Transactional(readOnly=false, propagation=Propagation.REQUIRES_NEW)
+	public CaseIssueUpload commenceUpload(CaseGroupInfo group, String issueType, ZonedDateTime effectiveDate,
+			int uploadedRecords) {
+		CaseManagementSystem sys = _systemRepository.findById(group.getCaseManagementSystemId())
+			.orElseThrow(() -> new ApiModelNotFoundException("Case Management System", group.getCaseManagementSystemTag()));
+		CaseType caseType = _caseTypeRepository.findById(group.getCaseTypeId())
+			.orElseThrow(() -> new ApiModelNotFoundException("Case Type", group.getCaseTypeTag()));
+		return commenceUpload(sys, caseType, issueType, effectiveDate, uploadedRecords);
+	}
+
 	@Transactional(readOnly=false, propagation=Propagation.REQUIRES_NEW)
 	public CaseIssueUpload completeUpload(CaseIssueUpload upload) {
 		LOG.debug("Finalizing upload record {} as success", upload.getInternalId());
@@ -58,11 +82,27 @@ public class UploadStatusService {
 		return _uploadRepository.save(upload);
 	}
 
-	@Transactional(readOnly=false, propagation=Propagation.REQUIRES_NEW)
+	/**
+	 * Mark an upload as failed. The upload is read again first, since the copy the caller has may be out of date
+	 * (for instance, missing progress that was recorded while it was running).
+	 */
+	@Transactional(readOnly=false)
 	public CaseIssueUpload failUpload(CaseIssueUpload upload) {
 		LOG.debug("Finalizing upload record {} as failure", upload.getInternalId());
-		upload.setUploadStatus(UploadStatus.FAILED);
-		return _uploadRepository.save(upload);
+		CaseIssueUpload current = readUploadInformation(upload.getInternalId());
+		current.setUploadStatus(UploadStatus.FAILED);
+		_uploadMetrics.recordFailure(current);
+		return _uploadRepository.save(current);
+	}
+
+	/**
+	 * Record how far along an upload that is still {@link UploadStatus#STARTED} has gotten. This joins the
+	 * caller's transaction, so it is visible once the work it is reporting on has been committed.
+	 */
+	@Transactional(readOnly=false)
+	public void recordProgress(Long uploadId, long uploadedRecordCount, Long closedIssueCount, Long newIssueCount) {
+		LOG.debug("Upload {} has processed {} records", uploadId, uploadedRecordCount);
+		_uploadRepository.updateProgress(uploadId, UploadStatus.STARTED, uploadedRecordCount, closedIssueCount, newIssueCount);
 	}
 
 	/** Return <b>all</b> uploads (successful and otherwise) for this system and case type,
@@ -82,6 +122,15 @@ public class UploadStatusService {
 				sys, type, successful);
 	}
 
+	/** Fetch an upload by ID, provided it belongs to the given system and case type. */
+	@Transactional(readOnly=true)
+	public CaseIssueUpload getUpload(CaseGroupInfo group, Long uploadId) {
+		return _uploadRepository.findById(uploadId)
+			.filter(u -> u.getCaseManagementSystem().getInternalId().equals(group.getCaseManagementSystemId())
+				&& u.getCaseType().getInternalId().equals(group.getCaseTypeId()))
+			.orElseThrow(() -> new ApiModelNotFoundException("Upload", String.valueOf(uploadId)));
+	}
+
 	/** Simple fetch-by-ID, for something where people rarely want to know the ID: initially just for test/verification */ 
 	public CaseIssueUpload readUploadInformation(Long id) {
 		return _uploadRepository.findById(id).orElseThrow(
@@ -0,0 +1,99 @@
+package gov.usds.case_issues.services.model;
+
+import java.time.ZonedDateTime;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * A lightweight notification that something in a case group has changed, published as an application event
+ * and passed along to clients subscribed to the group's event feed. It says what happened, not what the
+ * hitlist looks like now: clients that care re-fetch the parts they are showing.
+ */
+public class CaseGroupChange {
+
+	public enum ChangeType {
+		UPLOAD_COMPLETED,
+		CASE_SNOOZED,
+		SNOOZE_ENDED,
+	}
+
+	private Long _caseManagementSystemId;
+	private Long _caseTypeId;
+	private ChangeType _changeType;
+	private String _receiptNumber;
+	private String _issueType;
+	private ZonedDateTime _occurredAt;
+	private ZonedDateTime _earliestChange;
+
+	private CaseGroupChange(Long caseManagementSystemId, Long caseTypeId, ChangeType changeType,
+			String receiptNumber, String issueType, ZonedDateTime earliestChange) {
+		_caseManagementSystemId = caseManagementSystemId;
+		_caseTypeId = caseTypeId;
+		_changeType = changeType;
+		_receiptNumber = receiptNumber;
+		_issueType = issueType;
+		_occurredAt = ZonedDateTime.now();
+		_earliestChange = earliestChange == null || earliestChange.isAfter(_occurredAt) ? _occurredAt : earliestChange;
+	}
+
+	/**
+	 * @param effectiveDate the date the upload was effective as of, which is when the issues it closed were closed.
+	 */
+	public static CaseGroupChange uploadCompleted(Long caseManagementSystemId, Long caseTypeId, String issueType,
+			ZonedDateTime effectiveDate) {
+		return new CaseGroupChange(caseManagementSystemId, caseTypeId, ChangeType.UPLOAD_COMPLETED, null, issueType,
+			effectiveDate);
+	}
+
+	public static CaseGroupChange caseChanged(Long caseManagementSystemId, Long caseTypeId, ChangeType changeType,
+			String receiptNumber) {
+		return caseChanged(caseManagementSystemId, caseTypeId, changeType, receiptNumber, null);
+	}
+
+	/**
+	 * @param earliestChange the earliest time that the change reaches back to, if it is before now (see
+	 *     {@link #getEarliestChange()}), or null.
+	 */
+	public static CaseGroupChange caseChanged(Long caseManagementSystemId, Long caseTypeId, ChangeType changeType,
+			String receiptNumber, ZonedDateTime earliestChange) {
+		return new CaseGroupChange(caseManagementSystemId, caseTypeId, changeType, receiptNumber, null, earliestChange);
+	}
+
+	@JsonIgnore
+	public Long getCaseManagementSystemId() {
+		return _caseManagementSystemId;
+	}
+
+	@JsonIgnore
+	public Long getCaseTypeId() {
+		return _caseTypeId;
+	}
+
+	public ChangeType getChangeType() {
+		return _changeType;
+	}
+
+	/** The case that changed, or null for changes (like uploads) that are not about a single case. */
+	public String getReceiptNumber() {
+		return _receiptNumber;
+	}
+
+	/** The issue type of a completed upload, or null for other changes. */
+	public String getIssueType() {
+		return _issueType;
+	}
+
+	public ZonedDateTime getOccurredAt() {
+		return _occurredAt;
+	}
+
+	/**
+	 * The earliest time whose history this change has altered: usually when it occurred, but earlier for an upload
+	 * with a past effective date (which closes issues as of that date), or for the first snooze on a case whose
+	 * issues have already been closed (which starts counting those issues toward the weeks they were closed in).
+	 */
+	@JsonIgnore
+	public ZonedDateTime getEarliestChange() {
+		return _earliestChange;
+	}
+}
@@ -3,30 +3,46 @@ package gov.usds.case_issues.services.model;
 import gov.usds.case_issues.db.model.CaseManagementSystem;
 import gov.usds.case_issues.db.model.CaseType;
 
+/**
+ * The identity of a case group: the IDs and tags of its case management system and case type. This holds no
+ * entities, so that it can be cached and shared between threads; code that needs the entities themselves should
+ * look them up (or get references to them) within its own transaction.
+ */
 public class CaseGroupInfo {
 
-	private CaseManagementSystem _system;
-	private CaseType _type;
+	private final Long _systemId;
+	private final String _systemTag;
+	private final Long _typeId;
+	private final String _typeTag;
 
-	public CaseGroupInfo(CaseManagementSystem _system, CaseType _type) {
-		super();
-		this._system = _system;
-		this._type = _type;
+	public CaseGroupInfo(CaseManagementSystem system, CaseType type) {
+		this(system.getInternalId(), system.getExternalId(), type.getInternalId(), type.getExternalId());
+	}
+
+	public CaseGroupInfo(Long systemId, String systemTag, Long typeId, String typeTag) {
+		_systemId = systemId;
+		_systemTag = systemTag;
+		_typeId = typeId;
+		_typeTag = typeTag;
+	}
+
+	protected CaseGroupInfo(CaseGroupInfo group) {
+		this(group._systemId, group._systemTag, group._typeId, group._typeTag);
 	}
 
 	public Long getCaseManagementSystemId() {
-		return _system.getInternalId();
+		return _systemId;
 	}
 
-	public Long getCaseTypeId() {
-		return _type.getInternalId();
+	public String getCaseManagementSystemTag() {
+		return _systemTag;
 	}
 
-	public CaseManagementSystem getCaseManagementSystem() {
-		return _system;
+	public Long getCaseTypeId() {
+		return _typeId;
 	}
 
-	public CaseType getCaseType() {
-		return _type;
+	public String getCaseTypeTag() {
+		return _typeTag;
 	}
-}
\ No newline at end of file
+}
@@ -2,45 +2,32 @@ package gov.usds.case_issues.services.model;
 
 import java.time.ZonedDateTime;
 
-import gov.usds.case_issues.db.model.CaseManagementSystem;
-import gov.usds.case_issues.db.model.CaseType;
-import gov.usds.case_issues.db.model.reporting.FilterableCase;
-
 public class CasePageInfo extends CaseGroupInfo {
 
-	private FilterableCase _case;
-
-	public CasePageInfo(CaseGroupInfo group, FilterableCase c) {
-		this(group.getCaseManagementSystem(), group.getCaseType(), c);
-	}
+	private CasePageKey _pageKey;
 
-	public CasePageInfo(CaseManagementSystem system, CaseType type, FilterableCase c) {
-		super(system, type);
-		_case = c;
+	public CasePageInfo(CaseGroupInfo group, CasePageKey pageKey) {
+		super(group);
+		_pageKey = pageKey;
 	}
 
 	public boolean isFirstPage() {
-		return _case == null;
-	}
-
-	public FilterableCase getCase() {
-		assertCase();
-		return _case;
+		return _pageKey == null;
 	}
 
-	public Long getCaseId() {
+	public CasePageKey getPageKey() {
 		assertCase();
-		return _case.getInternalId();
+		return _pageKey;
 	}
 
 	public ZonedDateTime getCaseCreationDate() {
 		assertCase();
-		return _case.getCaseCreation();
+		return _pageKey.getCaseCreation();
 	}
 
 	private void assertCase() {
-		if (null == _case) {
+		if (null == _pageKey) {
 			throw new IllegalArgumentException("No case was included in this page request");
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,40 @@
+package gov.usds.case_issues.services.model;
+
+import java.time.ZonedDateTime;
+
+import gov.usds.case_issues.db.model.reporting.FilterableCase;
+
+/**
+ * The sort-key values of the last case on a page of the hitlist, which are all that is needed to find
+ * the cases that come after it.
+ */
+public class CasePageKey {
+
+	private ZonedDateTime _caseCreation;
+	private String _receiptNumber;
+	private ZonedDateTime _snoozeEnd;
+
+	public CasePageKey(FilterableCase c) {
+		this(c.getCaseCreation(), c.getReceiptNumber(), c.getSnoozeEnd());
+	}
+
+	public CasePageKey(ZonedDateTime caseCreation, String receiptNumber, ZonedDateTime snoozeEnd) {
+		super();
+		_caseCreation = caseCreation;
+		_receiptNumber = receiptNumber;
+		_snoozeEnd = snoozeEnd;
+	}
+
+	public ZonedDateTime getCaseCreation() {
+		return _caseCreation;
+	}
+
+	public String getReceiptNumber() {
+		return _receiptNumber;
+	}
+
+	/** The end of the most recent snooze on the case, or null if it has never been snoozed. */
+	public ZonedDateTime getSnoozeEnd() {
+		return _snoozeEnd;
+	}
+}
@@ -5,6 +5,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
 import gov.usds.case_issues.db.model.projections.CaseSnoozeSummary;
 import gov.usds.case_issues.db.model.reporting.FilterableCase;
 import gov.usds.case_issues.model.AttachmentSummary;
@@ -18,10 +21,12 @@ public class DelegatingFilterableCaseSummary implements CaseSummary {
 	private FilterableCase _root;
 	private List<AttachmentSummary> _attachments;
 	private CaseSnoozeSummary _snooze;
+	private String _pageReference;
 
-	public DelegatingFilterableCaseSummary(FilterableCase r, List<AttachmentSummary> attachments) {
+	public DelegatingFilterableCaseSummary(FilterableCase r, List<AttachmentSummary> attachments, String pageReference) {
 		_root = r;
 		_attachments = attachments;
+		_pageReference = pageReference;
 		if (attachments == null) {
 			_attachments = Collections.emptyList();
 		}
@@ -58,6 +63,11 @@ public class DelegatingFilterableCaseSummary implements CaseSummary {
 	public List<AttachmentSummary> getNotes() {
 		return _attachments;
 	}
+	/** The page reference to pass back in order to fetch the cases that come after this one (not set for exports). */
+	@JsonInclude(Include.NON_NULL)
+	public String getPageReference() {
+		return _pageReference;
+	}
 
 	/**
 	 * A delegating wrapper that implements {@link CaseSnooozeSummary} by wrapping the same root
@@ -0,0 +1,33 @@
+package gov.usds.case_issues.services.model;
+
+import org.springframework.http.CacheControl;
+
+/**
+ * The validators for a conditional GET: an entity tag, and (where there is a sensible one) a last-modified time.
+ */
+public class ResourceVersion {
+
+	/** Clients may keep a copy of the response, but must check that it is still current before using it. */
+	public static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
+	private String _eTag;
+	private long _lastModified;
+
+	/**
+	 * @param version a value that changes whenever the resource does (it will be quoted to make a strong entity tag).
+	 * @param lastModified the last-modified time in epoch milliseconds, or -1 if there isn't one.
+	 */
+	public ResourceVersion(String version, long lastModified) {
+		super();
+		_eTag = "\"" + version + "\"";
+		_lastModified = lastModified;
+	}
+
+	public String getETag() {
+		return _eTag;
+	}
+
+	public long getLastModified() {
+		return _lastModified;
+	}
+}
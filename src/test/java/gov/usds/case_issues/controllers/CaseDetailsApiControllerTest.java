@@ -6,6 +6,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -20,6 +21,7 @@ import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
@@ -70,6 +72,28 @@ public class CaseDetailsApiControllerTest extends ControllerTestBase {
 			;
 	}
 
+	@Test
+	public void getDetails_ifNoneMatch_notModifiedUntilCaseChanges() throws Exception {
+		TroubleCase troubleCase = initSampleCase();
+		_dataService.snoozeCase(troubleCase);
+		MockHttpServletResponse first = this._mvc.perform(detailsRequest(VALID_SYS, SAMPLE_CASE))
+			.andExpect(status().isOk())
+			.andExpect(header().exists("Last-Modified"))
+			.andReturn().getResponse();
+		String eTag = first.getHeader("ETag");
+		this._mvc.perform(detailsRequest(VALID_SYS, SAMPLE_CASE).header("If-None-Match", eTag))
+			.andExpect(status().isNotModified())
+			.andExpect(content().string(""));
+		this._mvc.perform(detailsRequest(VALID_SYS, SAMPLE_CASE).header("If-Modified-Since", first.getHeader("Last-Modified")))
+			.andExpect(status().isNotModified());
+		_mvc.perform(addNote(VALID_SYS, SAMPLE_CASE, new AttachmentRequest(AttachmentType.COMMENT, "Changed", null)))
+			.andExpect(status().isCreated());
+		this._mvc.perform(detailsRequest(VALID_SYS, SAMPLE_CASE).header("If-None-Match", eTag))
+			.andExpect(status().isOk())
+			.andExpect(header().string("ETag", Matchers.not(eTag)))
+			.andExpect(content().json("{\"notes\": [{\"content\": \"Changed\"}]}"));
+	}
+
 	@Test
 	public void getDetails_okCaseOkOrigin_okResult()  throws Exception {
 		initSampleCase();
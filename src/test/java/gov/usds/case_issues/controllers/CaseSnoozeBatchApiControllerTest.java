@@ -0,0 +1,160 @@
+package gov.usds.case_issues.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.ZonedDateTime;
+
+import org.hamcrest.Matchers;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import gov.usds.case_issues.db.model.CaseManagementSystem;
+import gov.usds.case_issues.db.model.CaseType;
+import gov.usds.case_issues.db.model.TroubleCase;
+import gov.usds.case_issues.services.CaseDetailsService;
+
+@WithMockUser(authorities = {"READ_CASES", "UPDATE_CASES"})
+@SuppressWarnings("checkstyle:MagicNumber")
+public class CaseSnoozeBatchApiControllerTest extends ControllerTestBase {
+
+	private static final String VALID_SYS = "C1";
+	private static final String END_SNOOZES_PATH = CaseSnoozeBatchApiController.URL_TEMPLATE + "/ended";
+
+	@Autowired
+	private CaseDetailsService _detailsService;
+
+	private CaseManagementSystem _sys;
+	private CaseType _type;
+
+	@Before
+	public void resetDb() {
+		truncateDb();
+		_sys = _dataService.ensureCaseManagementSystemInitialized(VALID_SYS, "Cases", "managed");
+		_type = _dataService.ensureCaseTypeInitialized("T2", "Forms", "");
+	}
+
+	@Test
+	public void changeActiveSnoozes_mixedReceipts_perReceiptResults() throws Exception {
+		initCase("BH90210");
+		TroubleCase alreadySnoozed = initCase("BH90211");
+		_dataService.snoozeCase(alreadySnoozed);
+		JSONObject note = new JSONObject().put("type", "COMMENT").put("content", "Bulk triage");
+		JSONObject body = new JSONObject()
+			.put("reason", "Waiting")
+			.put("duration", 3)
+			.put("notes", new JSONArray().put(note))
+			.put("receiptNumbers", new JSONArray().put("BH90210").put("NOPE").put("BH90211").put("BH90210"));
+		_mvc.perform(put(CaseSnoozeBatchApiController.URL_TEMPLATE, VALID_SYS).with(csrf())
+				.contentType("application/json")
+				.content(body.toString()))
+			.andExpect(status().isOk())
+			.andExpect(content().json("[{\"receiptNumber\": \"BH90210\", \"outcome\": \"SNOOZED\","
+					+ " \"snooze\": {\"snoozeReason\": \"Waiting\", \"notes\": [{\"content\": \"Bulk triage\"}]}},"
+				+ "{\"receiptNumber\": \"NOPE\", \"outcome\": \"NOT_FOUND\"},"
+				+ "{\"receiptNumber\": \"BH90211\", \"outcome\": \"SNOOZED\"}]", false))
+			.andExpect(jsonPath("$.length()").value(3))
+			.andExpect(jsonPath("$[*].receiptNumber").value(Matchers.contains("BH90210", "NOPE", "BH90211")));
+		assertEquals("Waiting", _detailsService.findActiveSnooze(VALID_SYS, "BH90210").get().getSnoozeReason());
+		assertEquals("Waiting", _detailsService.findActiveSnooze(VALID_SYS, "BH90211").get().getSnoozeReason());
+		assertEquals(2, _detailsService.findCaseDetails(VALID_SYS, "BH90211").getSnoozes().size());
+	}
+
+	@Test
+	public void changeActiveSnoozes_invalidNote_badRequestAndNothingSnoozed() throws Exception {
+		initCase("BH90210");
+		JSONObject note = new JSONObject().put("type", "LINK").put("content", "1234").put("subtype", "NOPE");
+		JSONObject body = new JSONObject()
+			.put("reason", "Waiting")
+			.put("duration", 3)
+			.put("notes", new JSONArray().put(note))
+			.put("receiptNumbers", new JSONArray().put("BH90210"));
+		_mvc.perform(put(CaseSnoozeBatchApiController.URL_TEMPLATE, VALID_SYS).with(csrf())
+				.contentType("application/json")
+				.content(body.toString()))
+			.andExpect(status().isBadRequest());
+		assertFalse(_detailsService.findActiveSnooze(VALID_SYS, "BH90210").isPresent());
+	}
+
+	@Test
+	public void changeActiveSnoozes_noReceipts_badRequest() throws Exception {
+		JSONObject body = new JSONObject()
+			.put("reason", "Waiting")
+			.put("duration", 3)
+			.put("receiptNumbers", new JSONArray());
+		_mvc.perform(put(CaseSnoozeBatchApiController.URL_TEMPLATE, VALID_SYS).with(csrf())
+				.contentType("application/json")
+				.content(body.toString()))
+			.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void changeActiveSnoozes_invalidSystem_notFound() throws Exception {
+		JSONObject body = new JSONObject()
+			.put("reason", "Waiting")
+			.put("duration", 3)
+			.put("receiptNumbers", new JSONArray().put("BH90210"));
+		_mvc.perform(put(CaseSnoozeBatchApiController.URL_TEMPLATE, "NOPE").with(csrf())
+				.contentType("application/json")
+				.content(body.toString()))
+			.andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void endActiveSnoozes_mixedReceipts_perReceiptResults() throws Exception {
+		TroubleCase snoozed = initCase("BH90210");
+		_dataService.snoozeCase(snoozed);
+		initCase("BH90211");
+		_mvc.perform(endSnoozes(VALID_SYS, "BH90210", "BH90211", "NOPE"))
+			.andExpect(status().isOk())
+			.andExpect(content().json("[{\"receiptNumber\": \"BH90210\", \"outcome\": \"ENDED\"},"
+				+ "{\"receiptNumber\": \"BH90211\", \"outcome\": \"NOT_SNOOZED\"},"
+				+ "{\"receiptNumber\": \"NOPE\", \"outcome\": \"NOT_FOUND\"}]", true));
+		assertFalse(_detailsService.findActiveSnooze(VALID_SYS, "BH90210").isPresent());
+		assertTrue(_detailsService.findSnooze(VALID_SYS, "BH90210").isPresent());
+	}
+
+	@Test
+	public void endActiveSnoozes_delete_notAllowed() throws Exception {
+		_mvc.perform(delete(CaseSnoozeBatchApiController.URL_TEMPLATE, VALID_SYS).with(csrf())
+				.contentType("application/json")
+				.content("[\"BH90210\"]"))
+			.andExpect(status().isMethodNotAllowed());
+	}
+
+	@Test
+	public void endActiveSnoozes_noCsrf_forbidden() throws Exception {
+		_mvc.perform(post(END_SNOOZES_PATH, VALID_SYS)
+				.contentType("application/json")
+				.content("[\"BH90210\"]"))
+			.andExpect(status().isForbidden());
+	}
+
+	private TroubleCase initCase(String receiptNumber) {
+		return _dataService.initCaseAndOpenIssue(_sys, receiptNumber, _type, ZonedDateTime.now().minusMonths(1), "ISSUE");
+	}
+
+	private static MockHttpServletRequestBuilder endSnoozes(String systemTag, String... receiptNumbers) throws JSONException {
+		JSONArray body = new JSONArray();
+		for (String receiptNumber : receiptNumbers) {
+			body.put(receiptNumber);
+		}
+		return post(END_SNOOZES_PATH, systemTag).with(csrf())
+			.contentType("application/json")
+			.content(body.toString());
+	}
+}
@@ -1,21 +1,28 @@
 package gov.usds.case_issues.controllers;
 
+import static org.awaitility.Awaitility.await;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import static gov.usds.case_issues.controllers.ApiTests.doSearch;
 import static gov.usds.case_issues.controllers.ApiTests.doGetCases;
 import static gov.usds.case_issues.controllers.ApiTests.putIssues;
 
+import java.net.URI;
 import java.time.ZonedDateTime;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import org.hamcrest.Matchers;
 import org.json.JSONObject;
@@ -23,7 +30,9 @@ import org.junit.Before;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
 import gov.usds.case_issues.db.model.CaseIssueUpload;
@@ -33,8 +42,11 @@ import gov.usds.case_issues.db.model.TroubleCase;
 import gov.usds.case_issues.db.model.UploadStatus;
 import gov.usds.case_issues.db.model.projections.CaseIssueSummary;
 import gov.usds.case_issues.model.CaseDetails;
+import gov.usds.case_issues.model.SnoozeRequest;
 import gov.usds.case_issues.services.CaseDetailsService;
+import gov.usds.case_issues.services.UploadMetricsService;
 import gov.usds.case_issues.services.UploadStatusService;
+import io.micrometer.core.instrument.MeterRegistry;
 
 /**
  * Tests of the Hitlist API behavior that include actual database calls.
@@ -60,6 +72,8 @@ public class HitlistApiControllerIntegrationTest extends ControllerTestBase {
 	private UploadStatusService _uploadService;
 	@Autowired
 	private CaseDetailsService _detailsService;
+	@Autowired
+	private MeterRegistry _meterRegistry;
 	
 	@Before
 	public void resetDb() {
@@ -165,6 +179,88 @@ public class HitlistApiControllerIntegrationTest extends ControllerTestBase {
 	}
 
 
+	@Test
+	@WithMockUser(authorities = "UPDATE_ISSUES")
+	public void putCsv_singleCase_parsingTimedOnce() throws Exception {
+		long parsedBefore = parseTimerCount();
+		perform(putIssues(ApiTests.CSV_CONTENT).content(CSV_HEADER_SHORT + "FKE1000001,2014-08-29T00:00:00-04:00,Pigeon\n"))
+			.andExpect(status().isAccepted());
+		assertEquals(1, parseTimerCount() - parsedBefore);
+	}
+
+	@Test
+	@WithMockUser(authorities = "UPDATE_ISSUES")
+	public void putCsv_streaming_parsingTimedOnce() throws Exception {
+		long parsedBefore = parseTimerCount();
+		perform(putIssues(ApiTests.CSV_CONTENT)
+				.param("streaming", "true")
+				.content(CSV_HEADER_SHORT + "FKE1000001,2014-08-29T00:00:00-04:00,Pigeon\n"))
+			.andExpect(status().isAccepted());
+		assertEquals(1, parseTimerCount() - parsedBefore);
+	}
+
+	@Test
+	@WithMockUser(authorities = "UPDATE_ISSUES")
+	public void putCsv_streamingMultipleCases_accepted() throws Exception {
+		MockHttpServletRequestBuilder csvPut = putIssues(ApiTests.CSV_CONTENT)
+			.param("streaming", "true")
+			.content(CSV_HEADER_SHORT
+				+ "FKE1000001,2014-08-29T00:00:00-04:00,Pigeon\n"
+				+ "FKE1000002,2014-08-30T00:00:00-04:00,Semaphore\n"
+			);
+		perform(csvPut).andExpect(status().isAccepted());
+		checkUploadRecord(2, 2, 0);
+	}
+
+	@Test
+	@WithMockUser(authorities = {"UPDATE_ISSUES", "READ_CASES"})
+	public void putCsv_asyncMultipleCases_acceptedAndCompleted() throws Exception {
+		MockHttpServletRequestBuilder csvPut = putIssues(ApiTests.CSV_CONTENT)
+			.param("async", "true")
+			.content(CSV_HEADER_SHORT
+				+ "FKE1000001,2014-08-29T00:00:00-04:00,Pigeon\n"
+				+ "FKE1000002,2014-08-30T00:00:00-04:00,Semaphore\n"
+			);
+		String location = perform(csvPut)
+			.andExpect(status().isAccepted())
+			.andExpect(header().string("Location", Matchers.containsString("/api/cases/F1/C1/uploads/")))
+			.andExpect(jsonPath("uploadStatus").value("STARTED"))
+			.andReturn().getResponse().getHeader("Location");
+		await().atMost(5, TimeUnit.SECONDS).until(() -> {
+			String body = perform(get(URI.create(location)))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+			return new JSONObject(body).getString("uploadStatus");
+		}, Matchers.not("STARTED"));
+		perform(get(URI.create(location)))
+			.andExpect(jsonPath("uploadStatus").value("SUCCESSFUL"))
+			.andExpect(jsonPath("uploadedRecordCount").value(2))
+			.andExpect(jsonPath("newIssueCount").value(2))
+			.andExpect(jsonPath("closedIssueCount").value(0));
+		checkUploadRecord(2, 2, 0);
+	}
+
+	@Test
+	public void getUploadProgress_noSuchUpload_notFound() throws Exception {
+		perform(get(ApiTests.API_PATH + "uploads/{uploadId}", VALID_CASE_MGT_SYS, VALID_CASE_TYPE, 12345))
+			.andExpect(status().isNotFound());
+	}
+
+	@Test
+	@WithMockUser(authorities = "UPDATE_ISSUES")
+	public void putCsv_streamingDuplicateReceipt_badRequest() throws Exception {
+		MockHttpServletRequestBuilder csvPut = putIssues(ApiTests.CSV_CONTENT)
+			.param("streaming", "true")
+			.content(CSV_HEADER_SHORT
+				+ "FKE1000001,2014-08-29T00:00:00-04:00,Pigeon\n"
+				+ "FKE1000001,2014-08-30T00:00:00-04:00,Semaphore\n"
+			);
+		perform(csvPut)
+			.andExpect(status().isBadRequest())
+			.andExpect(jsonPath("message").value("Multiple records in input with same receipt number (FKE1000001)"));
+		assertFalse(_uploadService.getLastUpload(_system, _type, VALID_ISSUE_TYPE).isPresent());
+	}
+
 	@Test
 	@WithMockUser(authorities = {"UPDATE_ISSUES", "UPDATE_STRUCTURE"})
 	public void putCsv_backDatedIssues_correctDateUsed() throws Exception {
@@ -340,6 +436,98 @@ public class HitlistApiControllerIntegrationTest extends ControllerTestBase {
 		_dataService.snoozeCase(case2);
 	}
 
+	@Test
+	public void getActive_ifNoneMatch_notModifiedUntilGroupChanges() throws Exception {
+		TroubleCase troubleCase = _dataService.initCaseAndOpenIssue(_system, "FFFF1111", _type,
+			ZonedDateTime.now().minusMonths(1), VALID_ISSUE_TYPE);
+		String eTag = _mvc.perform(getActive(VALID_CASE_MGT_SYS, VALID_CASE_TYPE))
+			.andExpect(status().isOk())
+			.andExpect(header().string("Cache-Control", Matchers.containsString("no-cache")))
+			.andReturn().getResponse().getHeader("ETag");
+		_mvc.perform(getActive(VALID_CASE_MGT_SYS, VALID_CASE_TYPE).header("If-None-Match", eTag))
+			.andExpect(status().isNotModified())
+			.andExpect(content().string(""));
+		_dataService.snoozeCase(troubleCase);
+		_mvc.perform(getActive(VALID_CASE_MGT_SYS, VALID_CASE_TYPE).header("If-None-Match", eTag))
+			.andExpect(status().isOk())
+			.andExpect(header().string("ETag", Matchers.not(eTag)))
+			.andExpect(jsonPath("$").isEmpty());
+	}
+
+	@Test
+	public void getEvents_caseSnoozed_eventSent() throws Exception {
+		_dataService.initCaseAndOpenIssue(_system, "FFFF1111", _type, ZonedDateTime.now().minusMonths(1), VALID_ISSUE_TYPE);
+		MockHttpServletResponse response = _mvc.perform(get(ApiTests.API_PATH + "events", VALID_CASE_MGT_SYS, VALID_CASE_TYPE))
+			.andExpect(request().asyncStarted())
+			.andReturn().getResponse();
+		_detailsService.updateSnooze(VALID_CASE_MGT_SYS, "FFFF1111", new SnoozeRequest("DONT_WANNA", 3));
+		await().atMost(5, TimeUnit.SECONDS).until(response::getContentAsString,
+			Matchers.containsString("event:CASE_SNOOZED"));
+		String sent = response.getContentAsString();
+		assertTrue(sent, sent.contains("\"receiptNumber\":\"FFFF1111\""));
+	}
+
+	@Test
+	public void getEvents_invalidCaseType_notFound() throws Exception {
+		_mvc.perform(get(ApiTests.API_PATH + "events", VALID_CASE_MGT_SYS, "NOPE"))
+			.andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void exportCases_csv_allActiveCasesInOrder() throws Exception {
+		ZonedDateTime now = ZonedDateTime.now();
+		_dataService.initCaseAndOpenIssue(_system, "FFFF3333", _type, now.minusMonths(1), VALID_ISSUE_TYPE);
+		_dataService.initCaseAndOpenIssue(_system, "FFFF1111", _type, now.minusMonths(3), VALID_ISSUE_TYPE, "flavor", "mint");
+		_dataService.initCaseAndOpenIssue(_system, "FFFF2222", _type, now.minusMonths(2), VALID_ISSUE_TYPE);
+		TroubleCase snoozed = _dataService.initCaseAndOpenIssue(_system, "FFFF4444", _type, now.minusMonths(4), VALID_ISSUE_TYPE);
+		_dataService.snoozeCase(snoozed);
+		MvcResult started = _mvc.perform(getExport(VALID_CASE_MGT_SYS, VALID_CASE_TYPE, "ACTIVE"))
+			.andExpect(request().asyncStarted())
+			.andReturn();
+		String[] lines = _mvc.perform(asyncDispatch(started))
+			.andExpect(status().isOk())
+			.andExpect(content().contentTypeCompatibleWith("text/csv"))
+			.andExpect(header().string("Content-Disposition", Matchers.containsString("active.csv")))
+			.andReturn().getResponse().getContentAsString().split("\n");
+		assertEquals(4, lines.length);
+		assertTrue(lines[0], lines[0].startsWith("receiptNumber,caseCreation,"));
+		assertTrue(lines[1], lines[1].startsWith("FFFF1111,"));
+		assertTrue(lines[1], lines[1].contains("mint"));
+		assertTrue(lines[2], lines[2].startsWith("FFFF2222,"));
+		assertTrue(lines[3], lines[3].startsWith("FFFF3333,"));
+	}
+
+	@Test
+	public void exportCases_ndjsonWithFilter_matchingCasesOnly() throws Exception {
+		ZonedDateTime now = ZonedDateTime.now();
+		TroubleCase mint = _dataService.initCaseAndOpenIssue(_system, "FFFF1111", _type, now.minusMonths(3), VALID_ISSUE_TYPE,
+			"flavor", "mint");
+		TroubleCase vanilla = _dataService.initCaseAndOpenIssue(_system, "FFFF2222", _type, now.minusMonths(2), VALID_ISSUE_TYPE,
+			"flavor", "vanilla");
+		_dataService.snoozeCase(mint);
+		_dataService.snoozeCase(vanilla);
+		MvcResult started = _mvc.perform(getExport(VALID_CASE_MGT_SYS, VALID_CASE_TYPE, "SNOOZED")
+				.param("format", "NDJSON")
+				.param("filter_dataField[flavor]", "mint"))
+			.andExpect(request().asyncStarted())
+			.andReturn();
+		String[] lines = _mvc.perform(asyncDispatch(started))
+			.andExpect(status().isOk())
+			.andExpect(content().contentTypeCompatibleWith("application/x-ndjson"))
+			.andReturn().getResponse().getContentAsString().split("\n");
+		assertEquals(1, lines.length);
+		JSONObject found = new JSONObject(lines[0]);
+		assertEquals("FFFF1111", found.getString("receiptNumber"));
+		assertEquals("DONOTCARE", found.getJSONObject("snoozeInformation").getString("snoozeReason"));
+		assertFalse(found.has("pageReference"));
+	}
+
+	@Test
+	public void exportCases_invalidCaseType_notFound() throws Exception {
+		_mvc.perform(getExport(VALID_CASE_MGT_SYS, "NOPE", "ACTIVE"))
+			.andExpect(status().isNotFound());
+	}
+
 	private void checkUploadRecord(int recordCount, int newIssues, int closedIssues) {
 		Optional<CaseIssueUpload> maybeInfo = _uploadService.getLastUpload(_system, _type, VALID_ISSUE_TYPE);
 		assertTrue(maybeInfo.isPresent());
@@ -354,6 +542,10 @@ public class HitlistApiControllerIntegrationTest extends ControllerTestBase {
 		return get(ApiTests.API_PATH, cmsTag, ctTag).param(ApiTests.Filters.MAIN, "ACTIVE");
 	}
 
+	private static MockHttpServletRequestBuilder getExport(String cmsTag, String ctTag, String mainFilter) {
+		return get(ApiTests.API_PATH + "export", cmsTag, ctTag).param(ApiTests.Filters.MAIN, mainFilter);
+	}
+
 	private static MockHttpServletRequestBuilder getSnoozed(String cmsTag, String ctTag) {
 		return get(ApiTests.API_PATH, cmsTag, ctTag).param(ApiTests.Filters.MAIN, "SNOOZED");
 	}
@@ -371,4 +563,10 @@ public class HitlistApiControllerIntegrationTest extends ControllerTestBase {
 			fail(String.format("%s: expected %s, found %s", message, expected, found));
 		}
 	}
+
+	private long parseTimerCount() {
+		return _meterRegistry.timer(UploadMetricsService.PHASE_TIMER, "system", VALID_CASE_MGT_SYS,
+			"caseType", VALID_CASE_TYPE, "issueType", VALID_ISSUE_TYPE, "phase", UploadMetricsService.PHASE_PARSE)
+			.count();
+	}
 }
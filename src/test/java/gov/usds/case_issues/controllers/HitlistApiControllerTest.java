@@ -7,6 +7,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentMatchers;
@@ -14,6 +15,7 @@ import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -26,9 +28,15 @@ import gov.usds.case_issues.config.WebConfigurationProperties;
 import gov.usds.case_issues.controllers.ApiTests.Filters;
 import gov.usds.case_issues.db.model.CaseIssueUpload;
 import gov.usds.case_issues.db.model.UploadStatus;
+import gov.usds.case_issues.services.CaseExportService;
 import gov.usds.case_issues.services.CaseFilteringService;
+import gov.usds.case_issues.services.CaseGroupEventService;
 import gov.usds.case_issues.services.CaseListService;
 import gov.usds.case_issues.services.IssueUploadService;
+import gov.usds.case_issues.services.ResourceVersionService;
+import gov.usds.case_issues.services.UploadMetricsService;
+import gov.usds.case_issues.services.UploadStatusService;
+import gov.usds.case_issues.services.model.ResourceVersion;
 /**
  * Tests of the API controller that don't rely on the behavior of the underlying data store.
  * (Argument validation, security configuration.)
@@ -50,11 +58,27 @@ public class HitlistApiControllerTest {
 	@MockBean
 	private CaseFilteringService _filterService;
 	@MockBean
+	private UploadStatusService _statusService;
+	@MockBean
 	private WebConfigurationProperties _properties;
+	@MockBean
+	private ResourceVersionService _versionService;
+	@MockBean
+	private CaseGroupEventService _eventService;
+	@MockBean
+	private CaseExportService _exportService;
+	@MockBean
+	private UploadMetricsService _metricsService;
 
 	@Autowired
 	private MockMvc _mvc;
 
+	@Before
+	public void stubVersion() {
+		Mockito.when(_versionService.getHitlistVersion(ArgumentMatchers.anyString(), ArgumentMatchers.anyString()))
+			.thenReturn(new ResourceVersion("1", -1));
+	}
+
 	@Test
 	public void search_withoutQueryParam_badRequest() throws Exception {
 		perform(doSearch(ApiTests.VALID_CASE_MGT_SYS, ApiTests.VALID_CASE_TYPE, null))
@@ -168,6 +192,30 @@ public class HitlistApiControllerTest {
 			.andExpect(status().isInternalServerError());
 	}
 
+	@Test
+	@WithMockUser(authorities = "UPDATE_ISSUES")
+	public void putJson_asyncUploadRejected_serviceUnavailable() throws Exception {
+		Mockito.when(_uploadService.submitIssueStream(ArgumentMatchers.any(), ArgumentMatchers.eq(ApiTests.VALID_ISSUE_TYPE), ArgumentMatchers.any(), ArgumentMatchers.any()))
+			.thenThrow(new TaskRejectedException("Too busy"));
+		_mvc.perform(putIssues(MediaType.APPLICATION_JSON_VALUE).param("async", "true").content("[]"))
+			.andExpect(status().isServiceUnavailable());
+	}
+
+	@Test
+	@WithMockUser(authorities = "UPDATE_ISSUES")
+	public void putJson_asyncDuplicateRows_badRequest() throws Exception {
+		Mockito.when(_listService.getUploadFormat(ArgumentMatchers.isNull()))
+			.thenReturn(new DataFormatSpec());
+		MockHttpServletRequestBuilder jsonPut = putIssues(MediaType.APPLICATION_JSON_VALUE)
+			.param("async", "true")
+			.content("[{\"receiptNumber\": \"DUPE123\", \"creationDate\": \"1978-08-05T00:00:00Z\"},"
+				+ "{\"receiptNumber\": \"DUPE123\", \"creationDate\": \"1978-08-05T00:00:00Z\"}]");
+		_mvc.perform(jsonPut)
+			.andExpect(status().isBadRequest())
+			.andExpect(content().json(DUPE_INPUT_ERROR_MESSAGE));
+		Mockito.verifyZeroInteractions(_uploadService);
+	}
+
 	@Test
 	@WithMockUser(authorities = "UPDATE_ISSUES")
 	public void putJson_emptyListNoCsrf_forbidden() throws Exception {
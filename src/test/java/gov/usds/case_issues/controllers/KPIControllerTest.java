@@ -0,0 +1,68 @@
+package gov.usds.case_issues.controllers;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import gov.usds.case_issues.config.WebConfigurationProperties;
+import gov.usds.case_issues.services.KPIService;
+
+/**
+ * Tests of how the KPI controller reports what the service gives it (or fails to).
+ */
+@RunWith(SpringRunner.class)
+@WebMvcTest(KPIController.class)
+@WithMockUser(username = "default_hitlist_user", authorities = "READ_CASES")
+@SuppressWarnings("checkstyle:MagicNumber")
+public class KPIControllerTest {
+
+	private static final String KPI_PATH = "/api/reporting/{caseManagementSystemTag}/{caseTypeTag}";
+
+	@MockBean
+	private KPIService _kpiService;
+	@MockBean
+	private WebConfigurationProperties _properties;
+
+	@Autowired
+	private MockMvc _mvc;
+
+	@Test
+	public void getKPIs_weeksNotComputed_nullsReturned() throws Exception {
+		Map<String, Object> partial = new HashMap<>();
+		partial.put("ResolvedTickets", Arrays.asList(1, null));
+		partial.put("DaysToResolution", Arrays.asList(2, null));
+		partial.put("DaysWorked", Arrays.asList(3, null));
+		Mockito.when(_kpiService.getKPIData(ArgumentMatchers.eq("SYS"), ArgumentMatchers.eq("TYPE"),
+				ArgumentMatchers.any(), ArgumentMatchers.eq(2)))
+			.thenReturn(partial);
+		_mvc.perform(get(KPI_PATH, "SYS", "TYPE").param("weeks", "2"))
+			.andExpect(status().isOk())
+			.andExpect(content().json(
+				"{\"ResolvedTickets\": [1, null], \"DaysToResolution\": [2, null], \"DaysWorked\": [3, null]}", true));
+	}
+
+	@Test
+	public void getKPIs_computationRejected_serviceUnavailable() throws Exception {
+		Mockito.when(_kpiService.getKPIData(ArgumentMatchers.eq("SYS"), ArgumentMatchers.eq("TYPE"),
+				ArgumentMatchers.any(), ArgumentMatchers.anyInt()))
+			.thenThrow(new TaskRejectedException("KPI computation did not finish in time"));
+		_mvc.perform(get(KPI_PATH, "SYS", "TYPE"))
+			.andExpect(status().isServiceUnavailable());
+	}
+}
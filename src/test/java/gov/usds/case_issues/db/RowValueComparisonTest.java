@@ -0,0 +1,34 @@
+package gov.usds.case_issues.db;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.hibernate.QueryException;
+import org.junit.Test;
+
+public class RowValueComparisonTest {
+
+	private final RowValueComparison _greaterThan = new RowValueComparison(">");
+
+	@Test
+	public void render_twoColumnRows_rowComparisonRendered() {
+		assertEquals("((a, b) > (?, ?))", _greaterThan.render(null, Arrays.asList("a", "b", "?", "?"), null));
+	}
+
+	@Test
+	public void render_singleColumnRows_rowComparisonRendered() {
+		assertEquals("((a) > (?))", _greaterThan.render(null, Arrays.asList("a", "?"), null));
+	}
+
+	@Test(expected=QueryException.class)
+	public void render_oddArgumentCount_exception() {
+		_greaterThan.render(null, Arrays.asList("a", "b", "?"), null);
+	}
+
+	@Test(expected=QueryException.class)
+	public void render_noArguments_exception() {
+		_greaterThan.render(null, Collections.emptyList(), null);
+	}
+}
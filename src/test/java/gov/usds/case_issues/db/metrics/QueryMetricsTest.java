@@ -0,0 +1,72 @@
+package gov.usds.case_issues.db.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.ZonedDateTime;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import gov.usds.case_issues.controllers.CaseDetailsApiController;
+import gov.usds.case_issues.db.model.CaseManagementSystem;
+import gov.usds.case_issues.db.model.CaseType;
+import gov.usds.case_issues.test_util.CaseIssueApiTestBase;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+@AutoConfigureMockMvc
+@ActiveProfiles("query-metrics")
+@WithMockUser(authorities = "READ_CASES")
+public class QueryMetricsTest extends CaseIssueApiTestBase {
+
+	private static final String DETAILS_ENDPOINT = "GET " + CaseDetailsApiController.URL_TEMPLATE;
+
+	@Autowired
+	private MockMvc _mvc;
+	@Autowired
+	private MeterRegistry _registry;
+
+	@Before
+	public void resetDb() {
+		truncateDb();
+		CaseManagementSystem sys = _dataService.ensureCaseManagementSystemInitialized("QM1", "Metered", null);
+		CaseType type = _dataService.ensureCaseTypeInitialized("QMT", "Metered Type", null);
+		_dataService.initCaseAndOpenIssue(sys, "QM0001", type, ZonedDateTime.now().minusDays(1), "METERED");
+	}
+
+	@Test
+	public void getDetails_queryMetricsEnabled_statementsAndLoadsRecordedForEndpoint() throws Exception {
+		long countBefore = count(QueryMetrics.REQUEST_STATEMENTS);
+		_mvc.perform(get(CaseDetailsApiController.URL_TEMPLATE, "QM1", "QM0001"))
+			.andExpect(status().isOk());
+		assertEquals(countBefore + 1, count(QueryMetrics.REQUEST_STATEMENTS));
+		DistributionSummary statements = _registry.get(QueryMetrics.REQUEST_STATEMENTS)
+			.tag("endpoint", DETAILS_ENDPOINT).summary();
+		assertTrue("at least one statement per request", statements.max() > 0);
+		DistributionSummary loads = _registry.get(QueryMetrics.REQUEST_ENTITY_LOADS)
+			.tag("endpoint", DETAILS_ENDPOINT).summary();
+		assertTrue("the case (at least) was loaded", loads.max() > 0);
+		assertNotNull(_registry.get(QueryMetrics.STATEMENT_TIMER).tag("endpoint", DETAILS_ENDPOINT).timer());
+		assertNotNull(_registry.get(QueryMetrics.CONNECTION_ACQUIRE).tag("endpoint", DETAILS_ENDPOINT).timer());
+	}
+
+	@Test
+	public void redact_literals_replaced() {
+		assertEquals("SELECT * FROM trouble_case WHERE receipt_number = '?' AND internal_id > ? AND n = ?",
+			QueryMetrics.redact("SELECT * FROM trouble_case WHERE receipt_number = 'O''Brien 12' AND internal_id > 42 AND n = ?"));
+	}
+
+	private long count(String meterName) {
+		DistributionSummary found = _registry.find(meterName).tag("endpoint", DETAILS_ENDPOINT).summary();
+		return found == null ? 0 : found.count();
+	}
+}
@@ -1,16 +1,20 @@
 package gov.usds.case_issues.db.repositories;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import javax.validation.ConstraintViolationException;
 
 import org.junit.Before;
@@ -22,16 +26,23 @@ import gov.usds.case_issues.db.model.CaseManagementSystem;
 import gov.usds.case_issues.db.model.CaseType;
 import gov.usds.case_issues.db.model.TroubleCase;
 import gov.usds.case_issues.test_util.CaseIssueApiTestBase;
+import gov.usds.case_issues.test_util.StatementCounter;
 
 @Transactional(readOnly=false)
 public class TroubleCaseRepositoryTest extends CaseIssueApiTestBase {
 
 	private static final int GIANT_LIST_SIZE = 100_000;
 	private static final int LARGE_LIST_SIZE = 29_999;
-
+	private static final int BATCHED_LIST_SIZE = 1_000;
+	/** Both the JDBC batch size and the (default) allocation size of the entity id sequence. */
+	private static final int BLOCK_SIZE = 50;
 
 	@Autowired
 	private TroubleCaseRepository _repo;
+	@Autowired
+	private StatementCounter _statementCounter;
+	@PersistenceContext
+	private EntityManager _entityManager;
 
 	@Before
 	public void resetDb() {
@@ -77,4 +88,24 @@ public class TroubleCaseRepositoryTest extends CaseIssueApiTestBase {
 		}
 		_repo.getAllByCaseManagementSystemAndReceiptNumberIn(m1, receipts);
 	}
+
+	@Test
+	public void saveAll_manyNewCases_insertsBatched() {
+		CaseManagementSystem m1 = _dataService.ensureCaseManagementSystemInitialized("M1", "System 1", null);
+		CaseType t1 = _dataService.ensureCaseTypeInitialized("T1", "Ahnold", "Terminated");
+		ZonedDateTime now = ZonedDateTime.now();
+		List<TroubleCase> cases = new ArrayList<>(BATCHED_LIST_SIZE);
+		for (int i = 0; i < BATCHED_LIST_SIZE; i++) {
+			cases.add(new TroubleCase(m1, String.format("FFFF%07d", i), t1, now, Collections.emptyMap()));
+		}
+		_entityManager.flush();
+		_statementCounter.reset();
+		_repo.saveAll(cases);
+		_entityManager.flush();
+		long statements = _statementCounter.getExecutionCount();
+		// one sequence call and one insert batch per block of ids
+		assertTrue("Expected batched inserts, but found " + statements + " statements",
+			statements <= 2 * BATCHED_LIST_SIZE / BLOCK_SIZE + 2);
+		assertEquals(BATCHED_LIST_SIZE, _repo.count());
+	}
 }
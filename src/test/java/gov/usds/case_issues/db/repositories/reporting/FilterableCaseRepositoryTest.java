@@ -0,0 +1,220 @@
+package gov.usds.case_issues.db.repositories.reporting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Statement;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+
+import gov.usds.case_issues.db.model.CaseIssue;
+import gov.usds.case_issues.db.model.CaseManagementSystem;
+import gov.usds.case_issues.db.model.CaseType;
+import gov.usds.case_issues.db.model.TroubleCase;
+import gov.usds.case_issues.db.model.reporting.FilterableCase;
+import gov.usds.case_issues.db.repositories.CaseIssueRepository;
+import gov.usds.case_issues.db.repositories.CaseSnoozeRepository;
+import gov.usds.case_issues.db.repositories.TroubleCaseRepository;
+import gov.usds.case_issues.model.CaseSnoozeFilter;
+import gov.usds.case_issues.services.CaseFilteringService;
+import gov.usds.case_issues.services.FilterFactory;
+import gov.usds.case_issues.services.model.CaseFilter;
+import gov.usds.case_issues.test_util.CaseIssueApiTestBase;
+import gov.usds.case_issues.test_util.StatementCounter;
+import gov.usds.case_issues.test_util.StatementCounter.CapturedStatement;
+
+/**
+ * Tests that the filterable_case table is kept in line with the cases, issues and snoozes it summarizes.
+ */
+@WithMockUser
+public class FilterableCaseRepositoryTest extends CaseIssueApiTestBase {
+
+	private static final String ISSUE_TYPE = "DISAGREEABLE";
+	private static final int SEED_CASE_COUNT = 5000;
+	private static final int PAGE_SIZE = 20;
+
+	@Autowired
+	private FilterableCaseRepository _repo;
+	@Autowired
+	private TroubleCaseRepository _caseRepo;
+	@Autowired
+	private CaseIssueRepository _issueRepo;
+	@Autowired
+	private CaseSnoozeRepository _snoozeRepo;
+	@Autowired
+	private CaseFilteringService _filteringService;
+	@Autowired
+	private StatementCounter _statementCounter;
+	@Autowired
+	private JdbcTemplate _jdbc;
+	@Value("${spring.jpa.properties.hibernate.default_schema:public}")
+	private String _schema;
+
+	private CaseManagementSystem _system;
+	private CaseType _type;
+	private ZonedDateTime _now;
+
+	@Before
+	public void reset() {
+		truncateDb();
+		_now = ZonedDateTime.now();
+		_system = _dataService.ensureCaseManagementSystemInitialized("FC1", "Filterable System", null);
+		_type = _dataService.ensureCaseTypeInitialized("FT1", "Filterable Type", null);
+	}
+
+	@Test
+	public void findByCaseManagementSystemAndReceiptNumber_issuesAndSnoozesChanged_tableUpToDate() {
+		TroubleCase troubleCase = _dataService.initCase(_system, "FC0001", _type, _now.minusMonths(1));
+		FilterableCase found = fetch("FC0001");
+		assertFalse(found.isHasOpenIssue());
+		assertNull(found.getSnoozeReason());
+
+		CaseIssue issue = _dataService.initOpenIssue(troubleCase, ISSUE_TYPE);
+		assertTrue(fetch("FC0001").isHasOpenIssue());
+
+		_dataService.snoozeCase(troubleCase, "FIRST", 1, false);
+		assertEquals("FIRST", fetch("FC0001").getSnoozeReason());
+		_dataService.snoozeCase(troubleCase, "SECOND", 1, true);
+		found = fetch("FC0001");
+		assertEquals("SECOND", found.getSnoozeReason());
+		assertTrue(found.getSnoozeEnd().isBefore(ZonedDateTime.now()));
+
+		issue.setIssueClosed(_now);
+		_issueRepo.save(issue);
+		assertFalse(fetch("FC0001").isHasOpenIssue());
+
+		_snoozeRepo.deleteAll();
+		assertNull(fetch("FC0001").getSnoozeReason());
+	}
+
+	@Test
+	public void findAll_casesCreatedAndChanged_tableMatchesView() {
+		TroubleCase plain = _dataService.initCase(_system, "FC0001", _type, _now.minusMonths(1));
+		TroubleCase snoozed = _dataService.initCaseAndOpenIssue(_system, "FC0002", _type, _now.minusMonths(2), ISSUE_TYPE);
+		_dataService.snoozeCase(snoozed);
+		TroubleCase resolved = _dataService.initCaseAndIssue(_system, "FC0003", _type, _now.minusMonths(3), ISSUE_TYPE,
+				_now.minusDays(1));
+		_dataService.snoozeCase(resolved, "EXPIRED", 1, true);
+		_dataService.initOpenIssue(plain, ISSUE_TYPE);
+		TroubleCase updated = _caseRepo.findByCaseManagementSystemAndReceiptNumber(_system, "FC0002").get();
+		updated.getExtraData().put("flavor", "mint");
+		_caseRepo.save(updated);
+
+		String ordering = " ORDER BY internal_id";
+		List<Map<String, Object>> expected = _jdbc.queryForList("SELECT * FROM " + _schema + ".filterable_case_view" + ordering);
+		List<Map<String, Object>> actual = _jdbc.queryForList("SELECT * FROM " + _schema + ".filterable_case" + ordering);
+		assertEquals(3, actual.size());
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void extraDataContainment_seqScanDisabled_usesGinIndex() {
+		_dataService.initCaseAndOpenIssue(_system, "FC0001", _type, _now.minusMonths(1), ISSUE_TYPE, "flavor", "mint");
+		_dataService.initCaseAndOpenIssue(_system, "FC0002", _type, _now.minusMonths(1), ISSUE_TYPE, "flavor", "vanilla");
+		// with only a couple of rows a sequential scan is always cheaper, so take it off the table
+		String plan = explainCasePage(true, CaseSnoozeFilter.ACTIVE, null,
+			FilterFactory.caseExtraData(Collections.singletonMap("flavor", "mint")));
+		assertTrue(plan, plan.contains("ix__filterable_case_extra_data_converted"));
+	}
+
+	@Test
+	public void activeCasePage_seededData_usesCreationIndex() {
+		seedHitlist();
+		String plan = explainCasePage(false, CaseSnoozeFilter.ACTIVE, null);
+		assertTrue(plan, plan.contains("Index Scan using ix__filterable_case_open_by_creation"));
+	}
+
+	@Test
+	public void deepCasePage_rowValueKeySet_rangeConditionOnIndex() {
+		seedHitlist();
+		String plan = explainCasePage(false, CaseSnoozeFilter.ACTIVE, "FT1-2400");
+		assertTrue(plan, plan.contains("Index Scan using ix__filterable_case_open_by_creation"));
+		assertTrue(plan, plan.contains("Index Cond:"));
+		assertTrue(plan, plan.contains("ROW(case_creation, receipt_number) >"));
+	}
+
+	@Test
+	public void snoozedCasePage_seededData_usesSnoozeEndIndex() {
+		seedHitlist();
+		String plan = explainCasePage(false, CaseSnoozeFilter.SNOOZED, null);
+		assertTrue(plan, plan.contains("Index Scan using ix__filterable_case_open_by_snooze_end"));
+	}
+
+	/**
+	 * Create enough cases (with a mix of open issues and snoozes) that the planner has a real choice to make,
+	 * plus a second case type sharing the same system so that the case group restriction is selective.
+	 */
+	private void seedHitlist() {
+		CaseType otherType = _dataService.ensureCaseTypeInitialized("FT2", "Other Filterable Type", null);
+		String sequence = "nextval('" + _schema + ".case_issue_entity_id_sequence')";
+		for (CaseType t : new CaseType[] {_type, otherType}) {
+			_jdbc.update("INSERT INTO " + _schema + ".trouble_case (internal_id, created_at, updated_at, "
+					+ "case_management_system_internal_id, case_type_internal_id, receipt_number, case_creation, extra_data) "
+				+ "SELECT " + sequence + ", now(), now(), ?, ?, CONCAT(?, n), now() - n * interval '1 hour', jsonb_build_object() "
+				+ "FROM generate_series(1, ?) n",
+				_system.getInternalId(), t.getInternalId(), t.getExternalId() + "-", SEED_CASE_COUNT);
+		}
+		_jdbc.update("INSERT INTO " + _schema + ".case_issue (internal_id, created_at, updated_at, "
+				+ "issue_case_internal_id, issue_type, issue_created, issue_closed) "
+			+ "SELECT " + sequence + ", now(), now(), internal_id, ?, case_creation, "
+				+ "CASE WHEN internal_id % 4 = 0 THEN now() END "
+			+ "FROM " + _schema + ".trouble_case",
+			ISSUE_TYPE);
+		_jdbc.update("INSERT INTO " + _schema + ".case_snooze (internal_id, created_at, updated_at, "
+				+ "snooze_case_internal_id, snooze_reason, snooze_start, snooze_end) "
+			+ "SELECT " + sequence + ", now(), now(), internal_id, 'SEEDED', now(), now() + (internal_id % 30) * interval '1 day' "
+			+ "FROM " + _schema + ".trouble_case WHERE internal_id % 3 = 0");
+		_jdbc.execute("ANALYZE " + _schema + ".filterable_case");
+	}
+
+	/**
+	 * Fetch a page of cases through {@link CaseFilteringService}, capturing the query that Hibernate generates for
+	 * it, and run that query (with the same parameter values) through EXPLAIN.
+	 */
+	private String explainCasePage(boolean disableSeqScan, CaseSnoozeFilter snoozeFilter, String pageReference,
+			CaseFilter... filters) {
+		_statementCounter.startCapture();
+		List<CapturedStatement> captured;
+		try {
+			_filteringService.getCases(_system.getExternalId(), _type.getExternalId(), EnumSet.of(snoozeFilter),
+				PAGE_SIZE, Optional.empty(), Optional.ofNullable(pageReference), Arrays.asList(filters));
+		} finally {
+			captured = _statementCounter.stopCapture();
+		}
+		CapturedStatement pageQuery = captured.stream()
+			.filter(statement -> statement.getSql().contains("filterable_case") && statement.getSql().contains(" limit "))
+			.findFirst()
+			.orElseThrow(() -> new AssertionError("No case page query was captured"));
+		return _jdbc.execute((ConnectionCallback<String>) conn -> {
+			try (Statement stmt = conn.createStatement()) {
+				if (disableSeqScan) {
+					stmt.execute("SET enable_seqscan = off");
+				}
+				try {
+					return pageQuery.explain(conn);
+				} finally {
+					stmt.execute("RESET enable_seqscan");
+				}
+			}
+		});
+	}
+
+	private FilterableCase fetch(String receiptNumber) {
+		return _repo.findByCaseManagementSystemAndReceiptNumber(_system, receiptNumber).get();
+	}
+}
@@ -0,0 +1,245 @@
+package gov.usds.case_issues.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.AdditionalAnswers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import gov.usds.case_issues.db.model.AttachmentType;
+import gov.usds.case_issues.db.model.CaseManagementSystem;
+import gov.usds.case_issues.db.model.CaseSnooze;
+import gov.usds.case_issues.db.model.CaseType;
+import gov.usds.case_issues.db.model.TroubleCase;
+import gov.usds.case_issues.db.model.UserInformation;
+import gov.usds.case_issues.db.model.projections.CaseIssueSummary;
+import gov.usds.case_issues.db.repositories.UserInformationRepository;
+import gov.usds.case_issues.model.ApiModelNotFoundException;
+import gov.usds.case_issues.model.AttachmentRequest;
+import gov.usds.case_issues.model.AttachmentSummary;
+import gov.usds.case_issues.model.BatchSnoozeRequest;
+import gov.usds.case_issues.model.BatchSnoozeResult;
+import gov.usds.case_issues.model.BatchSnoozeResult.Outcome;
+import gov.usds.case_issues.model.CaseDetails;
+import gov.usds.case_issues.model.CaseSnoozeSummaryFacade;
+import gov.usds.case_issues.model.SnoozeRequest;
+import gov.usds.case_issues.services.model.CaseGroupChange;
+import gov.usds.case_issues.services.model.CaseGroupChange.ChangeType;
+import gov.usds.case_issues.test_util.CaseIssueApiTestBase;
+import gov.usds.case_issues.test_util.StatementCounter;
+
+@WithMockUser
+@SuppressWarnings("checkstyle:MagicNumber")
+public class CaseDetailsServiceTest extends CaseIssueApiTestBase {
+
+	private static final String SYSTEM_TAG = "DETAILED";
+
+	@Autowired
+	private CaseDetailsService _service;
+	@Autowired
+	private CaseAttachmentService _attachmentService;
+	@Autowired
+	private StatementCounter _statementCounter;
+	@Autowired
+	private UserInformationRepository _userRepo;
+
+	private CaseManagementSystem _system;
+	private CaseType _type;
+	private ZonedDateTime _now;
+	private ApplicationEventPublisher _originalPublisher;
+
+	@Before
+	public void reset() {
+		truncateDb();
+		_now = ZonedDateTime.now();
+		_system = _dataService.ensureCaseManagementSystemInitialized(SYSTEM_TAG, "Detailed System", null);
+		_type = _dataService.ensureCaseTypeInitialized("DT1", "Detailed Type", null);
+	}
+
+	@After
+	public void restorePublisher() {
+		if (_originalPublisher != null) {
+			ReflectionTestUtils.setField(AopTestUtils.getUltimateTargetObject(_service), "_eventPublisher", _originalPublisher);
+			_originalPublisher = null;
+		}
+	}
+
+	@Test
+	public void findCaseDetails_fullHistory_everythingReturnedInOrder() {
+		TroubleCase troubleCase = _dataService.initCaseAndIssue(_system, "D0001", _type, _now.minusMonths(1), "FIRST",
+			_now.minusDays(2));
+		_dataService.initOpenIssue(troubleCase, "SECOND", _now.minusDays(1));
+		CaseSnooze expired = _dataService.snoozeCase(troubleCase, "EARLY", 1, true);
+		_attachmentService.attachToSnooze(new AttachmentRequest(AttachmentType.COMMENT, "first note"), expired);
+		CaseSnooze current = _dataService.snoozeCase(troubleCase, "LATE", 2, false);
+		_attachmentService.attachToSnooze(new AttachmentRequest(AttachmentType.COMMENT, "second note"), current);
+
+		CaseDetails details = _service.findCaseDetails(SYSTEM_TAG, "D0001");
+		assertEquals("D0001", details.getReceiptNumber());
+		assertEquals(SYSTEM_TAG, details.getCaseManagementSystem().getExternalId());
+		assertEquals("DT1", details.getCaseType().getExternalId());
+
+		List<CaseIssueSummary> issues = new ArrayList<>(details.getIssues());
+		assertEquals(2, issues.size());
+		assertEquals("FIRST", issues.get(0).getIssueType());
+		assertTrue(issues.get(0).getIssueClosed().toInstant().isBefore(_now.toInstant()));
+		assertEquals("SECOND", issues.get(1).getIssueType());
+		assertNull(issues.get(1).getIssueClosed());
+
+		List<CaseSnoozeSummaryFacade> snoozes = new ArrayList<>(details.getSnoozes());
+		assertEquals(2, snoozes.size());
+		assertEquals("EARLY", snoozes.get(0).getSnoozeReason());
+		assertEquals("LATE", snoozes.get(1).getSnoozeReason());
+		assertEquals("user", snoozes.get(1).getUser().getID());
+
+		List<AttachmentSummary> notes = details.getNotes();
+		assertEquals(2, notes.size());
+		assertEquals("first note", notes.get(0).getContent());
+		assertEquals(AttachmentType.COMMENT, notes.get(0).getType());
+		assertEquals("second note", notes.get(1).getContent());
+	}
+
+	@Test
+	public void findCaseDetails_longHistory_twoStatements() {
+		// as for anyone who has logged in, so that the audit users on the case, system and type can all be found
+		_userRepo.save(new UserInformation("user", "Test User"));
+		TroubleCase shortHistory = _dataService.initCaseAndOpenIssue(_system, "D0001", _type, _now.minusMonths(1), "ONLY");
+		_dataService.snoozeCase(shortHistory);
+		TroubleCase longHistory = _dataService.initCaseAndOpenIssue(_system, "D0002", _type, _now.minusMonths(1), "MANY");
+		for (int i = 0; i < 5; i++) {
+			_dataService.initOpenIssue(longHistory, "MORE" + i);
+			CaseSnooze snooze = _dataService.snoozeCase(longHistory, "AGAIN" + i, 1, true);
+			_attachmentService.attachToSnooze(new AttachmentRequest(AttachmentType.COMMENT, "note " + i), snooze);
+		}
+
+		// one for the case (with its system, type and audit users), and one for its history
+		_statementCounter.reset();
+		_service.findCaseDetails(SYSTEM_TAG, "D0001");
+		assertEquals(2, _statementCounter.getExecutionCount());
+		_statementCounter.reset();
+		CaseDetails details = _service.findCaseDetails(SYSTEM_TAG, "D0002");
+		assertEquals(6, details.getIssues().size());
+		assertEquals(5, details.getNotes().size());
+		assertEquals(2, _statementCounter.getExecutionCount());
+	}
+
+	@Test
+	public void updateSnoozes_largerBatch_statementCountUnchanged() {
+		List<String> small = initCases("S", 2);
+		List<String> large = initCases("L", 20);
+		// so that both of the batches being compared find the note already there
+		_service.updateSnoozes(SYSTEM_TAG, batchWithNote(initCases("W", 1)));
+
+		_statementCounter.reset();
+		_service.updateSnoozes(SYSTEM_TAG, batchWithNote(small));
+		long smallStatements = _statementCounter.getExecutionCount();
+		_statementCounter.reset();
+		List<BatchSnoozeResult> results = _service.updateSnoozes(SYSTEM_TAG, batchWithNote(large));
+		long largeStatements = _statementCounter.getExecutionCount();
+
+		assertEquals(20, results.size());
+		assertTrue(results.stream().allMatch(r -> r.getOutcome() == Outcome.SNOOZED));
+		assertEquals("batch note", results.get(19).getSnooze().getNotes().get(0).getContent());
+		// allow for one more round trip to the id sequence, depending on where the allocation boundary falls
+		assertTrue(largeStatements + " statements vs " + smallStatements, largeStatements <= smallStatements + 1);
+	}
+
+	@Test
+	public void endActiveSnoozes_snoozedAndNot_outcomesInRequestOrder() {
+		List<String> receipts = initCases("E", 2);
+		_service.updateSnooze(SYSTEM_TAG, receipts.get(1), new SnoozeRequest("SLEEPY", 1));
+		List<BatchSnoozeResult> results = _service.endActiveSnoozes(SYSTEM_TAG,
+			Arrays.asList(receipts.get(1), "NOPE", receipts.get(0), receipts.get(1)));
+		assertEquals(3, results.size());
+		assertEquals(Outcome.ENDED, results.get(0).getOutcome());
+		assertEquals(Outcome.NOT_FOUND, results.get(1).getOutcome());
+		assertEquals(Outcome.NOT_SNOOZED, results.get(2).getOutcome());
+		assertFalse(_service.findActiveSnooze(SYSTEM_TAG, receipts.get(1)).isPresent());
+	}
+
+	@Test
+	public void endActiveSnoozes_someSnoozed_oneEventForTheGroup() {
+		List<String> receipts = initCases("E", 3);
+		_service.updateSnooze(SYSTEM_TAG, receipts.get(0), new SnoozeRequest("SLEEPY", 1));
+		_service.updateSnooze(SYSTEM_TAG, receipts.get(2), new SnoozeRequest("SLEEPY", 1));
+		ApplicationEventPublisher publisher = watchEvents();
+		_service.endActiveSnoozes(SYSTEM_TAG, receipts);
+		ArgumentCaptor<CaseGroupChange> published = ArgumentCaptor.forClass(CaseGroupChange.class);
+		Mockito.verify(publisher).publishEvent(published.capture());
+		assertEquals(ChangeType.SNOOZE_ENDED, published.getValue().getChangeType());
+		assertEquals(_system.getInternalId(), published.getValue().getCaseManagementSystemId());
+		assertEquals(_type.getInternalId(), published.getValue().getCaseTypeId());
+	}
+
+	@Test
+	public void endActiveSnoozes_nothingSnoozed_noEvent() {
+		List<String> receipts = initCases("E", 2);
+		ApplicationEventPublisher publisher = watchEvents();
+		List<BatchSnoozeResult> results = _service.endActiveSnoozes(SYSTEM_TAG, receipts);
+		assertEquals(Outcome.NOT_SNOOZED, results.get(0).getOutcome());
+		assertEquals(Outcome.NOT_SNOOZED, results.get(1).getOutcome());
+		Mockito.verify(publisher, Mockito.never()).publishEvent(ArgumentMatchers.any(Object.class));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void endActiveSnoozes_tooManyCases_rejected() {
+		List<String> receipts = new ArrayList<>();
+		for (int i = 0; i <= CaseDetailsService.MAX_BATCH_SIZE; i++) {
+			receipts.add("R" + i);
+		}
+		_service.endActiveSnoozes(SYSTEM_TAG, receipts);
+	}
+
+	/** Swap in a publisher that records the events the service publishes (and still passes them on). */
+	private ApplicationEventPublisher watchEvents() {
+		CaseDetailsService target = AopTestUtils.getUltimateTargetObject(_service);
+		_originalPublisher = (ApplicationEventPublisher) ReflectionTestUtils.getField(target, "_eventPublisher");
+		ApplicationEventPublisher watching = Mockito.mock(ApplicationEventPublisher.class,
+			AdditionalAnswers.delegatesTo(_originalPublisher));
+		ReflectionTestUtils.setField(target, "_eventPublisher", watching);
+		return watching;
+	}
+
+	private List<String> initCases(String prefix, int count) {
+		List<String> receipts = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			String receiptNumber = prefix + i;
+			_dataService.initCaseAndOpenIssue(_system, receiptNumber, _type, _now.minusMonths(1), "BATCHED");
+			receipts.add(receiptNumber);
+		}
+		return receipts;
+	}
+
+	private static BatchSnoozeRequest batchWithNote(List<String> receiptNumbers) {
+		BatchSnoozeRequest request = new BatchSnoozeRequest("BATCHED", 2, receiptNumbers);
+		request.getNotes().add(new AttachmentRequest(AttachmentType.COMMENT, "batch note"));
+		return request;
+	}
+
+	@Test(expected=ApiModelNotFoundException.class)
+	public void findCaseDetails_noSuchSystem_notFound() {
+		_service.findCaseDetails("NOPE", "D0001");
+	}
+
+	@Test(expected=ApiModelNotFoundException.class)
+	public void findCaseDetails_noSuchCase_notFound() {
+		_service.findCaseDetails(SYSTEM_TAG, "NOPE");
+	}
+}
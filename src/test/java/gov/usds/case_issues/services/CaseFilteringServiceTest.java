@@ -7,6 +7,7 @@ import static gov.usds.case_issues.test_util.CaseListFixtureService.START_DATE;
 import static gov.usds.case_issues.test_util.CaseListFixtureService.SYSTEM;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
@@ -32,6 +33,7 @@ import gov.usds.case_issues.model.CaseSnoozeFilter;
 import gov.usds.case_issues.model.CaseSummary;
 import gov.usds.case_issues.model.DateRange;
 import gov.usds.case_issues.services.model.CaseFilter;
+import gov.usds.case_issues.services.model.DelegatingFilterableCaseSummary;
 import gov.usds.case_issues.test_util.CaseIssueApiTestBase;
 import gov.usds.case_issues.test_util.CaseListFixtureService;
 import gov.usds.case_issues.test_util.CaseListFixtureService.FixtureAttachment;
@@ -282,6 +284,46 @@ public class CaseFilteringServiceTest extends CaseIssueApiTestBase {
 		}
 	}
 
+	@Test
+	public void getActiveCases_walkThroughWithPageReferences_correctResults() {
+		assertWalkThrough(CaseSnoozeFilter.ACTIVE, Arrays.asList(
+			FixtureCase.ACTIVE01, FixtureCase.DESNOOZED02, FixtureCase.DESNOOZED01,
+			FixtureCase.ACTIVE04, FixtureCase.ACTIVE02, FixtureCase.ACTIVE03,
+			FixtureCase.DESNOOZED03, FixtureCase.ACTIVE05, FixtureCase.DESNOOZED04
+		));
+	}
+
+	@Test
+	public void getSnoozedCases_walkThroughWithPageReferences_correctResults() {
+		assertWalkThrough(CaseSnoozeFilter.SNOOZED, Arrays.asList(
+			FixtureCase.SNOOZED05, FixtureCase.SNOOZED02, FixtureCase.SNOOZED01,
+			FixtureCase.SNOOZED04, FixtureCase.SNOOZED03));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void getActiveCases_forgedPageReference_exception() {
+		_service.getCases(SYSTEM, CASE_TYPE, Collections.singleton(CaseSnoozeFilter.ACTIVE), PAGE_SIZE,
+			Optional.empty(), Optional.of(PageCursorService.CURSOR_PREFIX + "bm90LWEtcmVhbC1jdXJzb3ItYXQtYWxsLWZvci1zdXJlLXJlYWxseQ"),
+			Collections.emptyList());
+	}
+
+	private void assertWalkThrough(CaseSnoozeFilter filter, List<FixtureCase> expected) {
+		List<FixtureCase> found = new ArrayList<>();
+		Optional<String> pageReference = Optional.empty();
+		while (found.size() <= expected.size()) {
+			List<CaseSummary> page = _service.getCases(SYSTEM, CASE_TYPE, Collections.singleton(filter), 2,
+				Optional.empty(), pageReference, Collections.emptyList());
+			if (page.isEmpty()) {
+				break;
+			}
+			page.forEach(c -> found.add(FixtureCase.valueOf(c.getReceiptNumber())));
+			String nextReference = ((DelegatingFilterableCaseSummary) page.get(page.size() - 1)).getPageReference();
+			assertTrue(PageCursorService.isCursor(nextReference));
+			pageReference = Optional.of(nextReference);
+		}
+		assertEquals(expected, found);
+	}
+
 	@Test(expected = IllegalArgumentException.class)
 	public void getSnoozedCases_invalidPageActiveCase_exception() {
 		wrapCaseFetch(CaseSnoozeFilter.SNOOZED, FixtureCase.ACTIVE01);
@@ -0,0 +1,78 @@
+package gov.usds.case_issues.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import gov.usds.case_issues.db.model.CaseType;
+import gov.usds.case_issues.services.model.CaseGroupInfo;
+
+@SuppressWarnings("checkstyle:MagicNumber")
+public class CaseGroupCacheTest {
+
+	private final AtomicInteger _loads = new AtomicInteger();
+	private final Supplier<CaseGroupInfo> _loader = () -> {
+		_loads.incrementAndGet();
+		return new CaseGroupInfo(1L, "SYS", 2L, "TYPE");
+	};
+
+	@Test
+	public void get_repeatedLookup_loadedOnce() {
+		CaseGroupCache cache = new CaseGroupCache(2, Duration.ofMinutes(1));
+		CaseGroupInfo first = cache.get("SYS", "TYPE", _loader);
+		assertSame(first, cache.get("SYS", "TYPE", _loader));
+		assertEquals(1, _loads.get());
+	}
+
+	@Test
+	public void get_expiredEntry_reloaded() {
+		CaseGroupCache cache = new CaseGroupCache(2, Duration.ZERO);
+		cache.get("SYS", "TYPE", _loader);
+		cache.get("SYS", "TYPE", _loader);
+		assertEquals(2, _loads.get());
+	}
+
+	@Test
+	public void get_cacheFull_leastRecentlyUsedDropped() {
+		CaseGroupCache cache = new CaseGroupCache(2, Duration.ofMinutes(1));
+		cache.get("SYS", "A", _loader);
+		cache.get("SYS", "B", _loader);
+		cache.get("SYS", "A", _loader);
+		cache.get("SYS", "C", _loader); // pushes out B
+		assertEquals(3, _loads.get());
+		cache.get("SYS", "A", _loader);
+		assertEquals(3, _loads.get());
+		cache.get("SYS", "B", _loader);
+		assertEquals(4, _loads.get());
+	}
+
+	@Test
+	public void caseTypeChanged_cachedEntry_reloaded() {
+		CaseGroupCache cache = new CaseGroupCache(2, Duration.ofMinutes(1));
+		cache.get("SYS", "TYPE", _loader);
+		cache.caseTypeChanged(Mockito.mock(CaseType.class));
+		cache.get("SYS", "TYPE", _loader);
+		assertEquals(2, _loads.get());
+	}
+
+	@Test
+	public void get_clearedDuringLoad_loadedValueNotCached() {
+		CaseGroupCache cache = new CaseGroupCache(2, Duration.ofMinutes(1));
+		CaseGroupInfo stale = cache.get("SYS", "TYPE", () -> {
+			_loads.incrementAndGet();
+			cache.caseTypeChanged(Mockito.mock(CaseType.class)); // the change lands while this lookup is running
+			return new CaseGroupInfo(1L, "SYS", 2L, "OLD-TYPE");
+		});
+		assertEquals("OLD-TYPE", stale.getCaseTypeTag());
+		CaseGroupInfo reloaded = cache.get("SYS", "TYPE", _loader);
+		assertEquals(2, _loads.get());
+		assertEquals("TYPE", reloaded.getCaseTypeTag());
+		assertSame(reloaded, cache.get("SYS", "TYPE", _loader));
+	}
+}
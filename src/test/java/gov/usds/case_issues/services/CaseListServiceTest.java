@@ -13,11 +13,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import javax.validation.ConstraintViolationException;
 
@@ -26,6 +28,8 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.test.context.support.WithMockUser;
 
@@ -38,6 +42,8 @@ import gov.usds.case_issues.db.model.TroubleCase;
 import gov.usds.case_issues.db.model.UploadStatus;
 import gov.usds.case_issues.db.model.projections.CaseIssueSummary;
 import gov.usds.case_issues.db.repositories.CaseIssueRepository;
+import gov.usds.case_issues.db.repositories.CaseManagementSystemRepository;
+import gov.usds.case_issues.db.repositories.CaseTypeRepository;
 import gov.usds.case_issues.db.repositories.TroubleCaseRepository;
 import gov.usds.case_issues.model.ApiModelNotFoundException;
 import gov.usds.case_issues.model.CaseRequest;
@@ -45,6 +51,7 @@ import gov.usds.case_issues.model.CaseSnoozeFilter;
 import gov.usds.case_issues.model.CaseSummary;
 import gov.usds.case_issues.services.model.CaseGroupInfo;
 import gov.usds.case_issues.test_util.CaseIssueApiTestBase;
+import gov.usds.case_issues.test_util.StatementCounter;
 
 @SuppressWarnings("checkstyle:MagicNumber")
 public class CaseListServiceTest extends CaseIssueApiTestBase {
@@ -59,7 +66,17 @@ public class CaseListServiceTest extends CaseIssueApiTestBase {
 	@Autowired
 	private TroubleCaseRepository _caseRepo;
 	@Autowired
+	private CaseManagementSystemRepository _systemRepo;
+	@Autowired
+	private CaseTypeRepository _typeRepo;
+	@Autowired
 	private CaseIssueRepository _issueRepo;
+	@Autowired
+	private StatementCounter _statementCounter;
+	@Autowired
+	private JdbcTemplate _jdbc;
+	@Value("${spring.jpa.properties.hibernate.default_schema:public}")
+	private String _schema;
 
 	@Rule
 	public ExpectedException expected = ExpectedException.none();
@@ -116,6 +133,8 @@ public class CaseListServiceTest extends CaseIssueApiTestBase {
 		CaseGroupInfo translated = _service.translatePath(VALID_SYS_TAG, VALID_TYPE_TAG);
 		assertEquals("Case management system ID", _system.getInternalId(), translated.getCaseManagementSystemId());
 		assertEquals("Case type ID", _type.getInternalId(), translated.getCaseTypeId());
+		assertEquals("Case management system tag", VALID_SYS_TAG, translated.getCaseManagementSystemTag());
+		assertEquals("Case type tag", VALID_TYPE_TAG, translated.getCaseTypeTag());
 	}
 
 	@Test
@@ -134,6 +153,96 @@ public class CaseListServiceTest extends CaseIssueApiTestBase {
 		_service.getCases(VALID_SYS_TAG, "hello\nworld", "Woof");
 	}
 
+	@Test
+	public void getSummaryInfo_mixedCases_correctCounts() {
+		initSummaryCases();
+		Map<String, Object> summary = _service.getSummaryInfo(VALID_SYS_TAG, VALID_TYPE_TAG);
+		assertEquals(2L, ((Number) summary.get("NEVER_SNOOZED")).longValue());
+		assertEquals(1L, ((Number) summary.get("PREVIOUSLY_SNOOZED")).longValue());
+		assertEquals(1L, ((Number) summary.get("CURRENTLY_SNOOZED")).longValue());
+	}
+
+	@Test
+	public void getSummaryInfo_countsRead_nothingWritten() {
+		initSummaryCases();
+		int ledgerRows = countLedgerRows();
+		_service.getSummaryInfo(VALID_SYS_TAG, VALID_TYPE_TAG);
+		assertEquals(ledgerRows, countLedgerRows());
+	}
+
+	@Test
+	@WithMockUser(authorities="UPDATE_ISSUES")
+	public void getSummaryInfo_afterUpload_ledgerCompactedCountsKept() {
+		initSummaryCases();
+		List<CaseRequest> newIssueCases = Arrays.asList(new CaseRequestImpl("COMPACT1"), new CaseRequestImpl("COMPACT2"));
+		wrappedPutIssueList(VALID_SYS_TAG, VALID_TYPE_TAG, "COMPACTED", newIssueCases, _now);
+		assertEquals(1, countLedgerRows());
+		Map<String, Object> summary = _service.getSummaryInfo(VALID_SYS_TAG, VALID_TYPE_TAG);
+		assertEquals(4L, ((Number) summary.get("NEVER_SNOOZED")).longValue());
+		assertEquals(1L, ((Number) summary.get("PREVIOUSLY_SNOOZED")).longValue());
+		assertEquals(1L, ((Number) summary.get("CURRENTLY_SNOOZED")).longValue());
+	}
+
+	@Test
+	@WithMockUser(authorities="UPDATE_ISSUES")
+	public void getHitlistVersion_afterUpload_ledgerCompactedVersionUp() {
+		List<TroubleCase> cases = initSummaryCases();
+		long before = getHitlistVersion();
+		_dataService.snoozeCase(cases.get(0));
+		long snoozed = getHitlistVersion();
+		assertTrue(snoozed > before);
+		List<CaseRequest> newIssueCases = Arrays.asList(new CaseRequestImpl("COMPACT1"), new CaseRequestImpl("COMPACT2"));
+		wrappedPutIssueList(VALID_SYS_TAG, VALID_TYPE_TAG, "COMPACTED", newIssueCases, _now);
+		assertEquals(1, countVersionLedgerRows());
+		assertTrue(getHitlistVersion() > snoozed);
+	}
+
+	@Test
+	public void getSummaryInfo_caseSnoozed_countsUpdated() {
+		List<TroubleCase> cases = initSummaryCases();
+		_dataService.snoozeCase(cases.get(0));
+		Map<String, Object> summary = _service.getSummaryInfo(VALID_SYS_TAG, VALID_TYPE_TAG);
+		assertEquals(1L, ((Number) summary.get("NEVER_SNOOZED")).longValue());
+		assertEquals(2L, ((Number) summary.get("CURRENTLY_SNOOZED")).longValue());
+	}
+
+	@Test
+	public void getSummaryInfo_issueClosed_countsUpdated() {
+		List<TroubleCase> cases = initSummaryCases();
+		CaseIssue issue = _issueRepo.findActiveIssues(_system, _type, "SUMMARIZED").stream()
+			.filter(i -> i.getIssueCase().getInternalId().equals(cases.get(1).getInternalId()))
+			.findFirst().get();
+		issue.setIssueClosed(_now);
+		_issueRepo.save(issue);
+		assertEquals(1L, ((Number) _service.getSummaryInfo(VALID_SYS_TAG, VALID_TYPE_TAG).get("NEVER_SNOOZED")).longValue());
+	}
+
+	private List<TroubleCase> initSummaryCases() {
+		List<TroubleCase> cases = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			cases.add(_dataService.initCaseAndOpenIssue(_system, "SUMMARY" + i, _type, _now.minusDays(i), "SUMMARIZED"));
+		}
+		_dataService.snoozeCase(cases.get(2), "PAST", 1, true);
+		_dataService.snoozeCase(cases.get(3));
+		// a case with no open issue is not counted at all
+		_dataService.initCase(_system, "SUMMARY_CLOSED", _type, _now);
+		return cases;
+	}
+
+	private int countLedgerRows() {
+		return _jdbc.queryForObject("SELECT COUNT(*) FROM " + _schema + ".case_group_count_change", Integer.class);
+	}
+
+	private int countVersionLedgerRows() {
+		return _jdbc.queryForObject("SELECT COUNT(*) FROM " + _schema + ".case_group_version_change "
+			+ "WHERE case_management_system_internal_id = ? AND case_type_internal_id = ?",
+			Integer.class, _system.getInternalId(), _type.getInternalId());
+	}
+
+	private long getHitlistVersion() {
+		return ((Number) _caseRepo.getHitlistVersion(_system.getInternalId(), _type.getInternalId()).get(0)[0]).longValue();
+	}
+
 	@Test(expected=ConstraintViolationException.class)
 	public void getSummaryInfo_invalidSystemTag_exception() {
 		_service.getSummaryInfo("hello\nworld", VALID_TYPE_TAG);
@@ -148,17 +257,16 @@ public class CaseListServiceTest extends CaseIssueApiTestBase {
 	public void getCases_exactReceiptNumber_returnsCaseWithQueriedReceiptNumber() {
 		String receiptNumber = "ABC1234567";
 
-		CaseGroupInfo translated = _service.translatePath(VALID_SYS_TAG, VALID_TYPE_TAG);
 		_dataService.initCase(
-			translated.getCaseManagementSystem(),
+			_system,
 			receiptNumber,
-			translated.getCaseType(),
+			_type,
 			_now
 		);
 		_dataService.initCase(
-			translated.getCaseManagementSystem(),
+			_system,
 			"XYZ8901234",
-			translated.getCaseType(),
+			_type,
 			_now
 		);
 
@@ -357,6 +465,59 @@ public class CaseListServiceTest extends CaseIssueApiTestBase {
 		assertEquals("Other list remains intact", 3, fetchCasesForSystem(otherSystem).size());
 	}
 
+	@Test
+	@WithMockUser(authorities="UPDATE_ISSUES")
+	public void putIssueStream_multipleChunks_issuesCreatedAndClosed() {
+		String issueType = "PLENTIFUL";
+		int requestCount = CaseListService.UPLOAD_CHUNK_SIZE + 5;
+		_dataService.initOpenIssue(_dataService.initCase(_system, "Z1", _type, _now.minusMonths(1)), issueType);
+		List<CaseRequest> requested = IntStream.range(0, requestCount)
+			.mapToObj(i -> new CaseRequestImpl("S" + i))
+			.collect(Collectors.toList());
+
+		CaseIssueUpload uploadInfo = wrappedPutIssueStream(VALID_SYS_TAG, VALID_TYPE_TAG, issueType, requested.iterator(), _now);
+		assertEquals(UploadStatus.SUCCESSFUL, uploadInfo.getUploadStatus());
+		assertEquals(requestCount, uploadInfo.getUploadedRecordCount());
+		assertEquals(Long.valueOf(requestCount), uploadInfo.getNewIssueCount());
+		assertEquals(Long.valueOf(1), uploadInfo.getClosedIssueCount());
+		assertTrue(_caseRepo.findByCaseManagementSystemAndReceiptNumber(_system, "Z1").get().getOpenIssues().isEmpty());
+
+		uploadInfo = wrappedPutIssueStream(VALID_SYS_TAG, VALID_TYPE_TAG, issueType, requested.subList(0, 10).iterator(), _now);
+		assertEquals(10, uploadInfo.getUploadedRecordCount());
+		assertEquals(Long.valueOf(0), uploadInfo.getNewIssueCount());
+		assertEquals(Long.valueOf(requestCount - 10), uploadInfo.getClosedIssueCount());
+		assertEquals(10, fetchCasesForSystem(VALID_SYS_TAG).size());
+	}
+
+	@Test
+	@WithMockUser(authorities="UPDATE_ISSUES")
+	public void putIssueStream_largeUpload_statementCountBounded() {
+		int requestCount = 10_000;
+		int chunkCount = requestCount / CaseListService.UPLOAD_CHUNK_SIZE;
+		List<CaseRequest> requested = IntStream.range(0, requestCount)
+			.mapToObj(i -> new CaseRequestImpl("L" + i))
+			.collect(Collectors.toList());
+		CaseIssueUpload uploadInfo = new CaseIssueUpload(_system, _type, "NUMEROUS", _now, 0);
+
+		_statementCounter.reset();
+		uploadInfo = _service.putIssueStream(uploadInfo, requested.iterator());
+		long statements = _statementCounter.getExecutionCount();
+		assertEquals(Long.valueOf(requestCount), uploadInfo.getNewIssueCount());
+		// two statements to stage each chunk and one to record progress, and a fixed number for everything else:
+		// nothing per row
+		assertTrue("Expected a bounded number of statements, but found " + statements,
+			statements <= 3 * chunkCount + 20);
+	}
+
+	@Test
+	@WithMockUser(authorities="UPDATE_ISSUES")
+	public void putIssueStream_duplicateReceipt_exception() {
+		expected.expect(IllegalArgumentException.class);
+		expected.expectMessage("(A2)");
+		List<CaseRequest> requested = Arrays.asList(new CaseRequestImpl("A1"), new CaseRequestImpl("A2"), new CaseRequestImpl("A2"));
+		wrappedPutIssueStream(VALID_SYS_TAG, VALID_TYPE_TAG, "DOUBLED", requested.iterator(), _now);
+	}
+
 	@Test()
 	public void getUploadFormat_formatIdNull_DefaultFormat() {
 		DataFormatSpec uploadFormat = _service.getUploadFormat(null);
@@ -403,11 +564,19 @@ public class CaseListServiceTest extends CaseIssueApiTestBase {
 	private CaseIssueUpload wrappedPutIssueList(String systemTag, String caseTypeTag, String issueTypeTag,
 			List<CaseRequest> newIssueCases, ZonedDateTime eventDate) {
 		CaseGroupInfo translated = _service.translatePath(systemTag, caseTypeTag);
-		CaseIssueUpload uploadInfo = new CaseIssueUpload(translated.getCaseManagementSystem(),
-		    translated.getCaseType(), issueTypeTag, eventDate, newIssueCases.size());
+		CaseIssueUpload uploadInfo = new CaseIssueUpload(_systemRepo.findById(translated.getCaseManagementSystemId()).get(),
+		    _typeRepo.findById(translated.getCaseTypeId()).get(), issueTypeTag, eventDate, newIssueCases.size());
 		return _service.putIssueList(uploadInfo, newIssueCases);
 	}
 
+	private CaseIssueUpload wrappedPutIssueStream(String systemTag, String caseTypeTag, String issueTypeTag,
+			Iterator<? extends CaseRequest> newIssueCases, ZonedDateTime eventDate) {
+		CaseGroupInfo translated = _service.translatePath(systemTag, caseTypeTag);
+		CaseIssueUpload uploadInfo = new CaseIssueUpload(_systemRepo.findById(translated.getCaseManagementSystemId()).get(),
+		    _typeRepo.findById(translated.getCaseTypeId()).get(), issueTypeTag, eventDate, 0);
+		return _service.putIssueStream(uploadInfo, newIssueCases);
+	}
+
 	private List<? extends CaseSummary> fetchCasesForSystem(String systemTag) {
 		return fetchCasesForSystem(systemTag, null);
 	}
@@ -3,13 +3,23 @@ package gov.usds.case_issues.services;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
 import java.time.ZonedDateTime;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.test.context.support.WithMockUser;
@@ -19,11 +29,12 @@ import gov.usds.case_issues.db.model.CaseIssueUpload;
 import gov.usds.case_issues.db.model.CaseManagementSystem;
 import gov.usds.case_issues.db.model.CaseType;
 import gov.usds.case_issues.db.model.UploadStatus;
-import gov.usds.case_issues.db.repositories.CaseIssueRepository;
+import gov.usds.case_issues.db.repositories.CaseIssueUploadRepository;
 import gov.usds.case_issues.model.CaseRequest;
 import gov.usds.case_issues.services.model.CaseGroupInfo;
 import gov.usds.case_issues.test_util.CaseIssueApiTestBase;
 import gov.usds.case_issues.test_util.MockConfig;
+import io.micrometer.core.instrument.MeterRegistry;
 
 @ActiveProfiles(MockConfig.WRAPPED_REPOSITORIES_PROFILE)
 @WithMockUser(authorities="UPDATE_ISSUES")
@@ -34,7 +45,9 @@ public class IssueUploadServiceTest extends CaseIssueApiTestBase {
 	@Autowired
 	private UploadStatusService _statusService;
 	@Autowired
-	private CaseIssueRepository _wrappedIssueRepo;
+	private CaseIssueUploadRepository _wrappedUploadRepo;
+	@Autowired
+	private MeterRegistry _meterRegistry;
 	
 	private static final Long ZERO = Long.valueOf(0);
 
@@ -62,8 +75,10 @@ public class IssueUploadServiceTest extends CaseIssueApiTestBase {
 
 	@Test
 	public void putIssueList_exception_expectedResult() {
-		Mockito.when(_wrappedIssueRepo.findActiveIssues(_system, _type, "BOOP"))
-			.thenThrow(new IllegalArgumentException("check out this unchecked exception"));
+		Mockito.doThrow(new IllegalArgumentException("check out this unchecked exception"))
+			.when(_wrappedUploadRepo).closeUnstagedIssues(ArgumentMatchers.any(), ArgumentMatchers.eq(_system.getInternalId()),
+				ArgumentMatchers.eq(_type.getInternalId()), ArgumentMatchers.eq("BOOP"),
+				ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any());
 		List<CaseRequest> requested = Collections.emptyList();
 		CaseIssueUpload uploaded = _uploadService.putIssueList(new CaseGroupInfo(_system, _type), "BOOP", requested, _now);
 		assertEquals(UploadStatus.FAILED, uploaded.getUploadStatus());
@@ -73,4 +88,93 @@ public class IssueUploadServiceTest extends CaseIssueApiTestBase {
 		assertNull(refetched.getClosedIssueCount());
 		assertNull(refetched.getNewIssueCount());
 	}
+
+	@Test
+	@SuppressWarnings("checkstyle:MagicNumber")
+	public void submitIssueStream_unreadableInput_failedAndClosed() {
+		AtomicBoolean closed = new AtomicBoolean();
+		IssueUploadService.DeferredUpload input = new IssueUploadService.DeferredUpload() {
+			@Override
+			public Iterator<? extends CaseRequest> open() throws IOException {
+				throw new IOException("this input is unavailable");
+			}
+
+			@Override
+			public void close() {
+				closed.set(true);
+			}
+		};
+		CaseIssueUpload started = _uploadService.submitIssueStream(new CaseGroupInfo(_system, _type), "BOOP", input, _now);
+		assertEquals(UploadStatus.STARTED, started.getUploadStatus());
+		await().atMost(5, TimeUnit.SECONDS).until(
+			() -> _statusService.readUploadInformation(started.getInternalId()).getUploadStatus(),
+			equalTo(UploadStatus.FAILED));
+		assertTrue(closed.get());
+	}
+
+	@Test
+	public void putIssueList_newCase_metricsRecorded() {
+		CaseRequest request = new CaseRequest() {
+			@Override
+			public String getReceiptNumber() {
+				return "METERED01";
+			}
+
+			@Override
+			public ZonedDateTime getCaseCreation() {
+				return _now.minusDays(1);
+			}
+
+			@Override
+			public Map<String, Object> getExtraData() {
+				return new HashMap<>();
+			}
+		};
+		CaseIssueUpload uploaded = _uploadService.putIssueList(new CaseGroupInfo(_system, _type), "METERED",
+			Collections.singletonList(request), _now);
+		assertEquals(UploadStatus.SUCCESSFUL, uploaded.getUploadStatus());
+		// parsing is done by whoever reads the input (here, the test), so it is not timed by the service
+		assertNull(_meterRegistry.find(UploadMetricsService.PHASE_TIMER).tags("issueType", "METERED",
+			"phase", UploadMetricsService.PHASE_PARSE).timer());
+		for (String phase : new String[] {UploadMetricsService.PHASE_STAGE, UploadMetricsService.PHASE_CLOSE, UploadMetricsService.PHASE_INSERT, UploadMetricsService.PHASE_OPEN}) {
+			assertEquals(phase, 1, _meterRegistry.get(UploadMetricsService.PHASE_TIMER)
+				.tags("system", "BIPPITY", "caseType", "BOPPITY", "issueType", "METERED", "phase", phase)
+				.timer().count());
+		}
+		assertEquals(1.0, rowCount("METERED", "new-cases"), 0.0);
+		assertEquals(1.0, rowCount("METERED", "new-issues"), 0.0);
+		assertEquals(0.0, rowCount("METERED", "closed-issues"), 0.0);
+		assertEquals(1, _meterRegistry.get(UploadMetricsService.THROUGHPUT).tags("issueType", "METERED")
+			.summary().count());
+	}
+
+	@Test
+	public void putIssueList_exception_failureCounted() {
+		Mockito.doThrow(new IllegalArgumentException("check out this unchecked exception"))
+			.when(_wrappedUploadRepo).closeUnstagedIssues(ArgumentMatchers.any(), ArgumentMatchers.eq(_system.getInternalId()),
+				ArgumentMatchers.eq(_type.getInternalId()), ArgumentMatchers.eq("BROKEN"),
+				ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any());
+		_uploadService.putIssueList(new CaseGroupInfo(_system, _type), "BROKEN", Collections.emptyList(), _now);
+		assertEquals(1.0, _meterRegistry.get(UploadMetricsService.UPLOAD_COUNTER)
+			.tags("issueType", "BROKEN", "outcome", "failure").counter().count(), 0.0);
+	}
+
+	@Test
+	public void putIssueList_completionRolledBack_failureCountedNotSuccess() {
+		Mockito.doThrow(new IllegalStateException("could not save the finished upload"))
+			.when(_wrappedUploadRepo).save(ArgumentMatchers.argThat((CaseIssueUpload u) ->
+				"ROLLEDBACK".equals(u.getIssueType()) && u.getUploadStatus() == UploadStatus.SUCCESSFUL));
+		CaseIssueUpload uploaded = _uploadService.putIssueList(new CaseGroupInfo(_system, _type), "ROLLEDBACK",
+			Collections.emptyList(), _now);
+		assertEquals(UploadStatus.FAILED, uploaded.getUploadStatus());
+		assertNull(_meterRegistry.find(UploadMetricsService.UPLOAD_COUNTER)
+			.tags("issueType", "ROLLEDBACK", "outcome", "success").counter());
+		assertEquals(1.0, _meterRegistry.get(UploadMetricsService.UPLOAD_COUNTER)
+			.tags("issueType", "ROLLEDBACK", "outcome", "failure").counter().count(), 0.0);
+	}
+
+	private double rowCount(String issueType, String kind) {
+		return _meterRegistry.get(UploadMetricsService.ROW_COUNTER)
+			.tags("issueType", issueType, "kind", kind).counter().count();
+	}
 }
@@ -1,31 +1,85 @@
 package gov.usds.case_issues.services;
 
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import javax.validation.ConstraintViolationException;
+
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.AdditionalAnswers;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.mockito.stubbing.Answer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import gov.usds.case_issues.config.ExecutorConfig;
 import gov.usds.case_issues.db.model.CaseManagementSystem;
 import gov.usds.case_issues.db.model.CaseType;
 import gov.usds.case_issues.db.model.TroubleCase;
+import gov.usds.case_issues.db.repositories.BulkCaseRepository;
+import gov.usds.case_issues.model.SnoozeRequest;
+import gov.usds.case_issues.services.model.CaseGroupChange;
+import gov.usds.case_issues.services.model.CaseGroupInfo;
 import gov.usds.case_issues.test_util.CaseIssueApiTestBase;
+import io.micrometer.core.instrument.MeterRegistry;
 
 @SuppressWarnings("checkstyle:MagicNumber")
 public class KPIServiceTest extends CaseIssueApiTestBase {
 
 	@Autowired
 	private KPIService _KPIService;
+	@Autowired
+	private JdbcTemplate _jdbc;
+	@Autowired
+	private MeterRegistry _meterRegistry;
+	@Autowired
+	private ApplicationEventPublisher _eventPublisher;
+	@Autowired
+	private BulkCaseRepository _bulkRepo;
+	@Autowired
+	@Qualifier(ExecutorConfig.KPI_EXECUTOR)
+	private ThreadPoolTaskExecutor _kpiExecutor;
+	@Autowired
+	private IssueUploadService _uploadService;
+	@Autowired
+	private CaseDetailsService _detailsService;
+	@Value("${spring.jpa.properties.hibernate.default_schema:public}")
+	private String _schema;
 
 	private CaseManagementSystem _system;
 	private CaseType _type;
 	private static final ZonedDateTime START_DATE = ZonedDateTime.now();
 	private ArrayList<Integer> _emptyArray;
+	private final Map<String, Object> _overriddenSettings = new HashMap<>();
+	private final CountDownLatch _slowWeeksReleased = new CountDownLatch(1);
 
 	@Before
 	public void reset() {
@@ -36,6 +90,13 @@ public class KPIServiceTest extends CaseIssueApiTestBase {
 		Collections.addAll(_emptyArray, 0,0,0,0,0,0,0,0,0,0);
 	}
 
+	@After
+	public void restoreSettings() {
+		_slowWeeksReleased.countDown();
+		KPIService target = AopTestUtils.getUltimateTargetObject(_KPIService);
+		_overriddenSettings.forEach((field, value) -> ReflectionTestUtils.setField(target, field, value));
+	}
+
 	@Test
 	public void getKPIData_noData_allValuseZero() {
 		Map<String, Object> uploaded = _KPIService.getKPIData("BIPPITY", "BOPPITY", START_DATE);
@@ -45,6 +106,200 @@ public class KPIServiceTest extends CaseIssueApiTestBase {
 		assertEquals(_emptyArray, uploaded.get("DaysWorked"));
 	}
 
+	@Test
+	public void getKPIData_customWeeks_oneValuePerWeek() {
+		Map<String, Object> uploaded = _KPIService.getKPIData("BIPPITY", "BOPPITY", START_DATE, 4);
+		assertEquals(_emptyArray.subList(0, 4), uploaded.get("ResolvedTickets"));
+		assertEquals(_emptyArray.subList(0, 4), uploaded.get("DaysToResolution"));
+		assertEquals(_emptyArray.subList(0, 4), uploaded.get("DaysWorked"));
+	}
+
+	@Test(expected=ConstraintViolationException.class)
+	public void getKPIData_zeroWeeks_exception() {
+		_KPIService.getKPIData("BIPPITY", "BOPPITY", START_DATE, 0);
+	}
+
+	@Test(expected=ConstraintViolationException.class)
+	public void getKPIData_excessiveWeeks_exception() {
+		_KPIService.getKPIData("BIPPITY", "BOPPITY", START_DATE, KPIService.MAX_WEEKS + 1);
+	}
+
+	@Test
+	public void getKPIData_resolvedCasesInDifferentWeeks_bucketedByWeek() {
+		ZonedDateTime monday = START_DATE.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).minusWeeks(1);
+		// the extra hours keep daylight saving changes from shaving a day off the durations
+		TroubleCase recent = _dataService.initCaseAndIssue(_system, "RECENT", _type, monday.minusDays(20).minusHours(2), "PAGING",
+			monday.minusDays(2));
+		_dataService.snoozeCase(recent, "abc", 3, true);
+		TroubleCase older = _dataService.initCaseAndIssue(_system, "OLDER", _type, monday.minusDays(30).minusHours(2), "PAGING",
+			monday.minusDays(16));
+		_dataService.snoozeCase(older, "abc", 3, true);
+		// never snoozed, so not counted
+		_dataService.initCaseAndIssue(_system, "IGNORED", _type, monday.minusDays(30), "PAGING", monday.minusDays(2));
+
+		Map<String, Object> uploaded = _KPIService.getKPIData("BIPPITY", "BOPPITY", monday, 4);
+
+		assertEquals("resolved tickets", Arrays.asList(1, 0, 1, 0), uploaded.get("ResolvedTickets"));
+		assertEquals("days to resolution", Arrays.asList(18, 0, 14, 0), uploaded.get("DaysToResolution"));
+	}
+
+	@Test
+	public void getKPIData_issuesClosedInDifferentWeeks_eachCountedInItsOwnWeek() {
+		ZonedDateTime monday = START_DATE.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).minusWeeks(1);
+		ZonedDateTime created = monday.minusDays(20).minusHours(2);
+		TroubleCase tc = _dataService.initCaseAndIssue(_system, "TWICE", _type, created, "PAGING", monday.minusDays(2));
+		_dataService.initIssue(tc, "WIDGET", created, monday.minusDays(9));
+		_dataService.snoozeCase(tc, "abc", 3, true);
+
+		Map<String, Object> uploaded = _KPIService.getKPIData("BIPPITY", "BOPPITY", monday, 4);
+
+		assertEquals("resolved tickets", Arrays.asList(1, 1, 0, 0), uploaded.get("ResolvedTickets"));
+		assertEquals("days to resolution", Arrays.asList(18, 11, 0, 0), uploaded.get("DaysToResolution"));
+	}
+
+	@Test
+	public void getKPIData_nothingSaved_computedWithoutSaving() {
+		_KPIService.getKPIData("BIPPITY", "BOPPITY", START_DATE, 4);
+		assertEquals(0, countRollupRows());
+	}
+
+	@Test
+	public void refreshRollup_newCaseGroup_allWeeksSavedAndCompletedWeeksFrozen() {
+		_KPIService.refreshRollup(_system.getInternalId(), _type.getInternalId());
+		// the week in progress, and the last one (which has been over for less than a week), are not frozen
+		List<Boolean> frozen = _jdbc.queryForList(
+			"SELECT frozen FROM " + _schema + ".case_kpi_weekly_rollup ORDER BY week_start DESC", Boolean.class);
+		assertEquals(KPIService.MAX_WEEKS + 1, frozen.size());
+		assertEquals(Arrays.asList(false, false, true, true), frozen.subList(0, 4));
+		assertEquals(KPIService.MAX_WEEKS - 1, Collections.frequency(frozen, true));
+	}
+
+	@Test
+	public void getKPIData_savedWeeks_servedFromRollup() {
+		_KPIService.refreshRollup(_system.getInternalId(), _type.getInternalId());
+		// doctor the saved totals, so we can tell that the weeks were served from the rollup
+		_jdbc.update("UPDATE " + _schema + ".case_kpi_weekly_rollup SET resolved_count = 42");
+
+		Map<String, Object> uploaded = _KPIService.getKPIData("BIPPITY", "BOPPITY", START_DATE, 4);
+		assertEquals("resolved tickets", Arrays.asList(42, 42, 42, 42), uploaded.get("ResolvedTickets"));
+	}
+
+	@Test
+	public void refreshRollup_frozenWeeks_leftAlone() {
+		_KPIService.refreshRollup(_system.getInternalId(), _type.getInternalId());
+		_jdbc.update("UPDATE " + _schema + ".case_kpi_weekly_rollup SET resolved_count = 42");
+
+		_KPIService.refreshRollup(_system.getInternalId(), _type.getInternalId());
+		Map<String, Object> uploaded = _KPIService.getKPIData("BIPPITY", "BOPPITY", START_DATE, 4);
+		assertEquals("resolved tickets", Arrays.asList(0, 42, 42, 42), uploaded.get("ResolvedTickets"));
+	}
+
+	@Test
+	@WithMockUser(authorities="UPDATE_ISSUES")
+	public void caseGroupChanged_uploadBackdatedIntoFrozenWeek_weekRecomputed() {
+		ZonedDateTime backdated = threeWeeksAgo();
+		TroubleCase tc = _dataService.initCaseAndOpenIssue(_system, "BACKDATED", _type, backdated.minusDays(10), "PAGING");
+		_dataService.snoozeCase(tc);
+		_KPIService.refreshRollup(_system.getInternalId(), _type.getInternalId());
+
+		// closes the open issue as of three weeks ago, in a week that was frozen by the refresh
+		_uploadService.putIssueList(new CaseGroupInfo(_system, _type), "PAGING", Collections.emptyList(), backdated);
+		await().atMost(5, TimeUnit.SECONDS).until(() -> _KPIService.getKPIData("BIPPITY", "BOPPITY", START_DATE, 4)
+			.get("ResolvedTickets"), equalTo((Object) Arrays.asList(0, 0, 1, 0)));
+		assertEquals(1, countFrozenWeeksResolved());
+	}
+
+	@Test
+	@WithMockUser(authorities="UPDATE_CASES")
+	public void caseGroupChanged_firstSnoozeOnCaseClosedInFrozenWeek_weekRecomputed() {
+		ZonedDateTime closed = threeWeeksAgo();
+		_dataService.initCaseAndIssue(_system, "LATESNOOZE", _type, closed.minusDays(10), "PAGING", closed);
+		_KPIService.refreshRollup(_system.getInternalId(), _type.getInternalId());
+		assertEquals(0, countFrozenWeeksResolved());
+
+		_detailsService.updateSnooze("BIPPITY", "LATESNOOZE", new SnoozeRequest("DONT_WANNA", 3));
+		await().atMost(5, TimeUnit.SECONDS).until(() -> _KPIService.getKPIData("BIPPITY", "BOPPITY", START_DATE, 4)
+			.get("ResolvedTickets"), equalTo((Object) Arrays.asList(0, 0, 1, 0)));
+		assertEquals(1, countFrozenWeeksResolved());
+	}
+
+	@Test
+	public void refreshRollup_changeBeforeSavedWeeks_oldWeeksThrownOut() {
+		ZonedDateTime longAgo = ZonedDateTime.now().minusWeeks(KPIService.MAX_WEEKS + 10);
+		_KPIService.refreshRollup(_system.getInternalId(), _type.getInternalId(), longAgo);
+		// weeks that far back are only ever saved by a refresh anchored earlier, so save one by hand
+		_jdbc.update("INSERT INTO " + _schema + ".case_kpi_weekly_rollup (case_management_system_internal_id, "
+				+ "case_type_internal_id, week_start, resolved_count, closed_issue_count, resolution_days_sum, "
+				+ "worked_days_sum, computed_at, frozen) "
+				+ "VALUES (?, ?, date_trunc('week', CURRENT_TIMESTAMP AT TIME ZONE 'UTC') AT TIME ZONE 'UTC' - interval '110 weeks', "
+				+ "42, 0, 0, 0, CURRENT_TIMESTAMP, true)",
+			_system.getInternalId(), _type.getInternalId());
+		assertEquals(KPIService.MAX_WEEKS + 2, countRollupRows());
+
+		_KPIService.refreshRollup(_system.getInternalId(), _type.getInternalId(), longAgo);
+		assertEquals(KPIService.MAX_WEEKS + 1, countRollupRows());
+	}
+
+	@Test
+	public void caseGroupChanged_rollupRefreshedInBackground() {
+		_eventPublisher.publishEvent(CaseGroupChange.caseChanged(_system.getInternalId(), _type.getInternalId(),
+			CaseGroupChange.ChangeType.CASE_SNOOZED, "ABC123"));
+		await().atMost(5, TimeUnit.SECONDS).until(this::countRollupRows, equalTo(KPIService.MAX_WEEKS + 1));
+	}
+
+	@Test
+	public void getKPIData_manyWeeks_computedInChunks() {
+		long chunksBefore = _meterRegistry.timer("kpi.totals.compute").count();
+		Map<String, Object> uploaded = _KPIService.getKPIData("BIPPITY", "BOPPITY", START_DATE, 30);
+		assertEquals(Collections.nCopies(30, 0), uploaded.get("ResolvedTickets"));
+		assertEquals(0, countRollupRows());
+		// 13 weeks per task by default
+		assertEquals(3, _meterRegistry.timer("kpi.totals.compute").count() - chunksBefore);
+	}
+
+	@Test
+	public void getKPIData_slowWeeksPartialResults_nullForWeeksNotComputedInTime() {
+		stubSlowWeeks(true);
+		double partialBefore = _meterRegistry.counter("kpi.partial.results").count();
+		long started = System.nanoTime();
+		Map<String, Object> uploaded = _KPIService.getKPIData("BIPPITY", "BOPPITY", START_DATE, 30);
+		// well under the time the slow weeks are held up for
+		assertTrue(Duration.ofNanos(System.nanoTime() - started).getSeconds() < 10);
+
+		// only the first chunk of 13 weeks finishes
+		List<Integer> expected = new ArrayList<>(Collections.nCopies(13, 0));
+		expected.addAll(Collections.nCopies(17, (Integer) null));
+		assertEquals("resolved tickets", expected, uploaded.get("ResolvedTickets"));
+		assertEquals("days to resolution", expected, uploaded.get("DaysToResolution"));
+		assertEquals("days worked", expected, uploaded.get("DaysWorked"));
+		assertEquals(1, _meterRegistry.counter("kpi.partial.results").count() - partialBefore, 0);
+	}
+
+	@Test(expected=TaskRejectedException.class)
+	public void getKPIData_slowWeeksNoPartialResults_rejected() {
+		stubSlowWeeks(false);
+		_KPIService.getKPIData("BIPPITY", "BOPPITY", START_DATE, 30);
+	}
+
+	@Test
+	public void getKPIData_slowWeeksTimedOut_unfinishedChunksInterrupted() {
+		stubSlowWeeks(true);
+		_KPIService.getKPIData("BIPPITY", "BOPPITY", START_DATE, 30);
+		// the slow chunks are held up until the test is over, unless they are interrupted
+		await().atMost(5, TimeUnit.SECONDS).until(_kpiExecutor::getActiveCount, equalTo(0));
+	}
+
+	@Test
+	public void getKPIData_slowQueriesTimedOut_queriesStopped() {
+		// a query that is already running ignores interrupts, so only its timeout can stop it
+		stubSlowWeeks(invocation -> {
+			_jdbc.execute("SELECT pg_sleep(30)");
+			return Collections.emptyList();
+		}, true);
+		_KPIService.getKPIData("BIPPITY", "BOPPITY", START_DATE, 30);
+		await().atMost(5, TimeUnit.SECONDS).until(_kpiExecutor::getActiveCount, equalTo(0));
+	}
+
 	@Test
 	@org.junit.Ignore
 	public void getKPIData_oneResolvedCase_isReported() {
@@ -72,4 +327,46 @@ public class KPIServiceTest extends CaseIssueApiTestBase {
 		assertEquals("days to resolution", expectedDaysToResolution, uploaded.get("DaysToResolution"));
 		assertEquals("days worked", expectedDaysWorked, uploaded.get("DaysWorked"));
 	}
+
+	/** A time in the middle of the week that started three weeks before this one (in UTC, as the rollup is). */
+	private static ZonedDateTime threeWeeksAgo() {
+		return ZonedDateTime.now(ZoneOffset.UTC).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+			.truncatedTo(ChronoUnit.DAYS).minusWeeks(3).plusDays(2);
+	}
+
+	private int countFrozenWeeksResolved() {
+		return _jdbc.queryForObject("SELECT COALESCE(SUM(resolved_count), 0) FROM " + _schema
+			+ ".case_kpi_weekly_rollup WHERE frozen", Integer.class);
+	}
+
+	private int countRollupRows() {
+		return _jdbc.queryForObject("SELECT COUNT(*) FROM " + _schema + ".case_kpi_weekly_rollup", Integer.class);
+	}
+
+	/**
+	 * Make computing any chunk of weeks but the first wait until the test is over, and stop waiting for the
+	 * computation after half a second.
+	 */
+	private void stubSlowWeeks(boolean partialResults) {
+		stubSlowWeeks(invocation -> {
+			_slowWeeksReleased.await(30, TimeUnit.SECONDS);
+			return Collections.emptyList();
+		}, partialResults);
+	}
+
+	/** Compute any chunk of weeks but the first with slowWeeks, and stop waiting for the computation after half a second. */
+	private void stubSlowWeeks(Answer<?> slowWeeks, boolean partialResults) {
+		BulkCaseRepository slowRepo = Mockito.mock(BulkCaseRepository.class, AdditionalAnswers.delegatesTo(_bulkRepo));
+		Mockito.doAnswer(slowWeeks).when(slowRepo).getKPITotals(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(),
+			ArgumentMatchers.intThat(firstWeek -> firstWeek > 0), ArgumentMatchers.anyInt());
+		override("_bulkRepo", slowRepo);
+		override("_timeout", Duration.ofMillis(500));
+		override("_partialResults", partialResults);
+	}
+
+	private void override(String field, Object value) {
+		KPIService target = AopTestUtils.getUltimateTargetObject(_KPIService);
+		_overriddenSettings.putIfAbsent(field, ReflectionTestUtils.getField(target, field));
+		ReflectionTestUtils.setField(target, field, value);
+	}
 }
@@ -0,0 +1,116 @@
+package gov.usds.case_issues.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.ZonedDateTime;
+import java.util.Base64;
+import java.util.Optional;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import gov.usds.case_issues.services.model.CaseGroupInfo;
+import gov.usds.case_issues.services.model.CasePageKey;
+import gov.usds.case_issues.test_util.CaseIssueApiTestBase;
+
+@SuppressWarnings("checkstyle:MagicNumber")
+public class PageCursorServiceTest extends CaseIssueApiTestBase {
+
+	private static final ZonedDateTime CREATION = ZonedDateTime.parse("2019-12-01T10:15:30.123456Z");
+	private static final ZonedDateTime SNOOZE_END = ZonedDateTime.parse("2020-01-15T03:00:00.000001-05:00");
+
+	@Autowired
+	private PageCursorService _service;
+
+	private CaseGroupInfo _group;
+
+	@Before
+	public void setUp() {
+		_group = mockGroup(1L, 2L);
+	}
+
+	@Test
+	public void decode_snoozedCase_valuesPreserved() {
+		String cursor = _service.encode(_group, new CasePageKey(CREATION, "ABC123", SNOOZE_END));
+		assertTrue(cursor.matches(PageCursorService.CURSOR_PREFIX + "[-\\w]+"));
+		CasePageKey decoded = _service.decode(_group, cursor).get();
+		assertEquals(CREATION.toInstant(), decoded.getCaseCreation().toInstant());
+		assertEquals("ABC123", decoded.getReceiptNumber());
+		assertEquals(SNOOZE_END.toInstant(), decoded.getSnoozeEnd().toInstant());
+	}
+
+	@Test
+	public void decode_unsnoozedCase_noSnoozeEnd() {
+		String cursor = _service.encode(_group, new CasePageKey(CREATION, "ABC123", null));
+		CasePageKey decoded = _service.decode(_group, cursor).get();
+		assertEquals(CREATION.toInstant(), decoded.getCaseCreation().toInstant());
+		assertNull(decoded.getSnoozeEnd());
+	}
+
+	@Test
+	public void decode_receiptNumber_empty() {
+		assertFalse(_service.decode(_group, "ABC123").isPresent());
+		assertEquals(Optional.empty(), _service.decode(_group, null));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void decode_tamperedCursor_exception() {
+		String cursor = _service.encode(_group, new CasePageKey(CREATION, "ABC123", null));
+		byte[] raw = Base64.getUrlDecoder().decode(cursor.substring(PageCursorService.CURSOR_PREFIX.length()));
+		raw[raw.length / 2] ^= 1;
+		_service.decode(_group, PageCursorService.CURSOR_PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(raw));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void decode_truncatedCursor_exception() {
+		_service.decode(_group, PageCursorService.CURSOR_PREFIX + "AAAA");
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void decode_otherCaseType_exception() {
+		String cursor = _service.encode(_group, new CasePageKey(CREATION, "ABC123", null));
+		_service.decode(mockGroup(1L, 3L), cursor);
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void initializeKey_noKeyOutsideDevelopment_exception() {
+		PageCursorService unconfigured = new PageCursorService();
+		ReflectionTestUtils.setField(unconfigured, "_signingKey", "");
+		ReflectionTestUtils.setField(unconfigured, "_environment", new MockEnvironment());
+		unconfigured.initializeKey();
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void initializeKey_shortKey_exception() {
+		PageCursorService unconfigured = new PageCursorService();
+		ReflectionTestUtils.setField(unconfigured, "_signingKey", "too-short");
+		ReflectionTestUtils.setField(unconfigured, "_environment", new MockEnvironment());
+		unconfigured.initializeKey();
+	}
+
+	@Test
+	public void initializeKey_noKeyInDevelopment_randomKeyUsed() {
+		PageCursorService unconfigured = new PageCursorService();
+		MockEnvironment environment = new MockEnvironment();
+		environment.setActiveProfiles("dev");
+		ReflectionTestUtils.setField(unconfigured, "_signingKey", "");
+		ReflectionTestUtils.setField(unconfigured, "_environment", environment);
+		unconfigured.initializeKey();
+		String cursor = unconfigured.encode(_group, new CasePageKey(CREATION, "ABC123", null));
+		assertEquals("ABC123", unconfigured.decode(_group, cursor).get().getReceiptNumber());
+	}
+
+	private static CaseGroupInfo mockGroup(Long systemId, Long typeId) {
+		CaseGroupInfo group = Mockito.mock(CaseGroupInfo.class);
+		Mockito.when(group.getCaseManagementSystemId()).thenReturn(systemId);
+		Mockito.when(group.getCaseTypeId()).thenReturn(typeId);
+		return group;
+	}
+}
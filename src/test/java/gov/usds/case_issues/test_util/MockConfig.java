@@ -59,4 +59,14 @@ public class MockConfig {
 		LOG.info("Wiring up wrapper around {}", repo);
 		return Mockito.mock(CaseIssueUploadRepository.class, AdditionalAnswers.delegatesTo(repo));
 	}
+
+	/**
+	 * Wraps the {@link javax.sql.DataSource} so that tests can check how many round trips to the database an
+	 * operation takes. This is always on, rather than behind a profile, so those tests share the default context.
+	 */
+	@Bean
+	public static StatementCounter getStatementCounter() {
+		// static, since post-processors have to be created before the rest of this configuration
+		return new StatementCounter();
+	}
 }
@@ -7,6 +7,8 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
+import gov.usds.case_issues.services.CaseGroupCache;
+
 @Component
 public class PgDbTruncator implements DbTruncator {
 
@@ -29,6 +31,8 @@ public class PgDbTruncator implements DbTruncator {
 
 	@Autowired
 	private JdbcTemplate jdbc;
+	@Autowired
+	private CaseGroupCache caseGroupCache;
 
 	/* (non-Javadoc)
 	 * @see gov.usds.case_issues.test_util.DbTruncator#truncateAll()
@@ -37,5 +41,7 @@ public class PgDbTruncator implements DbTruncator {
 	@Transactional
 	public void truncateAll() {
 		jdbc.execute(String.format(TRUNCATE_FUNCTION_TEMPLATE, hibernateSchema));
+		// cached case groups refer to rows that are now gone
+		caseGroupCache.evictAll();
 	}
 }
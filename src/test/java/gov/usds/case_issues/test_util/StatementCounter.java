@@ -0,0 +1,158 @@
+package gov.usds.case_issues.test_util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+/**
+ * Wraps any {@link DataSource} in the application context so that tests can count the statements
+ * actually sent to the database (a JDBC batch counts once, since it is sent once), and optionally capture
+ * them so that their query plans can be checked.
+ * Registered for every test context by {@link MockConfig#getStatementCounter()}.
+ */
+public class StatementCounter implements BeanPostProcessor {
+
+	private final AtomicLong _executionCount = new AtomicLong();
+	private volatile List<CapturedStatement> _captured;
+
+	public void reset() {
+		_executionCount.set(0);
+	}
+
+	public long getExecutionCount() {
+		return _executionCount.get();
+	}
+
+	/** Start keeping the SQL and parameter values of every statement that is executed. */
+	public void startCapture() {
+		_captured = new CopyOnWriteArrayList<>();
+	}
+
+	/** Stop capturing statements, and return the ones executed since {@link #startCapture()}. */
+	public List<CapturedStatement> stopCapture() {
+		List<CapturedStatement> captured = _captured;
+		_captured = null;
+		return captured;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+		if (bean instanceof DataSource) {
+			return wrap(DataSource.class, bean, null);
+		}
+		return bean;
+	}
+
+	private Object wrap(Class<?> jdbcInterface, Object target, CapturedStatement statement) {
+		InvocationHandler handler = (proxy, method, args) -> intercept(target, method, args, statement);
+		return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {jdbcInterface}, handler);
+	}
+
+	private Object intercept(Object target, Method method, Object[] args, CapturedStatement statement) throws Throwable {
+		Object result;
+		try {
+			result = method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+		String methodName = method.getName();
+		if (statement != null && methodName.startsWith("set") && args != null && args.length >= 2
+				&& args[0] instanceof Integer) {
+			statement.bind(method, args);
+		}
+		if (target instanceof Statement && methodName.startsWith("execute")) {
+			_executionCount.incrementAndGet();
+			if (statement != null) {
+				capture(statement.copy());
+			} else if (args != null && args.length > 0 && args[0] instanceof String) {
+				capture(new CapturedStatement((String) args[0]));
+			}
+		}
+		Class<?> returnType = method.getReturnType();
+		if (returnType.isInterface()
+				&& (Connection.class.isAssignableFrom(returnType) || Statement.class.isAssignableFrom(returnType))) {
+			boolean prepared = PreparedStatement.class.isAssignableFrom(returnType) && args != null && args.length > 0
+				&& args[0] instanceof String;
+			return wrap(returnType, result, prepared ? new CapturedStatement((String) args[0]) : null);
+		}
+		return result;
+	}
+
+	private void capture(CapturedStatement statement) {
+		List<CapturedStatement> captured = _captured;
+		if (captured != null) {
+			captured.add(statement);
+		}
+	}
+
+	/**
+	 * The SQL of a statement that was executed, along with the parameter values it was executed with.
+	 */
+	public static class CapturedStatement {
+
+		private final String _sql;
+		private final Map<Integer, Object[]> _parameterArgs = new TreeMap<>();
+		private final Map<Integer, Method> _parameterSetters = new TreeMap<>();
+
+		private CapturedStatement(String sql) {
+			_sql = sql;
+		}
+
+		public String getSql() {
+			return _sql;
+		}
+
+		private void bind(Method setter, Object[] args) {
+			_parameterSetters.put((Integer) args[0], setter);
+			_parameterArgs.put((Integer) args[0], args.clone());
+		}
+
+		private CapturedStatement copy() {
+			CapturedStatement copy = new CapturedStatement(_sql);
+			copy._parameterSetters.putAll(_parameterSetters);
+			copy._parameterArgs.putAll(_parameterArgs);
+			return copy;
+		}
+
+		/**
+		 * Run EXPLAIN for this statement on the given connection, with the same parameter values, and
+		 * return the plan as text.
+		 */
+		public String explain(Connection conn) throws SQLException {
+			try (PreparedStatement explain = conn.prepareStatement("EXPLAIN " + _sql)) {
+				for (Map.Entry<Integer, Method> setter : _parameterSetters.entrySet()) {
+					try {
+						setter.getValue().invoke(explain, _parameterArgs.get(setter.getKey()));
+					} catch (InvocationTargetException e) {
+						throw new SQLException("Could not bind parameter " + setter.getKey(), e.getCause());
+					} catch (IllegalAccessException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+				StringBuilder lines = new StringBuilder();
+				try (ResultSet rs = explain.executeQuery()) {
+					while (rs.next()) {
+						lines.append(rs.getString(1)).append('\n');
+					}
+				}
+				return lines.toString();
+			}
+		}
+	}
+}